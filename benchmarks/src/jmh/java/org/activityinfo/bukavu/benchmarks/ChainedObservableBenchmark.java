@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.benchmarks;
+
+import org.activityinfo.bukavu.shared.observable.Observable;
+import org.activityinfo.bukavu.shared.observable.StatefulValue;
+import org.activityinfo.bukavu.shared.observable.Subscription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Switches a {@code join} between inner observables, each of which sits at the end of a
+ * short transform chain that must be connected and disconnected on every switch.
+ */
+@State(Scope.Thread)
+public class ChainedObservableBenchmark {
+
+    @Param({"2", "100"})
+    public int innerCount;
+
+    @Param({"1", "10"})
+    public int innerDepth;
+
+    private StatefulValue<Integer> selector;
+    private final List<StatefulValue<Integer>> inners = new ArrayList<>();
+    private Subscription subscription;
+    private int counter;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        List<Observable<Integer>> chains = new ArrayList<>();
+        for (int i = 0; i < innerCount; i++) {
+            StatefulValue<Integer> inner = new StatefulValue<>(i);
+            Observable<Integer> chain = inner;
+            for (int j = 0; j < innerDepth; j++) {
+                chain = chain.transform(x -> x + 1);
+            }
+            inners.add(inner);
+            chains.add(chain);
+        }
+        selector = new StatefulValue<>(0);
+        subscription = selector.join(chains::get).subscribe(blackhole::consume);
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscription.unsubscribe();
+        inners.clear();
+    }
+
+    @Benchmark
+    public void switchInner() {
+        selector.updateValue(++counter % innerCount);
+    }
+
+    @Benchmark
+    public void updateCurrentInner() {
+        inners.get(selector.get()).updateValue(++counter);
+    }
+}
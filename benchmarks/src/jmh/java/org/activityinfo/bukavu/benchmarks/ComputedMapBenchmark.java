@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.benchmarks;
+
+import org.activityinfo.bukavu.shared.observable.Observable;
+import org.activityinfo.bukavu.shared.observable.StatefulValue;
+import org.activityinfo.bukavu.shared.observable.Subscription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Churns the key set of an {@code ObservableComputedMap}: each update slides a window of
+ * {@code size} keys forward by {@code churn} keys, so that {@code churn} entries are dropped
+ * and {@code churn} new ones computed while the rest are retained.
+ */
+@State(Scope.Thread)
+public class ComputedMapBenchmark {
+
+    @Param({"1000"})
+    public int size;
+
+    @Param({"1", "100", "1000"})
+    public int churn;
+
+    private StatefulValue<List<Integer>> keys;
+    private Subscription subscription;
+    private int start;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        keys = new StatefulValue<>(window(0));
+        subscription = Observable.computeMap(keys, key -> Observable.just(key * 2)).subscribe(blackhole::consume);
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscription.unsubscribe();
+    }
+
+    @Benchmark
+    public void slideWindow() {
+        start += churn;
+        keys.updateValue(window(start));
+    }
+
+    private List<Integer> window(int start) {
+        List<Integer> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(start + i);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.benchmarks;
+
+import com.google.gwt.core.client.Scheduler;
+
+import java.util.ArrayDeque;
+
+/**
+ * A GWT {@link Scheduler} for running outside of the browser, which queues
+ * commands until {@link #flush()} is called.
+ *
+ * <p>A repeating command is queued again each time it returns {@code true}, and so runs to completion within
+ * a single flush. Delays are ignored, as there is no event loop.</p>
+ */
+final class DeferredCommandQueue extends Scheduler {
+
+    private final ArrayDeque<ScheduledCommand> queue = new ArrayDeque<>();
+
+    public void flush() {
+        ScheduledCommand command;
+        while ((command = queue.poll()) != null) {
+            command.execute();
+        }
+    }
+
+    private void repeat(RepeatingCommand cmd) {
+        queue.add(() -> {
+            if (cmd.execute()) {
+                repeat(cmd);
+            }
+        });
+    }
+
+    @Override
+    public void scheduleDeferred(ScheduledCommand cmd) {
+        queue.add(cmd);
+    }
+
+    @Override
+    public void scheduleEntry(RepeatingCommand cmd) {
+        repeat(cmd);
+    }
+
+    @Override
+    public void scheduleEntry(ScheduledCommand cmd) {
+        queue.add(cmd);
+    }
+
+    @Override
+    public void scheduleFinally(RepeatingCommand cmd) {
+        repeat(cmd);
+    }
+
+    @Override
+    public void scheduleFinally(ScheduledCommand cmd) {
+        queue.add(cmd);
+    }
+
+    @Override
+    public void scheduleFixedDelay(RepeatingCommand cmd, int delayMs) {
+        repeat(cmd);
+    }
+
+    @Override
+    public void scheduleFixedPeriod(RepeatingCommand cmd, int delayMs) {
+        repeat(cmd);
+    }
+
+    @Override
+    public void scheduleIncremental(RepeatingCommand cmd) {
+        repeat(cmd);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.benchmarks;
+
+import org.activityinfo.bukavu.shared.observable.Observable;
+import org.activityinfo.bukavu.shared.observable.StatefulValue;
+import org.activityinfo.bukavu.shared.observable.Subscription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Propagates a change through {@code depth} stacked diamonds, where each layer splits
+ * into two branches which are then joined again. Each node should be recomputed exactly
+ * once per update, so the cost should grow linearly with depth.
+ */
+@State(Scope.Thread)
+public class DiamondBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int depth;
+
+    private StatefulValue<Integer> source;
+    private Subscription subscription;
+    private int counter;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        source = new StatefulValue<>(0);
+        Observable<Integer> top = source;
+        for (int i = 0; i < depth; i++) {
+            Observable<Integer> left = top.transform(x -> x + 1);
+            Observable<Integer> right = top.transform(x -> x * 2);
+            top = Observable.transform(left, right, (l, r) -> l - r);
+        }
+        subscription = top.subscribe(blackhole::consume);
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscription.unsubscribe();
+    }
+
+    @Benchmark
+    public void update() {
+        source.updateValue(++counter);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.benchmarks;
+
+import org.activityinfo.bukavu.shared.observable.StatefulValue;
+import org.activityinfo.bukavu.shared.observable.Subscription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Notifies a single {@link StatefulValue} observed by {@code width} independent transforms.
+ */
+@State(Scope.Thread)
+public class FanOutBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int width;
+
+    private StatefulValue<Integer> source;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private int counter;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        source = new StatefulValue<>(0);
+        for (int i = 0; i < width; i++) {
+            int offset = i;
+            subscriptions.add(source.transform(x -> x + offset).subscribe(blackhole::consume));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Subscription subscription : subscriptions) {
+            subscription.unsubscribe();
+        }
+        subscriptions.clear();
+    }
+
+    @Benchmark
+    public void update() {
+        source.updateValue(++counter);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.benchmarks;
+
+import org.activityinfo.bukavu.shared.observable.Observable;
+import org.activityinfo.bukavu.shared.observable.StatefulValue;
+import org.activityinfo.bukavu.shared.observable.Subscription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flattens a large list of inputs into a single list.
+ */
+@State(Scope.Thread)
+public class FlattenBenchmark {
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private final List<StatefulValue<Integer>> inputs = new ArrayList<>();
+    private Observable<List<Integer>> flattened;
+    private Subscription subscription;
+    private int counter;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        List<Observable<Integer>> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            StatefulValue<Integer> input = new StatefulValue<>(i);
+            inputs.add(input);
+            list.add(input);
+        }
+        flattened = Observable.flatten(list);
+        subscription = flattened.subscribe(blackhole::consume);
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscription.unsubscribe();
+        inputs.clear();
+    }
+
+    /**
+     * Changes a single input out of {@code size}.
+     */
+    @Benchmark
+    public void updateOne() {
+        counter++;
+        inputs.get(counter % size).updateValue(counter);
+    }
+
+    /**
+     * Changes every input within a single batch.
+     */
+    @Benchmark
+    public void updateAllBatched() {
+        int value = ++counter;
+        Observable.batch(() -> {
+            for (StatefulValue<Integer> input : inputs) {
+                input.updateValue(value);
+            }
+        });
+    }
+
+    @Benchmark
+    public void connectAndDisconnect(Blackhole blackhole) {
+        Observable.flatten(new ArrayList<Observable<Integer>>(inputs)).subscribe(blackhole::consume).unsubscribe();
+    }
+}
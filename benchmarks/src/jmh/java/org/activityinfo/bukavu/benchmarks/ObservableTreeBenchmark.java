@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.benchmarks;
+
+import org.activityinfo.bukavu.shared.observable.Observable;
+import org.activityinfo.bukavu.shared.observable.ObservableTree;
+import org.activityinfo.bukavu.shared.observable.StatefulValue;
+import org.activityinfo.bukavu.shared.observable.Subscription;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recrawls an {@link ObservableTree} of {@code size} nodes, where each node has
+ * {@code branching} children, after a change to a single node.
+ */
+@State(Scope.Thread)
+public class ObservableTreeBenchmark {
+
+    private static final class Node {
+        private final int id;
+        private final int version;
+        private final List<Integer> children;
+
+        private Node(int id, int version, List<Integer> children) {
+            this.id = id;
+            this.version = version;
+            this.children = children;
+        }
+    }
+
+    private class Loader implements ObservableTree.TreeLoader<Integer, Node, Integer> {
+
+        @Override
+        public Integer getRootKey() {
+            return 0;
+        }
+
+        @Override
+        public Observable<Node> get(Integer nodeKey) {
+            return nodes.get(nodeKey);
+        }
+
+        @Override
+        public Iterable<Integer> getChildren(Node node) {
+            return node.children;
+        }
+
+        @Override
+        public Integer build(Map<Integer, @Nullable Node> nodes) {
+            return nodes.size();
+        }
+    }
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    @Param({"4"})
+    public int branching;
+
+    private final List<StatefulValue<Node>> nodes = new ArrayList<>();
+    private final DeferredCommandQueue scheduler = new DeferredCommandQueue();
+    private Subscription subscription;
+    private int counter;
+    private boolean pruned;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        for (int i = 0; i < size; i++) {
+            nodes.add(new StatefulValue<>(new Node(i, 0, children(i))));
+        }
+        subscription = new ObservableTree<>(new Loader(), scheduler).subscribe(blackhole::consume);
+        scheduler.flush();
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscription.unsubscribe();
+        nodes.clear();
+    }
+
+    /**
+     * Changes the value, but not the children, of a leaf node.
+     */
+    @Benchmark
+    public void updateLeaf() {
+        int leaf = size - 1 - (counter++ % (size / branching));
+        StatefulValue<Node> node = nodes.get(leaf);
+        node.updateValue(new Node(leaf, counter, node.get().children));
+        scheduler.flush();
+    }
+
+    /**
+     * Alternately removes and restores the root's first subtree, so that roughly
+     * {@code 1 / branching} of the tree is disconnected and reconnected.
+     */
+    @Benchmark
+    public void pruneAndRestoreSubtree() {
+        pruned = !pruned;
+        List<Integer> children = new ArrayList<>(children(0));
+        if (pruned) {
+            children.remove(0);
+        }
+        nodes.get(0).updateValue(new Node(0, ++counter, children));
+        scheduler.flush();
+    }
+
+    private List<Integer> children(int id) {
+        List<Integer> children = new ArrayList<>();
+        for (int i = 1; i <= branching; i++) {
+            int child = id * branching + i;
+            if (child < size) {
+                children.add(child);
+            }
+        }
+        return Collections.unmodifiableList(children);
+    }
+}
@@ -19,8 +19,8 @@ import elemental2.core.JsArray;
 import elemental2.core.JsMap;
 import elemental2.dom.DomGlobal;
 import elemental2.dom.Element;
-import elemental2.dom.NodeList;
 import jsinterop.base.Js;
+import org.activityinfo.bukavu.shared.observable.IncreasingSubsequence;
 import org.activityinfo.bukavu.shared.tree.*;
 
 import java.util.logging.Logger;
@@ -37,6 +37,12 @@ public class Diff {
 
     private static JsArray<VComponentInstance> mounts = new JsArray<>();
 
+    private static final String TEXT_TYPE = "#text";
+    private static final String COMPONENT_TYPE = "#component";
+    private static final String LAZY_TYPE = "#lazy";
+
+    private static final JsMap<String, String> NORMALIZED_NAMES = new JsMap<>();
+
     public static void render(VNode node, Element parent) {
         diff(null, node, Js.uncheckedCast(parent), false);
     }
@@ -102,6 +108,22 @@ public class Diff {
             vnode = VText.EMPTY_TEXT;
         }
 
+        // Lazy nodes are only rendered if their arguments have changed since they were rendered into dom
+        if (vnode instanceof VLazy) {
+            VLazy lazy = (VLazy) vnode;
+            if (dom != null && lazy.isSameAs(dom.getLazy())) {
+                return dom;
+            }
+            out = idiff(dom, lazy.render(), componentRoot);
+            out.setLazy(lazy);
+            return out;
+        }
+
+        // dom is no longer the rendering of a lazy node
+        if (dom != null && dom.getLazy() != null) {
+            dom.setLazy(null);
+        }
+
         // Fast case: Strings & Numbers create/update Text nodes.
         if (vnode instanceof VText) {
 
@@ -255,11 +277,12 @@ public class Diff {
         }
         component.disabled = true;
 
-        component.updateProps(props);
+        boolean changed = component.updateProps(props);
 
         component.disabled = false;
 
-        if (renderMode!=RenderMode.NO_RENDER) {
+        // Components which are already mounted are only re-rendered if their props have changed
+        if (renderMode!=RenderMode.NO_RENDER && (changed || component.domNode == null)) {
             if (renderMode==RenderMode.SYNC_RENDER || component.domNode == null) {
                 renderComponent(component, RenderMode.SYNC_RENDER, false);
             } else {
@@ -394,7 +417,7 @@ public class Diff {
         } else {
             node = Js.uncheckedCast(DomGlobal.document.createElement(nodeName));
         }
-        node.setNormalizedNodeName(nodeName);
+        node.setNormalizedNodeName(normalizeName(nodeName));
         return node;
     }
 
@@ -405,8 +428,32 @@ public class Diff {
      * @param nodeName Unnormalized name to compare against.
      */
     public static boolean isNamedNode(DomNode node, String nodeName) {
-        return nodeName.equals(node.getNormalizedNodeName()) ||
-                nodeName.equalsIgnoreCase(node.getNodeName().toLowerCase());
+        return normalizeName(nodeName).equals(getNormalizedNodeName(node));
+    }
+
+    /**
+     * @return the node's lower case name, which is cached on the node.
+     */
+    private static String getNormalizedNodeName(DomNode node) {
+        String name = node.getNormalizedNodeName();
+        if (name == null) {
+            name = normalizeName(node.getNodeName());
+            node.setNormalizedNodeName(name);
+        }
+        return name;
+    }
+
+    /**
+     * @return the lower case form of a tag name. There are only so many tag names,
+     * so we convert each one once, rather than on every comparison.
+     */
+    private static String normalizeName(String nodeName) {
+        String normalized = NORMALIZED_NAMES.get(nodeName);
+        if (normalized == null) {
+            normalized = nodeName.toLowerCase();
+            NORMALIZED_NAMES.set(nodeName, normalized);
+        }
+        return normalized;
     }
 
     /**
@@ -416,108 +463,147 @@ public class Diff {
      *  similar to hydration
      */
     public static void innerDiffNode(DomNode dom, VNode[] vchildren) {
-        NodeList<DomNode> originalChildren = dom.getChildNodes();
-        JsArray<DomNode> children = new JsArray<>();
-        JsMap<String, DomNode> keyed = new JsMap<>();
+        int vlen = (vchildren == null) ? 0 : vchildren.length;
 
-        int keyedLen = 0;
-        int min = 0;
+        // Take a snapshot of the children, as the live NodeList changes under us while we move nodes
+        JsArray<DomNode> originalChildren = new JsArray<>();
+        for (DomNode child = dom.getFirstChild(); child != null; child = child.getNextSibling()) {
+            originalChildren.push(child);
+        }
         int len = originalChildren.length;
-        int childrenLen = 0;
-        int vlen = (vchildren == null) ? 0 : vchildren.length;
 
-        // Build up a map of keyed children and an Array of unkeyed children:
-        if (len!=0) {
-            for (int i=0; i<len; i++) {
-                DomNode child = originalChildren.item(i);
-                VAttrMap props = child.getProps();
-                String key;
-                if (vlen != 0 && props != null) {
-                    if (child.getComponentInstance() != null) {
-                        key = child.getComponentInstance().getKey();
-                    } else {
-                        key = (String) props.get("key");
-                    }
-                } else {
-                    key = null;
-                }
-                if (key!=null) {
-                    keyedLen++;
-                    keyed.set(key, child);
-                } else if (props != null || isTextNode(child)) {
-                    children.setAt(childrenLen++, child);
-                }
-            }
+        // For each vchild, the index of the original child it was matched with, or -1
+        int[] sources = new int[vlen];
+
+        // Keyed children which are already in the same order at the start and end of the list
+        // are matched without going through the map:
+        int start = 0;
+        while (start < vlen && start < len && isSameKey(originalChildren.getAt(start), vchildren[start])) {
+            sources[start] = start;
+            start++;
+        }
+        int vend = vlen;
+        int end = len;
+        while (vend > start && end > start && isSameKey(originalChildren.getAt(end - 1), vchildren[vend - 1])) {
+            sources[--vend] = --end;
         }
 
-        if (vlen!=0) {
-            for (int i=0; i<vlen; i++) {
-                VNode vchild = vchildren[i];
-                DomNode child = null;
+        // Build up a map of the remaining keyed children and an Array of unkeyed children:
+        JsMap<String, Integer> keyed = new JsMap<>();
+        JsArray<DomNode> children = new JsArray<>();
+        int[] childIndexes = new int[end - start];
+        int childrenLen = 0;
 
-                // attempt to find a node based on key matching
-                String key = vchild.key;
-                if (key!=null) {
-                    if (keyedLen != 0 && keyed.has(key)) {
-                        child = keyed.get(key);
-                        keyed.set(key, null);
-                        keyedLen--;
-                    }
+        for (int i = start; i < end; i++) {
+            DomNode child = originalChildren.getAt(i);
+            String key = vlen != 0 ? getKey(child) : null;
+            if (key != null) {
+                keyed.set(key, i);
+            } else if (child.getProps() != null || isTextNode(child)) {
+                childIndexes[childrenLen] = i;
+                children.setAt(childrenLen++, child);
+            }
+        }
 
-                // attempt to pluck a node of the same type from the existing children
-                } else if (min<childrenLen) {
-                    for (int j=min; j<childrenLen; j++) {
-                        DomNode c;
-                        if (children.getAt(j)!=null && isSameNodeType(c = children.getAt(j), vchild)) {
-                            child = c;
-                            children.setAt(j, null);
-                            if (j==childrenLen-1) {
-                                childrenLen--;
-                            }
-                            if (j==min) {
-                                min++;
-                            }
-                            break;
-                        }
-                    }
+        // Chain the unkeyed children of each type together, in order, so that we can pluck
+        // the first unused child of a given type without searching:
+        JsMap<String, Integer> firstOfType = new JsMap<>();
+        int[] nextOfType = new int[childrenLen];
+        for (int j = childrenLen - 1; j >= 0; j--) {
+            String type = getNodeType(children.getAt(j));
+            Integer first = firstOfType.get(type);
+            nextOfType[j] = first == null ? -1 : first;
+            firstOfType.set(type, j);
+        }
+
+        for (int i = start; i < vend; i++) {
+            VNode vchild = vchildren[i];
+            sources[i] = -1;
+
+            // attempt to find a node based on key matching
+            String key = vchild.key;
+            if (key != null) {
+                Integer index = keyed.get(key);
+                if (index != null) {
+                    keyed.delete(key);
+                    sources[i] = index;
                 }
 
-                // morph the matched/found/created DOM child to match vchild (deep)
-                child = idiff(child, vchild, false);
-
-                DomNode f = originalChildren.item(i);
-                if (child!=null && child!=dom && child!=f) {
-                    if (f==null) {
-                        dom.appendChild(child);
-                    } else if (child==f.getNextSibling()) {
-                        removeNode(f);
-                    } else {
-                        dom.insertBefore(child, f);
-                    }
+            // attempt to pluck a node of the same type from the existing children
+            } else if (childrenLen != 0) {
+                String type = getNodeType(vchild);
+                Integer j = type == null ? null : firstOfType.get(type);
+                if (j != null && j >= 0) {
+                    sources[i] = childIndexes[j];
+                    children.setAt(j, null);
+                    firstOfType.set(type, nextOfType[j]);
                 }
             }
         }
 
-
-        // remove unused keyed children:
-        if (keyedLen != 0) {
-            keyed.forEach((value, key, map) -> {
-                if(value != null) {
-                    recollectNodeTree(value, false);
+        // morph the matched/found/created DOM children to match the vchildren (deep)
+        DomNode[] results = new DomNode[vlen];
+        for (int i = 0; i < vlen; i++) {
+            DomNode original = sources[i] < 0 ? null : originalChildren.getAt(sources[i]);
+            DomNode child = idiff(original, vchildren[i], false);
+            if (child != original) {
+                // the original was replaced, so the new node has to be placed
+                sources[i] = -1;
+            }
+            results[i] = child;
+        }
+
+        // Nodes which are part of the longest run of matched children that is already in order stay where
+        // they are, and the others are moved around them. Working backwards, each node only has to be moved
+        // if it isn't already followed by the next one.
+        boolean[] stable = IncreasingSubsequence.longest(sources);
+        DomNode next = null;
+        for (int i = vlen - 1; i >= 0; i--) {
+            DomNode child = results[i];
+            if (child == null || child == dom) {
+                continue;
+            }
+            if (!stable[i] && (child.getParentNode() != dom || child.getNextSibling() != next)) {
+                if (next == null) {
+                    dom.appendChild(child);
+                } else {
+                    dom.insertBefore(child, next);
                 }
-                return null;
-            });
+            }
+            next = child;
         }
 
+        // remove unused keyed children:
+        keyed.forEach((index, key, map) -> {
+            recollectNodeTree(originalChildren.getAt(index), false);
+            return null;
+        });
+
         // remove orphaned unkeyed children:
-        while (min<=childrenLen) {
+        while (childrenLen > 0) {
             DomNode child;
-            if ((child = children.getAt(childrenLen--))!=null) {
+            if ((child = children.getAt(--childrenLen)) != null) {
                 recollectNodeTree(child, false);
             }
         }
     }
 
+    private static String getKey(DomNode child) {
+        if (child.getProps() == null) {
+            return null;
+        }
+        if (child.getComponentInstance() != null) {
+            return child.getComponentInstance().getKey();
+        } else {
+            return (String) child.getProps().get("key");
+        }
+    }
+
+    private static boolean isSameKey(DomNode child, VNode vchild) {
+        String key = vchild.key;
+        return key != null && key.equals(getKey(child));
+    }
+
     /**
      * Recursively recycle (or just unmount) a node and its descendants.
      * @param node DOM node to start unmount/removal from
@@ -579,21 +665,43 @@ public class Diff {
 
 
     /**
-     * Check if two nodes are equivalent.
-     * @param node DOM Node to compare
-     * @param vnode Virtual DOM node to compare
+     * Classifies an unkeyed DOM node for matching against vnodes of the same type.
+     * Nodes owned by a component only match components, and nodes rendered from a lazy node
+     * only match lazy nodes, whatever their element.
+     * @param node DOM Node to classify
      */
-    private static boolean isSameNodeType(DomNode node, VNode vnode) {
+    private static String getNodeType(DomNode node) {
+        if (node.getLazy() != null) {
+            return LAZY_TYPE;
+        }
+        if (isTextNode(node)) {
+            return TEXT_TYPE;
+        }
+        if (node.getComponentInstance() != null) {
+            return COMPONENT_TYPE;
+        }
+        return getNormalizedNodeName(node);
+    }
+
+    /**
+     * Classifies a vnode for matching against DOM nodes of the same type.
+     * @param vnode Virtual DOM node to classify
+     * @return the type, or {@code null} if the vnode can't reuse an existing node.
+     */
+    private static String getNodeType(VNode vnode) {
         if (vnode instanceof VText) {
-            return isTextNode(node);
+            return TEXT_TYPE;
         }
         if (vnode instanceof VElement) {
-            return isNamedNode(node, ((VElement) vnode).tag);
+            return normalizeName(((VElement) vnode).tag);
         }
         if (vnode instanceof VComponent) {
-            return node.getComponentInstance() != null;
+            return COMPONENT_TYPE;
+        }
+        if (vnode instanceof VLazy) {
+            return LAZY_TYPE;
         }
-        return false;
+        return null;
     }
 
 
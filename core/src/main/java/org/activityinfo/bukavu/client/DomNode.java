@@ -24,6 +24,7 @@ import jsinterop.annotations.JsProperty;
 import jsinterop.annotations.JsType;
 import org.activityinfo.bukavu.shared.tree.VAttrMap;
 import org.activityinfo.bukavu.shared.tree.VComponentInstance;
+import org.activityinfo.bukavu.shared.tree.VLazy;
 
 @JsType(isNative = true, name = "?", namespace = JsPackage.GLOBAL)
 public interface DomNode {
@@ -63,6 +64,12 @@ public interface DomNode {
     @JsProperty(name = "__preactattr_")
     VAttrMap getProps();
 
+    @JsProperty(name = "_lazy")
+    VLazy getLazy();
+
+    @JsProperty(name = "_lazy")
+    void setLazy(VLazy lazy);
+
     @JsProperty(name = "__preactattr_")
     void setProps(VAttrMap empty);
 
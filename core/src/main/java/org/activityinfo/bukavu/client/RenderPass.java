@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.client;
+
+import org.activityinfo.bukavu.shared.tree.VComponentInstance;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * One round of re-rendering by the {@link RenderQueue}.
+ *
+ * <p>Components are rendered top-down, in order of their depth in the DOM, and otherwise in the order they
+ * were queued. A component which is no longer dirty when its turn comes has already been re-rendered by an
+ * ancestor, and is skipped.</p>
+ */
+final class RenderPass {
+
+    private static final class Entry {
+        private final VComponentInstance component;
+        private final int depth;
+        private final int sequence;
+
+        private Entry(VComponentInstance component, int depth, int sequence) {
+            this.component = component;
+            this.depth = depth;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final Comparator<Entry> TOP_DOWN = (a, b) ->
+            a.depth != b.depth ? Integer.compare(a.depth, b.depth) : Integer.compare(a.sequence, b.sequence);
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Adds a component to this pass.
+     *
+     * @param depth the number of DOM ancestors of the component's root node
+     */
+    void add(VComponentInstance component, int depth) {
+        entries.add(new Entry(component, depth, entries.size()));
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Passes each component which is still dirty to {@code renderer}, top-down.
+     *
+     * @return the number of components skipped because they were no longer dirty.
+     */
+    int render(Consumer<VComponentInstance> renderer) {
+        entries.sort(TOP_DOWN);
+        int skipped = 0;
+        for (Entry entry : entries) {
+            if (entry.component.dirty) {
+                renderer.accept(entry.component);
+            } else {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+}
@@ -15,12 +15,28 @@
  */
 package org.activityinfo.bukavu.client;
 
-import com.google.gwt.core.client.Scheduler;
 import elemental2.core.JsArray;
+import org.activityinfo.bukavu.shared.observable.Lane;
+import org.activityinfo.bukavu.shared.observable.PriorityScheduler;
 import org.activityinfo.bukavu.shared.tree.VComponentInstance;
 
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Re-renders dirty components after the current event.
+ *
+ * <p>Dirty components are rendered top-down, in order of their depth in the DOM, so that each component is
+ * rendered at most once per pass: a dirty component which is re-rendered by an ancestor is no longer dirty
+ * by the time we reach it, and is skipped. See {@link RenderPass}.</p>
+ */
 public class RenderQueue {
 
+    private static final Logger LOGGER = Logger.getLogger(RenderQueue.class.getName());
+
+    private static final Consumer<VComponentInstance> RENDER = component -> Diff.renderComponent(component, null, false);
+
     /**
      * Managed queue of dirty components to be re-rendered
      */
@@ -30,6 +46,34 @@ public class RenderQueue {
 
     private static boolean scheduled = false;
 
+    private static Lane lane = Lane.USER_BLOCKING;
+
+    private static int renderCount = 0;
+    private static int deduplicatedCount = 0;
+
+    /**
+     * Sets the {@link PriorityScheduler} lane in which components are re-rendered. By default,
+     * rendering is {@link Lane#USER_BLOCKING user-blocking}.
+     */
+    public static void setLane(Lane lane) {
+        RenderQueue.lane = lane;
+    }
+
+    /**
+     * @return the number of components re-rendered from the queue so far.
+     */
+    public static int getRenderCount() {
+        return renderCount;
+    }
+
+    /**
+     * @return the number of queued re-renders skipped so far, because an ancestor's re-render had
+     * already re-rendered the component.
+     */
+    public static int getDeduplicatedCount() {
+        return deduplicatedCount;
+    }
+
     /**
      * Enqueue a rerender of a component
      * @param component The component to rerender
@@ -44,7 +88,7 @@ public class RenderQueue {
     public static void scheduleRerender() {
         if(!scheduled) {
             scheduled = true;
-            Scheduler.get().scheduleDeferred(() -> rerender());
+            PriorityScheduler.getDefault().schedule(lane, () -> rerender());
         }
     }
 
@@ -58,11 +102,28 @@ public class RenderQueue {
      */
     private static void rerender() {
         scheduled = false;
-        VComponentInstance p;
-        while ( (p = ITEMS.pop()) != null) {
-            if (p.dirty) {
-                Diff.renderComponent(p, null, false);
+        int rendered = 0;
+        int deduplicated = 0;
+
+        // Components enqueued while we render are picked up by the next round
+        while (ITEMS.length != 0) {
+            RenderPass pass = new RenderPass();
+            for (int i = 0; i < ITEMS.length; i++) {
+                VComponentInstance component = ITEMS.getAt(i);
+                pass.add(component, getDepth(component));
             }
+            ITEMS.length = 0;
+
+            int skipped = pass.render(RENDER);
+            rendered += pass.size() - skipped;
+            deduplicated += skipped;
+        }
+
+        renderCount += rendered;
+        deduplicatedCount += deduplicated;
+        if (deduplicated != 0 && LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Rendered " + rendered + " components, skipped " + deduplicated +
+                    " already rendered by an ancestor");
         }
 
         Runnable callback;
@@ -70,4 +131,19 @@ public class RenderQueue {
             callback.run();
         }
     }
+
+    /**
+     * @return the number of DOM ancestors of the component's root node. Components that are not
+     * mounted come first.
+     */
+    private static int getDepth(VComponentInstance component) {
+        int depth = 0;
+        DomNode node = component.domNode;
+        if (node != null) {
+            while ((node = node.getParentNode()) != null) {
+                depth++;
+            }
+        }
+        return depth;
+    }
 }
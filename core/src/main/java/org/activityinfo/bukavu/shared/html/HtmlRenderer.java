@@ -157,10 +157,18 @@ public class HtmlRenderer implements VTreeVisitor {
         html.append(SafeHtmlUtils.htmlEscape(text.getText()));
     }
 
+    /**
+     * Renders a new instance of the component, as it would appear when first mounted.
+     */
     @Override
     public void visitComponent(VComponent vComponent) {
-//        vComponent.forceRender().accept(this);
-        throw new UnsupportedOperationException("TODO");
+        VComponentInstance instance = vComponent.getConstructor().newInstance(vComponent.getProps());
+        instance.render().accept(this);
+    }
+
+    @Override
+    public void visitLazy(VLazy lazy) {
+        lazy.render().accept(this);
     }
 
     public String getHtml() {
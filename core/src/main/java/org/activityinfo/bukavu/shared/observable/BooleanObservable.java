@@ -0,0 +1,385 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * An observable {@code boolean} value, which is stored and combined without boxing.
+ *
+ * <p>Observers are only notified when the value actually changes.</p>
+ *
+ * <p>Use {@link #boxed()} and {@link #unbox(Observable)} to convert to and from a generic {@link Observable}.</p>
+ *
+ * <p>{@link #and(BooleanObservable)} and {@link #or(BooleanObservable)} are evaluated as soon as either side
+ * changes, not in height order, as described for {@link IntObservable}.</p>
+ */
+public abstract class BooleanObservable extends PrimitiveObservable<BooleanObserver> {
+
+    @FunctionalInterface
+    private interface BooleanBinaryOperator {
+        boolean apply(boolean a, boolean b);
+    }
+
+    private boolean value;
+
+    protected final boolean getCachedValue() {
+        return value;
+    }
+
+    /**
+     * Updates the value and notifies observers if it has changed.
+     */
+    protected final void fireChange(boolean newValue) {
+        if(!loaded || value != newValue) {
+            value = newValue;
+            loaded = true;
+            notifyObservers();
+        }
+    }
+
+    @Override
+    final void deliver(BooleanObserver observer) {
+        if(loaded) {
+            observer.onChange(value);
+        } else {
+            observer.onLoading();
+        }
+    }
+
+    public static BooleanObservable just(boolean value) {
+        BooleanObservable constant = new BooleanObservable() { };
+        constant.fireChange(value);
+        return constant;
+    }
+
+    /**
+     * Converts a generic {@code Observable<Boolean>} to a {@code BooleanObservable}.
+     */
+    public static BooleanObservable unbox(Observable<Boolean> source) {
+        return from(source, Boolean::booleanValue);
+    }
+
+    /**
+     * @return a new {@code BooleanObservable} which tests each value of {@code source} with {@code predicate}.
+     */
+    public static <T> BooleanObservable from(Observable<T> source, Predicate<T> predicate) {
+        return new FromObservable<>(source, predicate);
+    }
+
+    static BooleanObservable from(IntObservable source, IntPredicate predicate) {
+        return new FromInt(source, predicate);
+    }
+
+    static BooleanObservable from(DoubleObservable source, DoublePredicate predicate) {
+        return new FromDouble(source, predicate);
+    }
+
+    public final BooleanObservable not() {
+        return new Negated(this);
+    }
+
+    public final BooleanObservable and(BooleanObservable other) {
+        return new Combined(this, other, (a, b) -> a && b);
+    }
+
+    public final BooleanObservable or(BooleanObservable other) {
+        return new Combined(this, other, (a, b) -> a || b);
+    }
+
+    /**
+     * @return a generic {@code Observable} whose value is {@code ifTrue} when this value is {@code true},
+     * and {@code ifFalse} otherwise.
+     */
+    public final <R> Observable<R> select(R ifTrue, R ifFalse) {
+        return new ToObservable<>(this, ifTrue, ifFalse);
+    }
+
+    /**
+     * @return this value as a generic {@code Observable<Boolean>}.
+     */
+    public final Observable<Boolean> boxed() {
+        return select(Boolean.TRUE, Boolean.FALSE);
+    }
+
+    @GwtIncompatible
+    public final boolean waitFor() {
+        boolean[] result = new boolean[2];
+        Subscription subscription = subscribe(newValue -> {
+            result[0] = newValue;
+            result[1] = true;
+        });
+        subscription.unsubscribe();
+        if(!result[1]) {
+            throw new IllegalStateException("Did not load synchronously");
+        }
+        return result[0];
+    }
+
+    private static final class Negated extends BooleanObservable implements BooleanObserver {
+        private final BooleanObservable source;
+        private @Nullable Subscription subscription;
+
+        private Negated(BooleanObservable source) {
+            this.source = source;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(boolean newValue) {
+            fireChange(!newValue);
+        }
+
+        @Override
+        public void onLoading() {
+            fireLoading();
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+    }
+
+    private static final class Combined extends BooleanObservable {
+        private final BooleanObservable a;
+        private final BooleanObservable b;
+        private final BooleanBinaryOperator operator;
+        private @Nullable Subscription subscriptionA;
+        private @Nullable Subscription subscriptionB;
+
+        private Combined(BooleanObservable a, BooleanObservable b, BooleanBinaryOperator operator) {
+            this.a = a;
+            this.b = b;
+            this.operator = operator;
+        }
+
+        @Override
+        protected void onConnect() {
+            BooleanObserver observer = new BooleanObserver() {
+                @Override
+                public void onChange(boolean newValue) {
+                    recompute();
+                }
+
+                @Override
+                public void onLoading() {
+                    fireLoading();
+                }
+            };
+            subscriptionA = a.subscribe(observer);
+            subscriptionB = b.subscribe(observer);
+            recompute();
+        }
+
+        private void recompute() {
+            if(a.loaded && b.loaded) {
+                fireChange(operator.apply(a.getCachedValue(), b.getCachedValue()));
+            } else {
+                fireLoading();
+            }
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscriptionA != null && subscriptionB != null : "onConnect not called";
+            subscriptionA.unsubscribe();
+            subscriptionB.unsubscribe();
+            subscriptionA = null;
+            subscriptionB = null;
+        }
+
+        @Override
+        int getHeight() {
+            return Math.max(a.getHeight(), b.getHeight());
+        }
+    }
+
+    private static final class FromObservable<T> extends BooleanObservable implements Observer<T> {
+        private final Observable<T> source;
+        private final Predicate<T> predicate;
+        private @Nullable Subscription subscription;
+
+        private FromObservable(Observable<T> source, Predicate<T> predicate) {
+            this.source = source;
+            this.predicate = predicate;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(@Nullable T newValue) {
+            if(newValue == null) {
+                fireLoading();
+            } else {
+                fireChange(predicate.test(newValue));
+            }
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+    }
+
+    private static final class FromInt extends BooleanObservable implements IntObserver {
+        private final IntObservable source;
+        private final IntPredicate predicate;
+        private @Nullable Subscription subscription;
+
+        private FromInt(IntObservable source, IntPredicate predicate) {
+            this.source = source;
+            this.predicate = predicate;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(int newValue) {
+            fireChange(predicate.test(newValue));
+        }
+
+        @Override
+        public void onLoading() {
+            fireLoading();
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+    }
+
+    private static final class FromDouble extends BooleanObservable implements DoubleObserver {
+        private final DoubleObservable source;
+        private final DoublePredicate predicate;
+        private @Nullable Subscription subscription;
+
+        private FromDouble(DoubleObservable source, DoublePredicate predicate) {
+            this.source = source;
+            this.predicate = predicate;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(double newValue) {
+            fireChange(predicate.test(newValue));
+        }
+
+        @Override
+        public void onLoading() {
+            fireLoading();
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+    }
+
+    private static final class ToObservable<R> extends Observable<R> implements BooleanObserver {
+        private final BooleanObservable source;
+        private final R ifTrue;
+        private final R ifFalse;
+        private @Nullable Subscription subscription;
+
+        private ToObservable(BooleanObservable source, R ifTrue, R ifFalse) {
+            this.source = source;
+            this.ifTrue = ifTrue;
+            this.ifFalse = ifFalse;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(boolean newValue) {
+            fireChange(newValue ? ifTrue : ifFalse);
+        }
+
+        @Override
+        public void onLoading() {
+            fireChange(null);
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+
+        @Override
+        @GwtIncompatible
+        public R waitFor() {
+            return source.waitFor() ? ifTrue : ifFalse;
+        }
+    }
+}
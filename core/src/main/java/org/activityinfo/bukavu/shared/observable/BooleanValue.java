@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+/**
+ * Holder for a changing {@code boolean} value, the primitive counterpart of {@link StatefulValue}.
+ */
+public class BooleanValue extends BooleanObservable {
+
+    private boolean value;
+
+    private boolean deferred = false;
+
+    public BooleanValue(boolean value) {
+        this.value = value;
+        fireChange(value);
+    }
+
+    public boolean get() {
+        return value;
+    }
+
+    /**
+     * Updates this state's value and notifies subscribers if the value has changed.
+     */
+    public void updateValue(boolean value) {
+        this.value = value;
+        publish();
+    }
+
+    public boolean toggle() {
+        updateValue(!value);
+        return value;
+    }
+
+    private void publish() {
+        if(Propagation.isBatching()) {
+            if(!deferred) {
+                deferred = true;
+                Propagation.defer(this::commitDeferredChange);
+            }
+        } else {
+            fireChange(value);
+        }
+    }
+
+    private void commitDeferredChange() {
+        deferred = false;
+        fireChange(value);
+    }
+}
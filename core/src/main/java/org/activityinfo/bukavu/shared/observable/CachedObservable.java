@@ -61,4 +61,15 @@ class CachedObservable<T> extends Observable<T> {
     public T waitFor() {
         return source.waitFor();
     }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        return evaluation.join(source);
+    }
+
+    @Override
+    int getHeight() {
+        return source.getHeight();
+    }
 }
@@ -81,9 +81,24 @@ public class ChainedObservable<T> extends Observable<T> {
         }
     }
 
+    @Override
+    int getHeight() {
+        Observable<T> currentInner = inner;
+        if(currentInner == null) {
+            return outer.getHeight();
+        }
+        return Math.max(outer.getHeight(), currentInner.getHeight());
+    }
+
     @Override
     @GwtIncompatible
     public T waitFor() {
         return outer.waitFor().waitFor();
     }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        return evaluation.join(evaluation.join(outer));
+    }
 }
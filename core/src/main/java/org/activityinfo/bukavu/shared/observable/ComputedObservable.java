@@ -16,117 +16,457 @@
 package org.activityinfo.bukavu.shared.observable;
 
 import com.google.gwt.core.shared.GwtIncompatible;
-import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
-import java.util.Arrays;
-import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-abstract class ComputedObservable<T> extends Observable<T> {
+/**
+ * Base class for observables whose values are computed from the values of one or more arguments.
+ *
+ * <p>Subclasses hold their arguments and their latest values, and pass each change they receive to
+ * {@link #onArgumentChange(Observable, Object, Object)}. This class decides when to recompute: synchronous
+ * nodes are queued with {@link Propagation} and recomputed in height order, while nodes with another
+ * {@link Scheduler} recompute when their scheduler runs. Nodes computed with the {@link LazyScheduler}
+ * only mark themselves as stale, and recompute when they are {@link #pull() pulled}.</p>
+ *
+ * <p>Specialized subclasses exist for one, two, and three arguments, which store their arguments in
+ * fields, as well as {@link ComputedObservableN} for any number of arguments.</p>
+ */
+abstract class ComputedObservable<T> extends Observable<T> implements Propagation.Node {
 
     private static final Logger LOGGER = Logger.getLogger(ComputedObservable.class.getName());
 
+    private static final Consumer<Observable<?>> PULL = Observable::pull;
+
     private final Scheduler scheduler;
-    private final Observable[] arguments;
-    private final @Nullable Object[] argumentValues;
-    private final @Nullable Subscription @NonNull [] subscriptions;
 
-    public ComputedObservable(Scheduler scheduler, Observable... arguments) {
+    private final boolean lazy;
+
+    /**
+     * The height of this node in the graph: one more than the height of its tallest argument.
+     * Used by {@link Propagation} to recompute nodes in topological order.
+     */
+    int height = 1;
+
+    /**
+     * Order in which this node was added to the propagation queue, used to break ties between
+     * nodes of the same height.
+     */
+    int sequence;
+
+    /**
+     * True if this node is currently waiting in the propagation queue.
+     */
+    boolean queued = false;
+
+    /**
+     * True if one or more arguments have changed since this node was last computed.
+     */
+    private boolean dirty = false;
+
+    /**
+     * True if an argument has delivered a new value since this node was last computed.
+     */
+    private boolean argumentChanged = false;
+
+    /**
+     * True if a lazy argument has become stale since this node was last computed, and must
+     * be pulled before we can recompute.
+     */
+    private boolean argumentInvalidated = false;
+
+    /**
+     * True while we are pulling stale arguments, whose new values are about to be used
+     * in a recompute.
+     */
+    private boolean pulling = false;
+
+    /**
+     * True if a recompute has been submitted to the {@link Scheduler} but has not yet run.
+     * Further changes to arguments in the meantime only mark this node as dirty.
+     */
+    private boolean recomputeScheduled = false;
+
+    private final Runnable scheduledRecompute = this::runScheduledRecompute;
+
+    /**
+     * Incremented each time an argument changes or this node is disconnected, so that
+     * we can recognize results of computations that have since become stale.
+     */
+    private int version = 0;
+
+    /**
+     * True if the scheduler is currently running a computation for us.
+     */
+    private boolean computing = false;
+
+    /**
+     * The {@link #version} of the arguments passed to the computation in progress.
+     */
+    private int computingVersion;
+
+    /**
+     * True if any argument delivered a different value while this node was connecting.
+     */
+    private boolean changedWhileConnecting = false;
+
+    ComputedObservable(Scheduler scheduler) {
         this.scheduler = scheduler;
-        this.arguments = arguments;
-        this.argumentValues = new Object[arguments.length];
-        this.subscriptions = new Subscription[arguments.length];
+        this.lazy = scheduler == LazyScheduler.INSTANCE;
+    }
 
-        for (int i = 0; i < arguments.length; i++) {
-            assert arguments[i] != null : "argument " + i + " is null.";
-        }
+    /**
+     * Subscribes to all arguments. Subclasses must store each value received and pass
+     * it on to {@link #onArgumentChange(Observable, Object, Object)}.
+     */
+    abstract void connectArguments();
+
+    /**
+     * Unsubscribes from all arguments, retaining their last values.
+     */
+    abstract void disconnectArguments();
+
+    /**
+     * @return true if all arguments have a value.
+     */
+    abstract boolean argumentsLoaded();
+
+    /**
+     * @return the height of the tallest argument.
+     */
+    abstract int argumentHeight();
+
+    /**
+     * Passes each argument to {@code action}.
+     */
+    abstract void forEachArgument(Consumer<Observable<?>> action);
+
+    /**
+     * Computes a new value from the current values of the arguments. Called only when
+     * {@link #argumentsLoaded()} is true.
+     *
+     * @return the new value, or {@code null} if the result is still loading.
+     */
+    abstract @Nullable T computeValue();
+
+    /**
+     * Captures the current values of the arguments, so that they can be computed by a {@link Scheduler}
+     * on another thread. Called only when {@link #argumentsLoaded()} is true.
+     *
+     * <p>The default implementation computes the value immediately.</p>
+     */
+    Supplier<@Nullable T> bindComputation() {
+        T value = computeValue();
+        return () -> value;
+    }
+
+    static <T> T checkResult(@Nullable T result) {
+        assert result != null : "Result of computation was null!";
+        return result;
     }
 
-    public ComputedObservable(Scheduler scheduler, List<Observable<?>> arguments) {
-        this(scheduler, arguments.toArray(new Observable[arguments.size()]));
+    final boolean isSynchronous() {
+        return scheduler == SynchronousScheduler.INSTANCE;
     }
 
-    private class ArgumentListener implements Observer<Object> {
-        private final int argumentIndex;
+    /**
+     * Called by subclasses after storing the {@code newValue} of one of their arguments.
+     */
+    final void onArgumentChange(Observable<?> argument, @Nullable Object oldValue, @Nullable Object newValue) {
+        if(isConnecting()) {
+            if(oldValue != newValue) {
+                changedWhileConnecting = true;
+            }
+            return;
+        }
+        if(pulling) {
+            if(oldValue != newValue) {
+                argumentChanged = true;
+            }
+            return;
+        }
+        version++;
+        if(newValue != null && oldValue == newValue) {
+            return;
+        }
+        argumentChanged = true;
+        if(lazy) {
+            markStale(argument);
+        } else if(isSynchronous()) {
+            invalidate(argument);
+        } else if(newValue == null) {
+            // Any pending recompute is now stale
+            dirty = false;
+            fireChange(null);
+        } else {
+            maybeScheduleRecompute();
+        }
+    }
 
-        private ArgumentListener(int argumentIndex) {
-            this.argumentIndex = argumentIndex;
+    /**
+     * Called by subclasses when a lazy argument has become stale. Its new value will only be
+     * computed when we pull it.
+     */
+    final void onArgumentInvalidated(Observable<?> argument) {
+        if(isConnecting() || pulling) {
+            return;
+        }
+        version++;
+        argumentInvalidated = true;
+        if(lazy) {
+            markStale(argument);
+        } else if(isSynchronous()) {
+            invalidate(argument);
+        } else {
+            maybeScheduleRecompute();
         }
+    }
 
-        @Override
-        public void onChange(@Nullable Object newValue) {
-            if(isConnecting()) {
-                argumentValues[argumentIndex] = newValue;
-                return;
+    /**
+     * Creates a listener for {@code argument} which passes new values to {@code onChange}, and
+     * invalidations to {@link #onArgumentInvalidated(Observable)}.
+     */
+    final <A> LazyObserver<A> argumentListener(Observable<A> argument, Observer<A> onChange) {
+        return new LazyObserver<A>() {
+            @Override
+            public void onChange(@Nullable A newValue) {
+                onChange.onChange(newValue);
             }
 
-            Object oldValue = argumentValues[argumentIndex];
-            if(newValue == null) {
-                argumentValues[argumentIndex] = null;
-                fireChange(null);
-            } else if(oldValue != newValue) {
-                argumentValues[argumentIndex] = newValue;
-                maybeScheduleRecompute();
+            @Override
+            public void onInvalidate() {
+                onArgumentInvalidated(argument);
             }
+        };
+    }
+
+    /**
+     * Marks this lazy node as dirty. If we have observers that need our values pushed to them,
+     * we have to recompute right away, otherwise we only pass the invalidation on.
+     */
+    private void markStale(Observable<?> changedArgument) {
+        if(hasEagerObservers()) {
+            invalidate(changedArgument);
+        } else if(!dirty) {
+            dirty = true;
+            fireInvalidate();
         }
     }
 
-    private void maybeScheduleRecompute() {
-        scheduler.schedule(() -> {
-            recompute();
-        });
+    /**
+     * Marks this node as dirty and queues it for recomputation once all nodes below
+     * it in the graph have been brought up to date.
+     */
+    private void invalidate(Observable<?> changedArgument) {
+        dirty = true;
+        if(!queued) {
+            // The graph can change shape as ChainedObservables switch between
+            // inner values, so make sure we stay above the argument that changed.
+            height = Math.max(height, changedArgument.getHeight() + 1);
+            queued = true;
+            Propagation.enqueue(this);
+        }
     }
 
     @Override
-    @SuppressWarnings("unchecked")
-    protected void onConnect() {
+    public final int getPropagationHeight() {
+        return height;
+    }
 
-        @Nullable Object @Nullable [] oldArguments = null;
-        if(cachedValue != null) {
-            oldArguments = Arrays.copyOf(argumentValues, argumentValues.length);
-        }
+    @Override
+    public final int getPropagationSequence() {
+        return sequence;
+    }
 
-        for (int i = 0; i < subscriptions.length; ++i) {
-            assert subscriptions[i] == null;
-            subscriptions[i] = arguments[i].subscribe(new ArgumentListener(i));
+    @Override
+    public final void setPropagationSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Called by {@link Propagation} when this node reaches the front of the queue.
+     */
+    @Override
+    public final void propagate() {
+        queued = false;
+        if(dirty && isConnected()) {
+            update();
         }
+    }
 
-        // Check to see if we need to recompute
-        if(oldArguments != null) {
-            maybeRecompute(oldArguments);
-        } else {
-            recompute();
+    @Override
+    void updateIfStale() {
+        if(lazy && dirty) {
+            update();
         }
     }
 
-    void maybeRecompute(@Nullable Object[] oldValues) {
-        boolean argumentsChanged = false;
-        for (int i = 0; i < oldValues.length; i++) {
-            if(oldValues[i] == null || argumentValues[i] == null) {
+    /**
+     * Brings any stale arguments up to date, and then recomputes unless they all turn out
+     * to have the same values as before.
+     */
+    private void update() {
+        if(argumentInvalidated) {
+            pullArguments();
+            if(!argumentChanged && cachedValue != null) {
+                dirty = false;
                 return;
             }
-            if(oldValues[i] != argumentValues[i]) {
-                argumentsChanged = true;
+        }
+        recompute();
+    }
+
+    private void pullArguments() {
+        argumentInvalidated = false;
+        pulling = true;
+        try {
+            forEachArgument(PULL);
+        } finally {
+            pulling = false;
+        }
+    }
+
+    @Override
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Computed observables obtain the values of their arguments from the evaluation, so their
+     * computations can run on any thread.
+     */
+    @Override
+    @GwtIncompatible
+    boolean isForkable() {
+        return true;
+    }
+
+    /**
+     * Marks this node as dirty and submits a recompute to the scheduler, unless one is already pending.
+     */
+    private void maybeScheduleRecompute() {
+        dirty = true;
+        if(!recomputeScheduled && !computing) {
+            recomputeScheduled = true;
+            scheduler.schedule(scheduledRecompute);
+        }
+    }
+
+    private void runScheduledRecompute() {
+        recomputeScheduled = false;
+
+        // Skip the recompute if it has become stale: an argument has since
+        // gone back to loading, or we have been disconnected in the meantime. In
+        // the latter case we remain dirty and will recompute on reconnection.
+        if(dirty && isConnected() && !computing) {
+            startComputation();
+        }
+    }
+
+    /**
+     * Hands the computation of a new value to our scheduler, which will call us back
+     * with the result once it is ready.
+     */
+    private void startComputation() {
+        dirty = false;
+
+        if(argumentInvalidated) {
+            pullArguments();
+        }
+        argumentChanged = false;
+
+        if(!argumentsLoaded()) {
+            fireChange(null);
+            return;
+        }
+
+        Supplier<@Nullable T> computation = bindComputation();
+        int expectedVersion = version;
+        computing = true;
+        computingVersion = expectedVersion;
+
+        // The computation may run on another thread, so we time it there but
+        // report it once we are called back.
+        long[] elapsed = new long[1];
+        scheduler.compute(() -> {
+            long start = System.nanoTime();
+            try {
+                return computation.get();
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Exception thrown by observable", e);
+                return null;
+            } finally {
+                elapsed[0] = System.nanoTime() - start;
             }
+        }, result -> {
+            ObservableMetrics metrics = ObservableMetrics.installed;
+            if(metrics != null) {
+                metrics.onRecompute(this, elapsed[0], height);
+            }
+            onComputed(expectedVersion, result);
+        });
+    }
+
+    private void onComputed(int expectedVersion, @Nullable T result) {
+        if(!computing || computingVersion != expectedVersion) {
+            // We were disconnected and have since started a new computation
+            return;
         }
-        if(argumentsChanged) {
-            recompute();
+        computing = false;
+
+        if(version == expectedVersion) {
+            fireChange(result);
+
+        } else if(dirty && isConnected() && !recomputeScheduled) {
+            // Our arguments changed while we were computing, so the result is
+            // already stale. Start again with the latest values.
+            recomputeScheduled = true;
+            scheduler.schedule(scheduledRecompute);
+        }
+    }
+
+    @Override
+    protected final void onConnect() {
+
+        boolean hadValue = cachedValue != null && !dirty;
+
+        changedWhileConnecting = false;
+        connectArguments();
+
+        // Our arguments are now connected and know their own height
+        height = argumentHeight() + 1;
+
+        ObservableMetrics metrics = ObservableMetrics.installed;
+        if(metrics != null) {
+            forEachArgument(argument -> metrics.onDependency(this, argument));
+        }
+
+        // We only need to recompute if we have no value yet, if we missed a change
+        // while waiting in the propagation queue, or if any argument has changed since
+        // we were last connected.
+        if(!hadValue || changedWhileConnecting) {
+            if(isSynchronous() || lazy) {
+                recompute();
+            } else {
+                startComputation();
+            }
         }
     }
 
-    @SuppressWarnings("nullness:argument")
     void recompute() {
 
+        dirty = false;
+        argumentChanged = false;
+        argumentInvalidated = false;
+
         // Check if we have all argumentValues
-        if(cachedValue == null) {
-            for (int i = 0; i < arguments.length; i++) {
-                if(argumentValues[i] == null) {
-                    // Still loading, still no value
-                    return;
-                }
-            }
+        if(!argumentsLoaded()) {
+            // Still loading, still no value
+            fireChange(null);
+            return;
         }
 
         // Ok, everything loaded, compute the new result
@@ -138,38 +478,33 @@ abstract class ComputedObservable<T> extends Observable<T> {
         // If the function STILL throws an exception, the only thing we can do
         // at this stage is log the error and treat the result as still loading.
 
+        ObservableMetrics metrics = ObservableMetrics.installed;
+        long start = metrics == null ? 0 : System.nanoTime();
+
         @Nullable T newResult;
         try {
-            newResult = compute(argumentValues);
-            assert newResult != null : "Result of computation was null!";
+            newResult = computeValue();
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Exception thrown by observable", e);
             newResult = null;
         }
 
+        if(metrics != null) {
+            metrics.onRecompute(this, System.nanoTime() - start, height);
+        }
+
         fireChange(newResult);
     }
 
-    protected abstract T compute(Object[] arguments);
-
     @Override
-    protected void onDisconnect() {
-        // Unsubscribe from all of our arguments
-        for(int i=0;i<subscriptions.length;++i) {
-            Subscription s = subscriptions[i];
-            assert s != null : "subscription already unsubscribed!";
-            s.unsubscribe();
-            subscriptions[i] = null;
-        }
-    }
+    protected final void onDisconnect() {
+        disconnectArguments();
 
-    @Override
-    @GwtIncompatible
-    public T waitFor() {
-        Object[] argumentValues = new Object[arguments.length];
-        for (int i = 0; i < arguments.length; i++) {
-            argumentValues[i] = arguments[i].waitFor();
+        // Discard the result of any computation still running, and
+        // compute it again when we are reconnected.
+        version++;
+        if(computing) {
+            dirty = true;
         }
-        return compute(argumentValues);
     }
 }
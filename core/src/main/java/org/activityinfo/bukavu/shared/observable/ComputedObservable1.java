@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A computed observable with a single argument, created by {@link Observable#transform(Function)}.
+ */
+final class ComputedObservable1<A, T> extends ComputedObservable<T> implements LazyObserver<A> {
+
+    private final Observable<A> a;
+    private final Function<A, T> function;
+
+    private @Nullable A aValue;
+    private @Nullable Subscription aSubscription;
+
+    ComputedObservable1(Scheduler scheduler, Observable<A> a, Function<A, T> function) {
+        super(scheduler);
+        this.a = a;
+        this.function = function;
+    }
+
+    @Override
+    public void onChange(@Nullable A newValue) {
+        A oldValue = aValue;
+        aValue = newValue;
+        onArgumentChange(a, oldValue, newValue);
+    }
+
+    @Override
+    public void onInvalidate() {
+        onArgumentInvalidated(a);
+    }
+
+    @Override
+    void connectArguments() {
+        aSubscription = a.subscribe(this);
+    }
+
+    @Override
+    void disconnectArguments() {
+        assert aSubscription != null : "subscription already unsubscribed!";
+        aSubscription.unsubscribe();
+        aSubscription = null;
+    }
+
+    @Override
+    boolean argumentsLoaded() {
+        return aValue != null;
+    }
+
+    @Override
+    int argumentHeight() {
+        return a.getHeight();
+    }
+
+    @Override
+    void forEachArgument(Consumer<Observable<?>> action) {
+        action.accept(a);
+    }
+
+    @Override
+    @Nullable T computeValue() {
+        assert aValue != null;
+        return checkResult(function.apply(aValue));
+    }
+
+    @Override
+    Supplier<@Nullable T> bindComputation() {
+        A a = aValue;
+        assert a != null;
+        return () -> checkResult(function.apply(a));
+    }
+
+    @Override
+    @GwtIncompatible
+    public T waitFor() {
+        return function.apply(a.waitFor());
+    }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        return function.apply(evaluation.join(a));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A computed observable with two arguments, created by {@link Observable#transform(Observable, Observable, BiFunction)}.
+ */
+final class ComputedObservable2<A, B, T> extends ComputedObservable<T> implements LazyObserver<A> {
+
+    private final Observable<A> a;
+    private final Observable<B> b;
+    private final BiFunction<A, B, T> function;
+
+    private final LazyObserver<B> bListener;
+
+    private @Nullable A aValue;
+    private @Nullable B bValue;
+    private @Nullable Subscription aSubscription;
+    private @Nullable Subscription bSubscription;
+
+    ComputedObservable2(Scheduler scheduler, Observable<A> a, Observable<B> b, BiFunction<A, B, T> function) {
+        super(scheduler);
+        this.a = a;
+        this.b = b;
+        this.function = function;
+        this.bListener = argumentListener(b, this::onChangeB);
+    }
+
+    @Override
+    public void onChange(@Nullable A newValue) {
+        A oldValue = aValue;
+        aValue = newValue;
+        onArgumentChange(a, oldValue, newValue);
+    }
+
+    @Override
+    public void onInvalidate() {
+        onArgumentInvalidated(a);
+    }
+
+    private void onChangeB(@Nullable B newValue) {
+        B oldValue = bValue;
+        bValue = newValue;
+        onArgumentChange(b, oldValue, newValue);
+    }
+
+    @Override
+    void connectArguments() {
+        aSubscription = a.subscribe(this);
+        bSubscription = b.subscribe(bListener);
+    }
+
+    @Override
+    void disconnectArguments() {
+        assert aSubscription != null && bSubscription != null : "subscription already unsubscribed!";
+        aSubscription.unsubscribe();
+        bSubscription.unsubscribe();
+        aSubscription = null;
+        bSubscription = null;
+    }
+
+    @Override
+    boolean argumentsLoaded() {
+        return aValue != null && bValue != null;
+    }
+
+    @Override
+    int argumentHeight() {
+        return Math.max(a.getHeight(), b.getHeight());
+    }
+
+    @Override
+    void forEachArgument(Consumer<Observable<?>> action) {
+        action.accept(a);
+        action.accept(b);
+    }
+
+    @Override
+    @Nullable T computeValue() {
+        assert aValue != null && bValue != null;
+        return checkResult(function.apply(aValue, bValue));
+    }
+
+    @Override
+    Supplier<@Nullable T> bindComputation() {
+        A a = aValue;
+        B b = bValue;
+        assert a != null && b != null;
+        return () -> checkResult(function.apply(a, b));
+    }
+
+    @Override
+    @GwtIncompatible
+    public T waitFor() {
+        return function.apply(a.waitFor(), b.waitFor());
+    }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        evaluation.fork(b);
+        return function.apply(evaluation.join(a), evaluation.join(b));
+    }
+}
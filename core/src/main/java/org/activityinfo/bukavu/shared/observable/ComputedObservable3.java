@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A computed observable with three arguments, created by
+ * {@link Observable#transform(Observable, Observable, Observable, TriFunction)}.
+ */
+final class ComputedObservable3<A, B, C, T> extends ComputedObservable<T> implements LazyObserver<A> {
+
+    private final Observable<A> a;
+    private final Observable<B> b;
+    private final Observable<C> c;
+    private final TriFunction<A, B, C, T> function;
+
+    private final LazyObserver<B> bListener;
+    private final LazyObserver<C> cListener;
+
+    private @Nullable A aValue;
+    private @Nullable B bValue;
+    private @Nullable C cValue;
+    private @Nullable Subscription aSubscription;
+    private @Nullable Subscription bSubscription;
+    private @Nullable Subscription cSubscription;
+
+    ComputedObservable3(Scheduler scheduler, Observable<A> a, Observable<B> b, Observable<C> c,
+                        TriFunction<A, B, C, T> function) {
+        super(scheduler);
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.function = function;
+        this.bListener = argumentListener(b, this::onChangeB);
+        this.cListener = argumentListener(c, this::onChangeC);
+    }
+
+    @Override
+    public void onChange(@Nullable A newValue) {
+        A oldValue = aValue;
+        aValue = newValue;
+        onArgumentChange(a, oldValue, newValue);
+    }
+
+    @Override
+    public void onInvalidate() {
+        onArgumentInvalidated(a);
+    }
+
+    private void onChangeB(@Nullable B newValue) {
+        B oldValue = bValue;
+        bValue = newValue;
+        onArgumentChange(b, oldValue, newValue);
+    }
+
+    private void onChangeC(@Nullable C newValue) {
+        C oldValue = cValue;
+        cValue = newValue;
+        onArgumentChange(c, oldValue, newValue);
+    }
+
+    @Override
+    void connectArguments() {
+        aSubscription = a.subscribe(this);
+        bSubscription = b.subscribe(bListener);
+        cSubscription = c.subscribe(cListener);
+    }
+
+    @Override
+    void disconnectArguments() {
+        assert aSubscription != null && bSubscription != null && cSubscription != null :
+                "subscription already unsubscribed!";
+        aSubscription.unsubscribe();
+        bSubscription.unsubscribe();
+        cSubscription.unsubscribe();
+        aSubscription = null;
+        bSubscription = null;
+        cSubscription = null;
+    }
+
+    @Override
+    boolean argumentsLoaded() {
+        return aValue != null && bValue != null && cValue != null;
+    }
+
+    @Override
+    int argumentHeight() {
+        return Math.max(a.getHeight(), Math.max(b.getHeight(), c.getHeight()));
+    }
+
+    @Override
+    void forEachArgument(Consumer<Observable<?>> action) {
+        action.accept(a);
+        action.accept(b);
+        action.accept(c);
+    }
+
+    @Override
+    @Nullable T computeValue() {
+        assert aValue != null && bValue != null && cValue != null;
+        return checkResult(function.apply(aValue, bValue, cValue));
+    }
+
+    @Override
+    Supplier<@Nullable T> bindComputation() {
+        A a = aValue;
+        B b = bValue;
+        C c = cValue;
+        assert a != null && b != null && c != null;
+        return () -> checkResult(function.apply(a, b, c));
+    }
+
+    @Override
+    @GwtIncompatible
+    public T waitFor() {
+        return function.apply(a.waitFor(), b.waitFor(), c.waitFor());
+    }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        evaluation.fork(b);
+        evaluation.fork(c);
+        return function.apply(evaluation.join(a), evaluation.join(b), evaluation.join(c));
+    }
+}
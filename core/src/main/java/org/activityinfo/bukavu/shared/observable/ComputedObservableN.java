@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A computed observable with any number of arguments, such as the list created by
+ * {@link Observable#flatten(List)}.
+ */
+abstract class ComputedObservableN<T> extends ComputedObservable<T> {
+
+    private final Observable<?>[] arguments;
+    private final @Nullable Object[] argumentValues;
+    private final Observer<?>[] listeners;
+    private final @Nullable Subscription[] subscriptions;
+
+    ComputedObservableN(Scheduler scheduler, List<? extends Observable<?>> arguments) {
+        super(scheduler);
+        int count = arguments.size();
+        this.arguments = arguments.toArray(new Observable<?>[count]);
+        this.argumentValues = new Object[count];
+        this.subscriptions = new Subscription[count];
+        this.listeners = new Observer<?>[count];
+        for (int i = 0; i < count; i++) {
+            listeners[i] = new ArgumentListener(i);
+        }
+    }
+
+    private class ArgumentListener implements LazyObserver<Object> {
+        private final int index;
+
+        private ArgumentListener(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onChange(@Nullable Object newValue) {
+            Object oldValue = argumentValues[index];
+            argumentValues[index] = newValue;
+            onArgumentChange(arguments[index], oldValue, newValue);
+        }
+
+        @Override
+        public void onInvalidate() {
+            onArgumentInvalidated(arguments[index]);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void connectArguments() {
+        for (int i = 0; i < arguments.length; i++) {
+            subscriptions[i] = ((Observable<Object>) arguments[i]).subscribe((Observer<Object>) listeners[i]);
+        }
+    }
+
+    @Override
+    void disconnectArguments() {
+        for (int i = 0; i < subscriptions.length; ++i) {
+            Subscription s = subscriptions[i];
+            assert s != null : "subscription already unsubscribed!";
+            s.unsubscribe();
+            subscriptions[i] = null;
+        }
+    }
+
+    @Override
+    boolean argumentsLoaded() {
+        for (Object value : argumentValues) {
+            if(value == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    int argumentHeight() {
+        int height = 0;
+        for (Observable<?> argument : arguments) {
+            height = Math.max(height, argument.getHeight());
+        }
+        return height;
+    }
+
+    @Override
+    void forEachArgument(Consumer<Observable<?>> action) {
+        for (Observable<?> argument : arguments) {
+            action.accept(argument);
+        }
+    }
+
+    @Override
+    @Nullable T computeValue() {
+        return checkResult(compute(argumentValues));
+    }
+
+    @Override
+    Supplier<@Nullable T> bindComputation() {
+        Object[] values = argumentValues.clone();
+        return () -> checkResult(compute(values));
+    }
+
+    protected abstract T compute(Object[] arguments);
+
+    @Override
+    @GwtIncompatible
+    public T waitFor() {
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            values[i] = arguments[i].waitFor();
+        }
+        return compute(values);
+    }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        // Start all but the first argument in the background, and evaluate the first ourselves
+        for (int i = 1; i < arguments.length; i++) {
+            evaluation.fork(arguments[i]);
+        }
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            values[i] = evaluation.join(arguments[i]);
+        }
+        return compute(values);
+    }
+}
@@ -43,4 +43,10 @@ public class ConstantObservable<T> extends Observable<T> {
     public T waitFor() {
         return value;
     }
+
+    @Override
+    @GwtIncompatible
+    protected boolean isWaitForThreadSafe() {
+        return true;
+    }
 }
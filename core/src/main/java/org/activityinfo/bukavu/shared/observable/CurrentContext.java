@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+/**
+ * Provides the {@link PropagationContext} of the calling thread.
+ *
+ * <p>The browser has only one thread, so the GWT module replaces this class with a super-source
+ * version which keeps a single context in a static field.</p>
+ */
+final class CurrentContext {
+
+    private static final ThreadLocal<PropagationContext> CONTEXT = ThreadLocal.withInitial(PropagationContext::new);
+
+    private CurrentContext() {
+    }
+
+    static PropagationContext get() {
+        return CONTEXT.get();
+    }
+}
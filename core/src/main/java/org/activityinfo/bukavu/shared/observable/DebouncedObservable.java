@@ -16,20 +16,20 @@
 package org.activityinfo.bukavu.shared.observable;
 
 import com.google.gwt.core.shared.GwtIncompatible;
-import com.google.gwt.user.client.Timer;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 class DebouncedObservable<T> extends Observable<T> {
 
     private final Observable<T> source;
     private final int delay;
-    private @Nullable Timer timer;
+    private final TimerWheel.Timeout timeout;
     private @Nullable Subscription sourceSubscription;
     private @Nullable T pendingValue;
 
-    public DebouncedObservable(Observable<T> source, int delay) {
+    public DebouncedObservable(Observable<T> source, int delay, TimerWheel wheel) {
         this.source = source;
         this.delay = delay;
+        this.timeout = wheel.newTimeout(() -> fireChange(pendingValue));
     }
 
     @Override
@@ -41,19 +41,8 @@ class DebouncedObservable<T> extends Observable<T> {
                 if(isConnecting()) {
                     DebouncedObservable.this.fireChange(newValue);
                 } else {
-                    if(timer == null) {
-                        timer = new Timer() {
-                            @Override
-                            public void run() {
-                                DebouncedObservable.this.fireChange(pendingValue);
-                            }
-                        };
-                    }
                     pendingValue = newValue;
-                    if (timer.isRunning()) {
-                        timer.cancel();
-                    }
-                    timer.schedule(delay);
+                    timeout.reschedule(delay);
                 }
             }
         });
@@ -63,7 +52,7 @@ class DebouncedObservable<T> extends Observable<T> {
     protected void onDisconnect() {
         cachedValue = null;
         pendingValue = null;
-        timer = null;
+        timeout.cancel();
         if(sourceSubscription != null) {
             sourceSubscription.unsubscribe();
             sourceSubscription = null;
@@ -75,4 +64,15 @@ class DebouncedObservable<T> extends Observable<T> {
     public T waitFor() {
         return source.waitFor();
     }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        return evaluation.join(source);
+    }
+
+    @Override
+    int getHeight() {
+        return source.getHeight();
+    }
 }
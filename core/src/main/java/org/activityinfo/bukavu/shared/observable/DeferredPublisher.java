@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+/**
+ * Queues a node that is not a {@link ComputedObservable}, such as an {@link ObservableList} or an
+ * {@code Observable} derived from one, to publish its state with the {@link Propagation} of the
+ * current change.
+ *
+ * <p>Changes arriving from several arguments in the same propagation are collected, and published
+ * once all of the arguments have been brought up to date, just as a {@code ComputedObservable}
+ * recomputes once. Outside of a propagation, the node publishes immediately.</p>
+ */
+final class DeferredPublisher implements Propagation.Node {
+
+    private final Runnable publish;
+
+    private int height = 0;
+    private int sequence;
+    private boolean queued = false;
+
+    DeferredPublisher(Runnable publish) {
+        this.publish = publish;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Sets the height of the node when it connects, from the height of its tallest argument.
+     */
+    void connect(int argumentHeight) {
+        height = argumentHeight + 1;
+    }
+
+    /**
+     * Queues the node to publish after the argument that changed, and any others below it.
+     */
+    void schedule(int argumentHeight) {
+        if(!queued) {
+            // Stay above the argument that changed, as the graph may have changed shape.
+            height = Math.max(height, argumentHeight + 1);
+            queued = true;
+            Propagation.enqueue(this);
+        }
+    }
+
+    @Override
+    public int getPropagationHeight() {
+        return height;
+    }
+
+    @Override
+    public int getPropagationSequence() {
+        return sequence;
+    }
+
+    @Override
+    public void setPropagationSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    @Override
+    public void propagate() {
+        queued = false;
+        publish.run();
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleFunction;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleToIntFunction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * An observable {@code double} value, which is stored and transformed without boxing.
+ *
+ * <p>Observers are only notified when the value actually changes. Unlike {@code ==}, {@code NaN} is considered
+ * to be equal to itself, so that a {@code NaN} value does not fire repeatedly.</p>
+ *
+ * <p>Use {@link #boxed()} and {@link #unbox(Observable)} to convert to and from a generic {@link Observable}.</p>
+ *
+ * <p>Like the other primitive observables, a {@code DoubleObservable} is updated immediately by its sources
+ * rather than in height order, so see {@link IntObservable} for the glitches this allows when values are combined.</p>
+ */
+public abstract class DoubleObservable extends PrimitiveObservable<DoubleObserver> {
+
+    private double value;
+
+    protected final double getCachedValue() {
+        return value;
+    }
+
+    /**
+     * Updates the value and notifies observers if it has changed.
+     */
+    protected final void fireChange(double newValue) {
+        if(!loaded || !isSame(value, newValue)) {
+            value = newValue;
+            loaded = true;
+            notifyObservers();
+        }
+    }
+
+    private static boolean isSame(double a, double b) {
+        return a == b || (Double.isNaN(a) && Double.isNaN(b));
+    }
+
+    @Override
+    final void deliver(DoubleObserver observer) {
+        if(loaded) {
+            observer.onChange(value);
+        } else {
+            observer.onLoading();
+        }
+    }
+
+    public static DoubleObservable just(double value) {
+        DoubleObservable constant = new DoubleObservable() { };
+        constant.fireChange(value);
+        return constant;
+    }
+
+    /**
+     * Converts a generic {@code Observable<Double>} to an {@code DoubleObservable}.
+     */
+    public static DoubleObservable unbox(Observable<Double> source) {
+        return from(source, Double::doubleValue);
+    }
+
+    /**
+     * @return a new {@code DoubleObservable} which applies {@code function} to each value of {@code source}.
+     */
+    public static <T> DoubleObservable from(Observable<T> source, ToDoubleFunction<T> function) {
+        return new FromObservable<>(source, function);
+    }
+
+    /**
+     * @return a new {@code DoubleObservable} which applies {@code function} to each value of {@code source}.
+     */
+    static DoubleObservable from(IntObservable source, IntToDoubleFunction function) {
+        return new FromInt(source, function);
+    }
+
+    /**
+     * @return a new {@code DoubleObservable} that applies {@code function} to this value.
+     */
+    public final DoubleObservable transform(DoubleUnaryOperator function) {
+        return new Transformed(this, function);
+    }
+
+    public final IntObservable transformToInt(DoubleToIntFunction function) {
+        return IntObservable.from(this, function);
+    }
+
+    public final BooleanObservable test(DoublePredicate predicate) {
+        return BooleanObservable.from(this, predicate);
+    }
+
+    /**
+     * @return a generic {@code Observable} that applies {@code function} to each value of this
+     * {@code DoubleObservable}.
+     */
+    public final <R> Observable<R> transformToObj(DoubleFunction<R> function) {
+        return new ToObservable<>(this, function);
+    }
+
+    /**
+     * @return this value as a generic {@code Observable<Double>}.
+     */
+    public final Observable<Double> boxed() {
+        return transformToObj(Double::valueOf);
+    }
+
+    /**
+     * @return a new {@code DoubleObservable} that applies {@code function} to the values of {@code a} and {@code b}.
+     * It is recomputed each time either one changes, even within the same propagation.
+     */
+    public static DoubleObservable combine(DoubleObservable a, DoubleObservable b, DoubleBinaryOperator function) {
+        return new Combined(a, b, function);
+    }
+
+    @GwtIncompatible
+    public final double waitFor() {
+        double[] result = new double[1];
+        boolean[] received = new boolean[1];
+        Subscription subscription = subscribe(newValue -> {
+            result[0] = newValue;
+            received[0] = true;
+        });
+        subscription.unsubscribe();
+        if(!received[0]) {
+            throw new IllegalStateException("Did not load synchronously");
+        }
+        return result[0];
+    }
+
+    private static final class Transformed extends DoubleObservable implements DoubleObserver {
+        private final DoubleObservable source;
+        private final DoubleUnaryOperator function;
+        private @Nullable Subscription subscription;
+
+        private Transformed(DoubleObservable source, DoubleUnaryOperator function) {
+            this.source = source;
+            this.function = function;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(double newValue) {
+            fireChange(function.applyAsDouble(newValue));
+        }
+
+        @Override
+        public void onLoading() {
+            fireLoading();
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+    }
+
+    private static final class FromInt extends DoubleObservable implements IntObserver {
+        private final IntObservable source;
+        private final IntToDoubleFunction function;
+        private @Nullable Subscription subscription;
+
+        private FromInt(IntObservable source, IntToDoubleFunction function) {
+            this.source = source;
+            this.function = function;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(int newValue) {
+            fireChange(function.applyAsDouble(newValue));
+        }
+
+        @Override
+        public void onLoading() {
+            fireLoading();
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+    }
+
+    private static final class Combined extends DoubleObservable {
+        private final DoubleObservable a;
+        private final DoubleObservable b;
+        private final DoubleBinaryOperator function;
+        private @Nullable Subscription subscriptionA;
+        private @Nullable Subscription subscriptionB;
+
+        private Combined(DoubleObservable a, DoubleObservable b, DoubleBinaryOperator function) {
+            this.a = a;
+            this.b = b;
+            this.function = function;
+        }
+
+        @Override
+        protected void onConnect() {
+            DoubleObserver observer = new DoubleObserver() {
+                @Override
+                public void onChange(double newValue) {
+                    recompute();
+                }
+
+                @Override
+                public void onLoading() {
+                    fireLoading();
+                }
+            };
+            subscriptionA = a.subscribe(observer);
+            subscriptionB = b.subscribe(observer);
+            recompute();
+        }
+
+        private void recompute() {
+            if(a.loaded && b.loaded) {
+                fireChange(function.applyAsDouble(a.getCachedValue(), b.getCachedValue()));
+            } else {
+                fireLoading();
+            }
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscriptionA != null && subscriptionB != null : "onConnect not called";
+            subscriptionA.unsubscribe();
+            subscriptionB.unsubscribe();
+            subscriptionA = null;
+            subscriptionB = null;
+        }
+
+        @Override
+        int getHeight() {
+            return Math.max(a.getHeight(), b.getHeight());
+        }
+    }
+
+    private static final class FromObservable<T> extends DoubleObservable implements Observer<T> {
+        private final Observable<T> source;
+        private final ToDoubleFunction<T> function;
+        private @Nullable Subscription subscription;
+
+        private FromObservable(Observable<T> source, ToDoubleFunction<T> function) {
+            this.source = source;
+            this.function = function;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(@Nullable T newValue) {
+            if(newValue == null) {
+                fireLoading();
+            } else {
+                fireChange(function.applyAsDouble(newValue));
+            }
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+    }
+
+    private static final class ToObservable<R> extends Observable<R> implements DoubleObserver {
+        private final DoubleObservable source;
+        private final DoubleFunction<R> function;
+        private @Nullable Subscription subscription;
+
+        private ToObservable(DoubleObservable source, DoubleFunction<R> function) {
+            this.source = source;
+            this.function = function;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(double newValue) {
+            fireChange(function.apply(newValue));
+        }
+
+        @Override
+        public void onLoading() {
+            fireChange(null);
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+
+        @Override
+        @GwtIncompatible
+        public R waitFor() {
+            return function.apply(source.waitFor());
+        }
+    }
+}
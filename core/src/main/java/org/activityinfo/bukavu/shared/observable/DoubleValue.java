@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Holder for a changing {@code double} value, the primitive counterpart of {@link StatefulValue}.
+ */
+public class DoubleValue extends DoubleObservable {
+
+    private double value;
+
+    private boolean deferred = false;
+
+    public DoubleValue(double value) {
+        this.value = value;
+        fireChange(value);
+    }
+
+    public double get() {
+        return value;
+    }
+
+    /**
+     * Updates this state's value and notifies subscribers if the value has changed.
+     */
+    public void updateValue(double value) {
+        this.value = value;
+        publish();
+    }
+
+    public double update(DoubleUnaryOperator function) {
+        updateValue(function.applyAsDouble(value));
+        return value;
+    }
+
+    private void publish() {
+        if(Propagation.isBatching()) {
+            if(!deferred) {
+                deferred = true;
+                Propagation.defer(this::commitDeferredChange);
+            }
+        } else {
+            fireChange(value);
+        }
+    }
+
+    private void commitDeferredChange() {
+        deferred = false;
+        fireChange(value);
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scheduler for evaluating observable graphs on the JVM, which runs the computations of
+ * {@link ComputedObservable}s on an {@link Executor} such as a {@link ForkJoinPool} or virtual threads.
+ *
+ * <p>Observables are not thread-safe, so the results of computations are always delivered back to a single
+ * <em>propagation thread</em> owned by the scheduler. Observables using this scheduler, and all the observables
+ * they depend on, must only be subscribed to or updated from its propagation thread, using
+ * {@link #execute(Runnable)} or {@link #submit(Callable)}. Separate schedulers propagate independently, so
+ * a graph must not mix observables of different schedulers.</p>
+ *
+ * <p>Each computed observable has at most one computation running at a time, and a result is only
+ * published if none of its arguments have changed in the meantime, so results are never published
+ * out of order.</p>
+ *
+ * <p>After {@link #shutdown()}, no new computations are started, but computations already running are
+ * completed and delivered. The propagation thread stops once the scheduler has terminated.</p>
+ */
+@GwtIncompatible
+public final class ExecutorScheduler implements Scheduler, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ExecutorScheduler.class.getName());
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final ExecutorService propagation;
+
+    private volatile @Nullable Thread propagationThread;
+
+    private final Executor executor;
+
+    /**
+     * The executor to shut down along with this scheduler, if we created it.
+     */
+    private final @Nullable ExecutorService ownedExecutor;
+
+    private final Object lock = new Object();
+
+    /**
+     * The number of tasks and computations submitted but not yet completed. Guarded by {@link #lock}.
+     */
+    private int pending = 0;
+
+    private volatile boolean shutdown = false;
+
+    private ExecutorScheduler(Executor executor, @Nullable ExecutorService ownedExecutor) {
+        this.executor = executor;
+        this.ownedExecutor = ownedExecutor;
+        this.propagation = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "observable-propagation-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.propagation.execute(() -> propagationThread = Thread.currentThread());
+    }
+
+    /**
+     * @return a new {@code ExecutorScheduler} which runs computations on the common {@link ForkJoinPool}.
+     */
+    public static ExecutorScheduler forkJoin() {
+        return new ExecutorScheduler(ForkJoinPool.commonPool(), null);
+    }
+
+    /**
+     * @return a new {@code ExecutorScheduler} which runs computations on the given {@code pool}.
+     */
+    public static ExecutorScheduler forkJoin(ForkJoinPool pool) {
+        return new ExecutorScheduler(pool, null);
+    }
+
+    /**
+     * @return a new {@code ExecutorScheduler} which runs each computation on a new virtual thread.
+     * @throws UnsupportedOperationException if the JVM does not support virtual threads.
+     */
+    public static ExecutorScheduler virtualThreads() {
+        ExecutorService executor;
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            executor = (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM", e);
+        }
+        return new ExecutorScheduler(executor, executor);
+    }
+
+    /**
+     * @return a new {@code ExecutorScheduler} which runs computations on the given {@code executor}. The
+     * executor is not shut down with the scheduler.
+     */
+    public static ExecutorScheduler using(Executor executor) {
+        return new ExecutorScheduler(executor, null);
+    }
+
+    /**
+     * @return true if the calling thread is this scheduler's propagation thread.
+     */
+    public boolean isPropagationThread() {
+        return Thread.currentThread() == propagationThread;
+    }
+
+    /**
+     * Runs {@code task} on the propagation thread.
+     */
+    public void execute(Runnable task) {
+        schedule(task);
+    }
+
+    /**
+     * Runs {@code task} on the propagation thread.
+     *
+     * @return a {@code Future} which completes with the result of {@code task}.
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        if(shutdown) {
+            throw new RejectedExecutionException("Scheduler has been shut down");
+        }
+        begin();
+        return propagation.submit(() -> {
+            try {
+                return task.call();
+            } finally {
+                end();
+            }
+        });
+    }
+
+    @Override
+    public void schedule(Runnable runnable) {
+        if(shutdown) {
+            LOGGER.log(Level.FINE, "Scheduler has been shut down, dropping task");
+            return;
+        }
+        begin();
+        propagation.execute(() -> {
+            try {
+                runnable.run();
+            } catch (RuntimeException | Error e) {
+                LOGGER.log(Level.SEVERE, "Exception thrown by scheduled task", e);
+            } finally {
+                end();
+            }
+        });
+    }
+
+    @Override
+    public <T> void compute(Supplier<@Nullable T> computation, Consumer<@Nullable T> callback) {
+        assert isPropagationThread() : "Observables using ExecutorScheduler must be accessed from the propagation thread";
+
+        if(shutdown) {
+            // Deliver the node back to the loading state rather than leaving it waiting forever
+            callback.accept(null);
+            return;
+        }
+        begin();
+        try {
+            executor.execute(() -> {
+                @Nullable T result;
+                try {
+                    result = computation.get();
+                } catch (RuntimeException | Error e) {
+                    LOGGER.log(Level.SEVERE, "Exception thrown by computation", e);
+                    result = null;
+                }
+                deliver(callback, result);
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.SEVERE, "Computation rejected by executor", e);
+            deliver(callback, null);
+        }
+    }
+
+    private <T> void deliver(Consumer<@Nullable T> callback, @Nullable T result) {
+        propagation.execute(() -> {
+            try {
+                callback.accept(result);
+            } catch (RuntimeException | Error e) {
+                LOGGER.log(Level.SEVERE, "Exception thrown while delivering result", e);
+            } finally {
+                end();
+            }
+        });
+    }
+
+    private void begin() {
+        synchronized (lock) {
+            pending++;
+        }
+    }
+
+    private void end() {
+        synchronized (lock) {
+            pending--;
+            if(pending == 0) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until all tasks and computations submitted to this scheduler, including
+     * those they in turn submit, have completed.
+     *
+     * @return false if the timeout elapsed before the scheduler became idle.
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        assert !isPropagationThread() : "Cannot wait for the propagation thread from the propagation thread";
+
+        long start = System.nanoTime();
+        long timeoutNanos = unit.toNanos(timeout);
+        synchronized (lock) {
+            while (pending > 0) {
+                long remaining = timeoutNanos - (System.nanoTime() - start);
+                if(remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops this scheduler from starting new computations. Computations already running
+     * will complete and deliver their results.
+     */
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Waits for running computations to complete after {@link #shutdown()}, and then stops the
+     * propagation thread and shuts down the executor if it was created by this scheduler.
+     *
+     * @return false if the timeout elapsed first.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        if(!awaitIdle(timeout, unit)) {
+            return false;
+        }
+        propagation.shutdown();
+        if(ownedExecutor != null) {
+            ownedExecutor.shutdown();
+            long remaining = unit.toNanos(timeout) - (System.nanoTime() - start);
+            return ownedExecutor.awaitTermination(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Shuts down this scheduler and waits for running computations to complete.
+     *
+     * @throws IllegalStateException if the calling thread is interrupted while waiting. The thread's
+     * interrupt status is preserved.
+     */
+    @Override
+    public void close() {
+        shutdown();
+        try {
+            if(!awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("Scheduler did not terminate");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the scheduler to terminate", e);
+        }
+    }
+}
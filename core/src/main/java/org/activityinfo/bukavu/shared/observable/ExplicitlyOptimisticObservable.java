@@ -54,4 +54,9 @@ public class ExplicitlyOptimisticObservable<T> extends Observable<MaybeStale<T>>
             fireChange(cachedValue.outdated());
         }
     }
+
+    @Override
+    int getHeight() {
+        return observable.getHeight();
+    }
 }
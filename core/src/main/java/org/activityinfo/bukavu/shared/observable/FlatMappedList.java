@@ -0,0 +1,332 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Maps each element of an observable collection to an observable, keeping the observables of elements
+ * which remain in the collection as it changes. Created by {@link ObservableList#flatMap(Observable, Function, Function)}.
+ */
+class FlatMappedList<T, K, R> extends ObservableList<R> implements Observer<Iterable<T>> {
+
+    private final Observable<? extends Iterable<T>> source;
+    private final Function<? super T, K> keyFunction;
+    private final Function<? super T, Observable<R>> function;
+
+    private @Nullable Subscription sourceSubscription;
+    private boolean sourceLoaded = false;
+
+    /**
+     * Entries in the same order as the list.
+     */
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<Object, Entry> entryMap = new HashMap<>();
+
+    /**
+     * The number of entries which are loading.
+     */
+    private int loadingCount = 0;
+
+    /**
+     * True while we are updating the structure of the list.
+     */
+    private boolean restructuring = false;
+
+    private class Entry implements Observer<R> {
+        private final Object key;
+        private final Observable<R> observable;
+        private final Subscription subscription;
+        private @Nullable R value;
+        private int index = -1;
+
+        private Entry(Object key, Observable<R> observable) {
+            this.key = key;
+            this.observable = observable;
+            this.subscription = observable.subscribe(this);
+        }
+
+        @Override
+        public void onChange(@Nullable R newValue) {
+            R oldValue = value;
+            value = newValue;
+            if(index == -1) {
+                // Not yet part of the list
+                return;
+            }
+            if(oldValue == null && newValue != null) {
+                loadingCount--;
+            } else if(oldValue != null && newValue == null) {
+                loadingCount++;
+            }
+            if(oldValue != newValue) {
+                apply(ListChange.update(index, oldValue, newValue));
+                if(!restructuring && !isConnecting()) {
+                    publishLater(observable.getHeight());
+                }
+            }
+        }
+    }
+
+    /**
+     * Distinguishes repeated occurrences of the same key in the source collection.
+     */
+    private static final class Occurrence {
+        private final Object key;
+        private final int count;
+
+        private Occurrence(Object key, int count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Occurrence that = (Occurrence) o;
+            return count == that.count && Objects.equals(key, that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, count);
+        }
+    }
+
+    FlatMappedList(Observable<? extends Iterable<T>> source,
+                   Function<? super T, K> keyFunction,
+                   Function<? super T, Observable<R>> function) {
+        this.source = source;
+        this.keyFunction = keyFunction;
+        this.function = function;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void onConnect() {
+        sourceSubscription = ((Observable<Iterable<T>>) source).subscribe(this);
+        connectHeight(tallestSource());
+        publish(isComplete());
+    }
+
+    /**
+     * @return the height of the source collection, or of the observable of any entry if it is taller.
+     */
+    private int tallestSource() {
+        int height = source.getHeight();
+        for (Entry entry : entries) {
+            height = Math.max(height, entry.observable.getHeight());
+        }
+        return height;
+    }
+
+    @Override
+    public void onChange(@Nullable Iterable<T> collection) {
+        if(collection == null) {
+            sourceLoaded = false;
+        } else {
+            sourceLoaded = true;
+            restructuring = true;
+            try {
+                update(collection);
+            } finally {
+                restructuring = false;
+            }
+        }
+        if(!isConnecting()) {
+            // New entries may be taller than the source
+            publishLater(tallestSource());
+        }
+    }
+
+    @Override
+    boolean isComplete() {
+        return sourceLoaded && loadingCount == 0;
+    }
+
+    private void update(Iterable<T> collection) {
+
+        // Find the keys of the new collection
+        List<T> newElements = new ArrayList<>();
+        List<Object> newKeys = new ArrayList<>();
+        Set<Object> newKeySet = new HashSet<>();
+        Map<Object, Integer> repeats = null;
+        for (T element : collection) {
+            Object key = keyFunction.apply(element);
+            if(!newKeySet.add(key)) {
+                if(repeats == null) {
+                    repeats = new HashMap<>();
+                }
+                int count = repeats.merge(key, 1, Integer::sum);
+                key = new Occurrence(key, count);
+                newKeySet.add(key);
+            }
+            newElements.add(element);
+            newKeys.add(key);
+        }
+
+        // Remove entries which are no longer present, starting from the end
+        // so that the indexes of the remaining entries do not change
+        boolean removed = false;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            if(!newKeySet.contains(entry.key)) {
+                entries.remove(i);
+                entryMap.remove(entry.key);
+                entry.subscription.unsubscribe();
+                if(entry.value == null) {
+                    loadingCount--;
+                }
+                apply(ListChange.remove(i, entry.value));
+                removed = true;
+            }
+        }
+
+        if(removed) {
+            for (int i = 0; i < entries.size(); i++) {
+                entries.get(i).index = i;
+            }
+        }
+
+        // Find the entries which keep their relative order, so that only the others are moved
+        int oldSize = entries.size();
+        int newSize = newKeys.size();
+        int[] sources = new int[newSize];
+        for (int i = 0; i < newSize; i++) {
+            Entry existing = entryMap.get(newKeys.get(i));
+            sources[i] = existing == null ? -1 : existing.index;
+        }
+        boolean[] stable = IncreasingSubsequence.longest(sources);
+
+        // Stable entries stay in their slots. Each other entry is placed in the gap after the last stable
+        // entry before it in the new order. Lay out the slots and gaps in a single sequence, in list order.
+        int[] gapStart = new int[oldSize + 1];
+        for (int i = 0, anchor = 0; i < newSize; i++) {
+            if(stable[i]) {
+                anchor = sources[i] + 1;
+            } else {
+                gapStart[anchor]++;
+            }
+        }
+        int[] slotPosition = new int[oldSize];
+        int position = 0;
+        for (int slot = 0; slot <= oldSize; slot++) {
+            int gapSize = gapStart[slot];
+            gapStart[slot] = position;
+            position += gapSize;
+            if(slot < oldSize) {
+                slotPosition[slot] = position++;
+            }
+        }
+
+        // Present marks the positions which are currently occupied in the list that observers see
+        PositionCounter present = new PositionCounter(position);
+        for (int slot = 0; slot < oldSize; slot++) {
+            present.add(slotPosition[slot], 1);
+        }
+
+        List<Entry> ordered = new ArrayList<>(newSize);
+        boolean changed = removed;
+        for (int i = 0, anchor = 0; i < newSize; i++) {
+            if(stable[i]) {
+                anchor = sources[i] + 1;
+                ordered.add(entries.get(sources[i]));
+                continue;
+            }
+            changed = true;
+            int target = gapStart[anchor]++;
+            if(sources[i] >= 0) {
+                Entry existing = entries.get(sources[i]);
+                int from = present.countBefore(slotPosition[sources[i]]);
+                present.add(slotPosition[sources[i]], -1);
+                present.add(target, 1);
+                apply(ListChange.move(from, present.countBefore(target), existing.value));
+                ordered.add(existing);
+            } else {
+                Object key = newKeys.get(i);
+                Entry entry = new Entry(key, function.apply(newElements.get(i)));
+                entryMap.put(key, entry);
+                if(entry.value == null) {
+                    loadingCount++;
+                }
+                present.add(target, 1);
+                apply(ListChange.insert(present.countBefore(target), entry.value));
+                ordered.add(entry);
+            }
+        }
+
+        if(changed) {
+            entries.clear();
+            entries.addAll(ordered);
+            for (int i = 0; i < entries.size(); i++) {
+                entries.get(i).index = i;
+            }
+        }
+    }
+
+    /**
+     * Counts the occupied positions before a given position, in logarithmic time.
+     */
+    private static final class PositionCounter {
+        private final int[] tree;
+
+        private PositionCounter(int size) {
+            tree = new int[size + 1];
+        }
+
+        void add(int position, int delta) {
+            for (int i = position + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        int countBefore(int position) {
+            int count = 0;
+            for (int i = position; i > 0; i -= i & -i) {
+                count += tree[i];
+            }
+            return count;
+        }
+    }
+
+    @Override
+    protected void onDisconnect() {
+        assert sourceSubscription != null : "onConnect not called";
+        sourceSubscription.unsubscribe();
+        sourceSubscription = null;
+        for (Entry entry : entries) {
+            entry.subscription.unsubscribe();
+        }
+        entries.clear();
+        entryMap.clear();
+        loadingCount = 0;
+        sourceLoaded = false;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.List;
+
+/**
+ * A fixed list of observables, created by {@link ObservableList#flatten(List)}.
+ *
+ * <p>Changes to the elements are published once the propagation of the change that caused them
+ * has reached this list, so that elements derived from the same source are updated together.</p>
+ */
+class FlattenedList<T> extends ObservableList<T> {
+
+    private final Observable<T>[] elements;
+    private final @Nullable Subscription[] subscriptions;
+
+    /**
+     * The number of elements which are loading.
+     */
+    private int loadingCount;
+
+    @SuppressWarnings("unchecked")
+    FlattenedList(List<? extends Observable<T>> elements) {
+        this.elements = (Observable<T>[]) elements.toArray(new Observable<?>[0]);
+        this.subscriptions = new Subscription[this.elements.length];
+    }
+
+    private class ElementListener implements Observer<T> {
+        private final int index;
+        private @Nullable T value;
+        private boolean inserted = false;
+
+        private ElementListener(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onChange(@Nullable T newValue) {
+            T oldValue = value;
+            value = newValue;
+            if(oldValue == null && newValue != null) {
+                loadingCount--;
+            } else if(oldValue != null && newValue == null) {
+                loadingCount++;
+            }
+            if(!inserted) {
+                inserted = true;
+                apply(ListChange.insert(index, newValue));
+            } else if(oldValue != newValue) {
+                apply(ListChange.update(index, oldValue, newValue));
+                if(!isConnecting()) {
+                    publishLater(elements[index].getHeight());
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void onConnect() {
+        loadingCount = elements.length;
+        int maxHeight = 0;
+        for (int i = 0; i < elements.length; i++) {
+            ElementListener listener = new ElementListener(i);
+            subscriptions[i] = elements[i].subscribe(listener);
+            maxHeight = Math.max(maxHeight, elements[i].getHeight());
+        }
+        connectHeight(maxHeight);
+        publish(isComplete());
+    }
+
+    @Override
+    boolean isComplete() {
+        return loadingCount == 0;
+    }
+
+    @Override
+    protected void onDisconnect() {
+        for (int i = 0; i < subscriptions.length; i++) {
+            Subscription subscription = subscriptions[i];
+            assert subscription != null : "subscription already unsubscribed!";
+            subscription.unsubscribe();
+            subscriptions[i] = null;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A chain of synchronous, single-argument operators evaluated by a single node, created by
+ * {@link Observable#fused()}.
+ *
+ * <p>An expression like {@code x.transform(f).transform(g).cacheIfEqual()} would otherwise
+ * create three nodes, each with its own subscription and cached value, and each change to {@code x}
+ * would pass through three rounds of notification. Instead, each stage is applied in turn, and each
+ * stage remembers its last input and output so that it behaves exactly as it would as a separate node.</p>
+ *
+ * <p>Each operator applied to a chain creates a new node which evaluates the whole chain, so
+ * intermediate results are not shared: if both {@code x.fused().transform(f)} and
+ * {@code x.fused().transform(f).transform(g)} are observed, {@code f} is evaluated by each. This is
+ * why fusion is never applied implicitly.</p>
+ */
+final class FusedObservable<T> extends ComputedObservable<T> implements LazyObserver<Object> {
+
+    /**
+     * Marks a stage that has not yet received any input.
+     */
+    private static final Object UNSET = new Object();
+
+    /**
+     * A single step in the chain. Unlike transformation functions, stages
+     * receive {@code null} inputs so that they may decide what loading means to them.
+     */
+    abstract static class Stage {
+
+        /**
+         * @param input the output of the previous stage, or {@code null} if it is loading.
+         * @param lastOutput the last output of this stage, or {@code null} if there is none.
+         * @return the new output of this stage, or {@code null} if it is loading.
+         */
+        abstract @Nullable Object apply(@Nullable Object input, @Nullable Object lastOutput);
+    }
+
+    static final class Map extends Stage {
+        private final Function<Object, Object> function;
+
+        @SuppressWarnings("unchecked")
+        Map(Function<?, ?> function) {
+            this.function = (Function<Object, Object>) function;
+        }
+
+        @Override
+        @Nullable Object apply(@Nullable Object input, @Nullable Object lastOutput) {
+            if(input == null) {
+                return null;
+            }
+            return checkResult(function.apply(input));
+        }
+    }
+
+    static final Stage OPTIONAL = new Stage() {
+        @Override
+        Object apply(@Nullable Object input, @Nullable Object lastOutput) {
+            return Optional.ofNullable(input);
+        }
+    };
+
+    static final class Cache extends Stage {
+        private final CachePredicate<Object> predicate;
+
+        @SuppressWarnings("unchecked")
+        Cache(CachePredicate<?> predicate) {
+            this.predicate = (CachePredicate<Object>) predicate;
+        }
+
+        @Override
+        @Nullable Object apply(@Nullable Object input, @Nullable Object lastOutput) {
+            if(input != null && lastOutput != null && predicate.isSame(lastOutput, input)) {
+                return lastOutput;
+            }
+            return input;
+        }
+    }
+
+    private final Observable<?> source;
+    private final Stage[] stages;
+
+    private @Nullable Object sourceValue;
+    private @Nullable Subscription sourceSubscription;
+
+    private final Object[] inputs;
+    private final @Nullable Object[] outputs;
+
+    FusedObservable(Observable<?> source, Stage... stages) {
+        super(SynchronousScheduler.INSTANCE);
+        this.source = source;
+        this.stages = stages;
+        this.inputs = new Object[stages.length];
+        this.outputs = new Object[stages.length];
+        Arrays.fill(inputs, UNSET);
+    }
+
+    @Override
+    public void onChange(@Nullable Object newValue) {
+        Object oldValue = sourceValue;
+        sourceValue = newValue;
+        onArgumentChange(source, oldValue, newValue);
+    }
+
+    @Override
+    public void onInvalidate() {
+        onArgumentInvalidated(source);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void connectArguments() {
+        sourceSubscription = ((Observable<Object>) source).subscribe(this);
+    }
+
+    @Override
+    void disconnectArguments() {
+        assert sourceSubscription != null : "subscription already unsubscribed!";
+        sourceSubscription.unsubscribe();
+        sourceSubscription = null;
+    }
+
+    /**
+     * Stages handle loading values themselves.
+     */
+    @Override
+    boolean argumentsLoaded() {
+        return true;
+    }
+
+    @Override
+    int argumentHeight() {
+        return source.getHeight();
+    }
+
+    @Override
+    void forEachArgument(Consumer<Observable<?>> action) {
+        action.accept(source);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    @Nullable T computeValue() {
+        Object value = sourceValue;
+        for (int i = 0; i < stages.length; i++) {
+            if(value != inputs[i]) {
+                Object output = stages[i].apply(value, outputs[i]);
+                inputs[i] = value;
+                outputs[i] = output;
+            }
+            value = outputs[i];
+        }
+        return (T) value;
+    }
+
+    @Override
+    @Nullable <R> Observable<R> fuse(Stage stage) {
+        Stage[] extended = Arrays.copyOf(stages, stages.length + 1);
+        extended[stages.length] = stage;
+        return new FusedObservable<>(source, extended);
+    }
+
+    @Override
+    @GwtIncompatible
+    public T waitFor() {
+        return applyStages(source.waitFor());
+    }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        return applyStages(evaluation.join(source));
+    }
+
+    @GwtIncompatible
+    @SuppressWarnings("unchecked")
+    private T applyStages(Object sourceValue) {
+        Object value = sourceValue;
+        for (Stage stage : stages) {
+            value = stage.apply(value, null);
+        }
+        if(value == null) {
+            throw new IllegalStateException("Did not load synchronously");
+        }
+        return (T) value;
+    }
+}
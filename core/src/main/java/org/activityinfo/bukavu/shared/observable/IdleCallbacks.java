@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GWT;
+import jsinterop.annotations.JsFunction;
+import jsinterop.annotations.JsMethod;
+import jsinterop.annotations.JsPackage;
+import jsinterop.annotations.JsProperty;
+import jsinterop.annotations.JsType;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Bindings to the browser's {@code requestIdleCallback()}, which is not available in all browsers.
+ */
+final class IdleCallbacks {
+
+    @JsType(isNative = true, namespace = JsPackage.GLOBAL, name = "Object")
+    static class IdleDeadline {
+        native double timeRemaining();
+    }
+
+    @JsFunction
+    interface IdleCallback {
+        void onIdle(IdleDeadline deadline);
+    }
+
+    private IdleCallbacks() {
+    }
+
+    /**
+     * @return true if we are running in a browser which supports {@code requestIdleCallback()}
+     */
+    static boolean isSupported() {
+        return GWT.isScript() && requestIdleCallbackFunction() != null;
+    }
+
+    @JsProperty(namespace = JsPackage.GLOBAL, name = "requestIdleCallback")
+    private static native @Nullable Object requestIdleCallbackFunction();
+
+    @JsMethod(namespace = JsPackage.GLOBAL)
+    static native double requestIdleCallback(IdleCallback callback);
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+/**
+ * Finds the elements of a reordered sequence which can stay where they are.
+ *
+ * <p>Given, for each position in the new order, the position of the same element in the old order,
+ * the longest increasing subsequence of those positions is the largest set of elements whose relative
+ * order is unchanged. Only the remaining elements need to be moved. Used to reorder keyed DOM children,
+ * and the elements of {@link ObservableList#flatMap(Observable, java.util.function.Function, java.util.function.Function)}.</p>
+ */
+public final class IncreasingSubsequence {
+
+    private IncreasingSubsequence() {
+    }
+
+    /**
+     * Finds the longest subsequence of {@code sources} that is strictly increasing, ignoring negative entries.
+     *
+     * @return an array marking the positions which belong to the subsequence.
+     */
+    public static boolean[] longest(int[] sources) {
+        int n = sources.length;
+        int[] predecessors = new int[n];
+        int[] tails = new int[n];
+        int length = 0;
+
+        for (int i = 0; i < n; i++) {
+            int source = sources[i];
+            if (source < 0) {
+                continue;
+            }
+            // find the longest subsequence so far that this entry can extend
+            int lo = 0;
+            int hi = length;
+            if (length > 0 && sources[tails[length - 1]] < source) {
+                lo = length;
+            } else {
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (sources[tails[mid]] < source) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+            }
+            predecessors[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) {
+                length++;
+            }
+        }
+
+        boolean[] stable = new boolean[n];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = predecessors[i]) {
+            stable[i] = true;
+        }
+        return stable;
+    }
+}
@@ -15,27 +15,69 @@
  */
 package org.activityinfo.bukavu.shared.observable;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An observable computed by an {@link IncrementalTask}, which divides its work into parts so
+ * as not to block the event loop.
+ *
+ * <p>With a {@link Scheduler}, a single call to {@link IncrementalTask#execute()} is made each time
+ * the scheduler runs. With an {@link IncrementalRunner}, the task is run repeatedly within a time
+ * budget, alongside other incremental tasks.</p>
+ */
 public class IncrementalObservable<T> extends Observable<T> {
 
     private final IncrementalTask<T> task;
-    private final Scheduler scheduler;
+    private final @Nullable Scheduler scheduler;
+    private final @Nullable IncrementalRunner runner;
+    private IncrementalRunner.@Nullable Slot<T> slot;
     private boolean completed = false;
 
     public IncrementalObservable(IncrementalTask<T> task, Scheduler scheduler) {
         this.task = task;
         this.scheduler = scheduler;
+        this.runner = null;
+    }
+
+    public IncrementalObservable(IncrementalTask<T> task, IncrementalRunner runner) {
+        this.task = task;
+        this.scheduler = null;
+        this.runner = runner;
     }
 
     @Override
     protected void onConnect() {
         if(!completed) {
-            scheduleNextSlice();
+            if(runner != null) {
+                if(slot == null) {
+                    slot = runner.start(this, task);
+                } else {
+                    runner.resume(slot);
+                }
+            } else {
+                scheduleNextSlice();
+            }
+        }
+    }
+
+    boolean isActive() {
+        return isConnected() || isConnecting();
+    }
+
+    /**
+     * Called by the {@link IncrementalRunner} with the latest result at the end of each time slice.
+     */
+    void publish(@Nullable T result, boolean done) {
+        fireChange(result);
+        if(done) {
+            completed = true;
         }
     }
 
     private void scheduleNextSlice() {
+        assert scheduler != null;
         scheduler.schedule(() -> {
-            if(!isConnected() && !isConnecting()) {
+            if(!isActive()) {
                 return;
             }
 
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs many {@link IncrementalTask}s cooperatively, in time slices with a fixed budget.
+ *
+ * <p>Within each slice, tasks are run repeatedly until the budget is used up: the task with the
+ * highest {@link IncrementalTask#getPriority() priority} goes first, and tasks of equal priority take
+ * turns. Each turn runs a chunk of work sized from the time the task's previous chunks took, so that we
+ * check the deadline often enough not to overrun it, without measuring after every single unit of work.</p>
+ *
+ * <p>Intermediate results are only published at the end of each slice, so observers downstream of many
+ * tasks are recomputed at most once per slice.</p>
+ */
+public final class IncrementalRunner {
+
+    /**
+     * The time budget of each slice of the default runner, leaving the rest of each 16 ms frame for rendering.
+     */
+    private static final double DEFAULT_BUDGET_MILLIS = 8;
+
+    /**
+     * The length of a single chunk of work that we aim for, between checks of the deadline.
+     */
+    private static final long CHUNK_TARGET_NANOS = 1_000_000;
+
+    /**
+     * The largest number of units of work to run in a single chunk.
+     */
+    private static final int MAX_CHUNK_SIZE = 1 << 16;
+
+    /**
+     * The weight given to the latest measurement when updating the average time per unit of work.
+     */
+    private static final double SMOOTHING = 0.25;
+
+    /**
+     * Source of time slices: either the scheduler with a fixed budget, or {@code requestIdleCallback()}.
+     */
+    private final Scheduler scheduler;
+    private final double budgetMillis;
+    private final boolean idle;
+
+    private final LongSupplier clock;
+
+    private final PriorityQueue<Slot<?>> queue = new PriorityQueue<>((a, b) -> {
+        if(a.priority != b.priority) {
+            return Integer.compare(b.priority, a.priority);
+        }
+        return Long.compare(a.turn, b.turn);
+    });
+
+    private long nextTurn = 0;
+
+    private boolean sliceScheduled = false;
+    private boolean inSlice = false;
+    private boolean sliceRequested = false;
+
+    /**
+     * A task managed by this runner, together with the measurements used to size its chunks.
+     */
+    static final class Slot<T> {
+        private final IncrementalObservable<T> observable;
+        private final IncrementalTask<T> task;
+        private final int priority;
+        private long turn;
+
+        private boolean queued = false;
+
+        /**
+         * The average time for a single unit of work, or zero if we have not measured it yet.
+         */
+        private double nanosPerUnit = 0;
+
+        private T result;
+        private boolean hasResult = false;
+
+        Slot(IncrementalObservable<T> observable, IncrementalTask<T> task) {
+            this.observable = observable;
+            this.task = task;
+            this.priority = task.getPriority();
+        }
+
+        int chunkSize(long remainingNanos) {
+            if(nanosPerUnit <= 0) {
+                return 1;
+            }
+            double units = Math.min(remainingNanos, CHUNK_TARGET_NANOS) / nanosPerUnit;
+            return (int) Math.max(1, Math.min(MAX_CHUNK_SIZE, units));
+        }
+
+        void measure(int units, long elapsedNanos) {
+            double sample = (double) elapsedNanos / units;
+            if(nanosPerUnit <= 0) {
+                nanosPerUnit = sample;
+            } else {
+                nanosPerUnit = (1 - SMOOTHING) * nanosPerUnit + SMOOTHING * sample;
+            }
+        }
+
+        double getNanosPerUnit() {
+            return nanosPerUnit;
+        }
+
+        private void publish() {
+            if(hasResult) {
+                T value = result;
+                result = null;
+                hasResult = false;
+                observable.publish(value, task.isDone());
+            }
+        }
+    }
+
+    /**
+     * Creates a runner which runs slices of {@code budgetMillis} milliseconds using the given {@code scheduler}.
+     */
+    public IncrementalRunner(Scheduler scheduler, double budgetMillis) {
+        this(scheduler, budgetMillis, false, System::nanoTime);
+    }
+
+    IncrementalRunner(Scheduler scheduler, double budgetMillis, LongSupplier clock) {
+        this(scheduler, budgetMillis, false, clock);
+    }
+
+    private IncrementalRunner(Scheduler scheduler, double budgetMillis, boolean idle, LongSupplier clock) {
+        this.scheduler = scheduler;
+        this.budgetMillis = budgetMillis;
+        this.idle = idle;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the default runner, which runs slices of 8 ms in the {@link Lane#NORMAL normal} lane of the
+     * {@linkplain PriorityScheduler#getDefault() default} {@code PriorityScheduler}.
+     *
+     * <p>A runner is not thread-safe, so outside the browser, each thread has its own default runner,
+     * kept with its {@link PropagationContext}.</p>
+     */
+    public static IncrementalRunner getDefault() {
+        PropagationContext context = CurrentContext.get();
+        if(context.incrementalRunner == null) {
+            context.incrementalRunner = new IncrementalRunner(PriorityScheduler.getDefault().lane(Lane.NORMAL),
+                    DEFAULT_BUDGET_MILLIS);
+        }
+        return context.incrementalRunner;
+    }
+
+    /**
+     * Returns a runner which runs tasks only while the browser is idle, using {@code requestIdleCallback()}.
+     * Each slice lasts for as long as the browser reports that it will remain idle.
+     *
+     * <p>In browsers without {@code requestIdleCallback()}, and outside the browser, this is the
+     * {@linkplain #getDefault() default} runner.</p>
+     */
+    public static IncrementalRunner idle() {
+        if(!IdleCallbacks.isSupported()) {
+            return getDefault();
+        }
+        PropagationContext context = CurrentContext.get();
+        if(context.idleRunner == null) {
+            context.idleRunner = new IncrementalRunner(PriorityScheduler.getDefault().lane(Lane.IDLE), 0, true,
+                    System::nanoTime);
+        }
+        return context.idleRunner;
+    }
+
+    <T> Slot<T> start(IncrementalObservable<T> observable, IncrementalTask<T> task) {
+        Slot<T> slot = new Slot<>(observable, task);
+        resume(slot);
+        return slot;
+    }
+
+    /**
+     * Queues a task again after its observable has been reconnected.
+     */
+    void resume(Slot<?> slot) {
+        if(!slot.queued) {
+            slot.queued = true;
+            slot.turn = nextTurn++;
+            queue.add(slot);
+            scheduleSlice();
+        }
+    }
+
+    private void scheduleSlice() {
+        if(sliceScheduled) {
+            return;
+        }
+        sliceScheduled = true;
+        if(idle) {
+            IdleCallbacks.requestIdleCallback(deadline -> runSlices(deadline::timeRemaining));
+        } else {
+            scheduler.schedule(this::onScheduled);
+        }
+    }
+
+    private void onScheduled() {
+        if(inSlice) {
+            // A synchronous scheduler has run us from within the previous slice. Rather than
+            // recursing for every slice, let the loop in runSlices() start the next one.
+            sliceRequested = true;
+            return;
+        }
+        runSlices(startBudget());
+    }
+
+    private DoubleSupplier startBudget() {
+        long deadline = clock.getAsLong() + (long) (budgetMillis * 1_000_000);
+        return () -> (deadline - clock.getAsLong()) / 1_000_000d;
+    }
+
+    private void runSlices(DoubleSupplier timeRemaining) {
+        inSlice = true;
+        try {
+            sliceScheduled = false;
+            runSlice(timeRemaining);
+            while (sliceRequested) {
+                sliceRequested = false;
+                sliceScheduled = false;
+                runSlice(startBudget());
+            }
+        } finally {
+            inSlice = false;
+        }
+    }
+
+    private void runSlice(DoubleSupplier timeRemaining) {
+        List<Slot<?>> ran = new ArrayList<>();
+        try {
+            // Always make some progress, even if the budget is already spent
+            do {
+                Slot<?> slot = queue.poll();
+                if(slot == null) {
+                    break;
+                }
+                slot.queued = false;
+                if(!slot.observable.isActive()) {
+                    continue;
+                }
+                boolean firstTurn = !slot.hasResult;
+                long remainingNanos = (long) (timeRemaining.getAsDouble() * 1_000_000);
+                runChunk(slot, remainingNanos);
+                if(firstTurn) {
+                    ran.add(slot);
+                }
+                if(!slot.task.isDone()) {
+                    slot.queued = true;
+                    slot.turn = nextTurn++;
+                    queue.add(slot);
+                }
+            } while (timeRemaining.getAsDouble() > 0);
+        } finally {
+            // Publish the latest results as a single change, so that
+            // computed observables downstream are recomputed only once.
+            Propagation.enter();
+            try {
+                for (Slot<?> slot : ran) {
+                    slot.publish();
+                }
+            } finally {
+                Propagation.exit();
+            }
+            // If a task threw, it is dropped, but the others carry on
+            if(!queue.isEmpty()) {
+                scheduleSlice();
+            }
+        }
+    }
+
+    private <T> void runChunk(Slot<T> slot, long remainingNanos) {
+        int units = slot.chunkSize(remainingNanos);
+        long start = clock.getAsLong();
+        T result = slot.task.execute(units);
+        slot.measure(units, clock.getAsLong() - start);
+        slot.result = result;
+        slot.hasResult = true;
+    }
+
+    /**
+     * @return the number of tasks waiting to run
+     */
+    int getQueueSize() {
+        return queue.size();
+    }
+}
@@ -37,4 +37,33 @@ public interface IncrementalTask<T> {
      */
     boolean isDone();
 
+    /**
+     * Executes up to {@code units} parts of the work to be done, stopping early if the task completes.
+     *
+     * <p>The {@link IncrementalRunner} adjusts {@code units} to fit the time available, based on how long
+     * previous calls took. Tasks which can work more efficiently on larger chunks may override this method,
+     * as long as the time taken remains roughly proportional to {@code units}. The default implementation
+     * calls {@link #execute()} up to {@code units} times.</p>
+     *
+     * @return the latest result, or {@code null} if no result is yet available.
+     */
+    default @Nullable T execute(int units) {
+        T result = null;
+        for (int i = 0; i < units; i++) {
+            result = execute();
+            if(isDone()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the priority of this task, relative to other tasks sharing an {@link IncrementalRunner}. Tasks
+     * with a higher priority are run first.
+     */
+    default int getPriority() {
+        return 0;
+    }
+
 }
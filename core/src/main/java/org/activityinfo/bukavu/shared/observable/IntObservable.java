@@ -0,0 +1,360 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.function.DoubleToIntFunction;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+/**
+ * An observable {@code int} value, which is stored and transformed without boxing.
+ *
+ * <p>Observers are only notified when the value actually changes, as judged by {@code ==}.</p>
+ *
+ * <p>Use {@link #boxed()} and {@link #unbox(Observable)} to convert to and from a generic {@link Observable}.</p>
+ *
+ * <p>Primitive observables do not take part in the height-ordered propagation of changes that generic
+ * {@code Observable}s use. Each one updates as soon as its sources notify it, so a value {@link #combine combined}
+ * from two values which are both derived from the same source is computed once for each of them, and briefly
+ * holds a result computed from one new and one old value. Where that matters, compute the result from a
+ * generic {@code Observable} instead.</p>
+ */
+public abstract class IntObservable extends PrimitiveObservable<IntObserver> {
+
+    private int value;
+
+    protected final int getCachedValue() {
+        return value;
+    }
+
+    /**
+     * Updates the value and notifies observers if it has changed.
+     */
+    protected final void fireChange(int newValue) {
+        if(!loaded || value != newValue) {
+            value = newValue;
+            loaded = true;
+            notifyObservers();
+        }
+    }
+
+    @Override
+    final void deliver(IntObserver observer) {
+        if(loaded) {
+            observer.onChange(value);
+        } else {
+            observer.onLoading();
+        }
+    }
+
+    public static IntObservable just(int value) {
+        IntObservable constant = new IntObservable() { };
+        constant.fireChange(value);
+        return constant;
+    }
+
+    /**
+     * Converts a generic {@code Observable<Integer>} to an {@code IntObservable}.
+     */
+    public static IntObservable unbox(Observable<Integer> source) {
+        return from(source, Integer::intValue);
+    }
+
+    /**
+     * @return a new {@code IntObservable} which applies {@code function} to each value of {@code source}.
+     */
+    public static <T> IntObservable from(Observable<T> source, ToIntFunction<T> function) {
+        return new FromObservable<>(source, function);
+    }
+
+    /**
+     * @return a new {@code IntObservable} which applies {@code function} to each value of {@code source}.
+     */
+    static IntObservable from(DoubleObservable source, DoubleToIntFunction function) {
+        return new FromDouble(source, function);
+    }
+
+    /**
+     * @return a new {@code IntObservable} that applies {@code function} to this value.
+     */
+    public final IntObservable transform(IntUnaryOperator function) {
+        return new Transformed(this, function);
+    }
+
+    public final DoubleObservable transformToDouble(IntToDoubleFunction function) {
+        return DoubleObservable.from(this, function);
+    }
+
+    public final BooleanObservable test(IntPredicate predicate) {
+        return BooleanObservable.from(this, predicate);
+    }
+
+    /**
+     * @return a generic {@code Observable} that applies {@code function} to each value of this
+     * {@code IntObservable}.
+     */
+    public final <R> Observable<R> transformToObj(IntFunction<R> function) {
+        return new ToObservable<>(this, function);
+    }
+
+    /**
+     * @return this value as a generic {@code Observable<Integer>}.
+     */
+    public final Observable<Integer> boxed() {
+        return transformToObj(Integer::valueOf);
+    }
+
+    /**
+     * @return a new {@code IntObservable} that applies {@code function} to the values of {@code a} and {@code b}.
+     * It is recomputed each time either one changes, even within the same propagation.
+     */
+    public static IntObservable combine(IntObservable a, IntObservable b, IntBinaryOperator function) {
+        return new Combined(a, b, function);
+    }
+
+    @GwtIncompatible
+    public final int waitFor() {
+        int[] result = new int[1];
+        boolean[] received = new boolean[1];
+        Subscription subscription = subscribe(newValue -> {
+            result[0] = newValue;
+            received[0] = true;
+        });
+        subscription.unsubscribe();
+        if(!received[0]) {
+            throw new IllegalStateException("Did not load synchronously");
+        }
+        return result[0];
+    }
+
+    private static final class Transformed extends IntObservable implements IntObserver {
+        private final IntObservable source;
+        private final IntUnaryOperator function;
+        private @Nullable Subscription subscription;
+
+        private Transformed(IntObservable source, IntUnaryOperator function) {
+            this.source = source;
+            this.function = function;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(int newValue) {
+            fireChange(function.applyAsInt(newValue));
+        }
+
+        @Override
+        public void onLoading() {
+            fireLoading();
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+    }
+
+    private static final class FromDouble extends IntObservable implements DoubleObserver {
+        private final DoubleObservable source;
+        private final DoubleToIntFunction function;
+        private @Nullable Subscription subscription;
+
+        private FromDouble(DoubleObservable source, DoubleToIntFunction function) {
+            this.source = source;
+            this.function = function;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(double newValue) {
+            fireChange(function.applyAsInt(newValue));
+        }
+
+        @Override
+        public void onLoading() {
+            fireLoading();
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+    }
+
+    private static final class Combined extends IntObservable {
+        private final IntObservable a;
+        private final IntObservable b;
+        private final IntBinaryOperator function;
+        private @Nullable Subscription subscriptionA;
+        private @Nullable Subscription subscriptionB;
+
+        private Combined(IntObservable a, IntObservable b, IntBinaryOperator function) {
+            this.a = a;
+            this.b = b;
+            this.function = function;
+        }
+
+        @Override
+        protected void onConnect() {
+            IntObserver observer = new IntObserver() {
+                @Override
+                public void onChange(int newValue) {
+                    recompute();
+                }
+
+                @Override
+                public void onLoading() {
+                    fireLoading();
+                }
+            };
+            subscriptionA = a.subscribe(observer);
+            subscriptionB = b.subscribe(observer);
+            recompute();
+        }
+
+        private void recompute() {
+            if(a.loaded && b.loaded) {
+                fireChange(function.applyAsInt(a.getCachedValue(), b.getCachedValue()));
+            } else {
+                fireLoading();
+            }
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscriptionA != null && subscriptionB != null : "onConnect not called";
+            subscriptionA.unsubscribe();
+            subscriptionB.unsubscribe();
+            subscriptionA = null;
+            subscriptionB = null;
+        }
+
+        @Override
+        int getHeight() {
+            return Math.max(a.getHeight(), b.getHeight());
+        }
+    }
+
+    private static final class FromObservable<T> extends IntObservable implements Observer<T> {
+        private final Observable<T> source;
+        private final ToIntFunction<T> function;
+        private @Nullable Subscription subscription;
+
+        private FromObservable(Observable<T> source, ToIntFunction<T> function) {
+            this.source = source;
+            this.function = function;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(@Nullable T newValue) {
+            if(newValue == null) {
+                fireLoading();
+            } else {
+                fireChange(function.applyAsInt(newValue));
+            }
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+    }
+
+    private static final class ToObservable<R> extends Observable<R> implements IntObserver {
+        private final IntObservable source;
+        private final IntFunction<R> function;
+        private @Nullable Subscription subscription;
+
+        private ToObservable(IntObservable source, IntFunction<R> function) {
+            this.source = source;
+            this.function = function;
+        }
+
+        @Override
+        protected void onConnect() {
+            subscription = source.subscribe(this);
+        }
+
+        @Override
+        public void onChange(int newValue) {
+            fireChange(function.apply(newValue));
+        }
+
+        @Override
+        public void onLoading() {
+            fireChange(null);
+        }
+
+        @Override
+        protected void onDisconnect() {
+            assert subscription != null : "onConnect not called";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        int getHeight() {
+            return source.getHeight();
+        }
+
+        @Override
+        @GwtIncompatible
+        public R waitFor() {
+            return function.apply(source.waitFor());
+        }
+    }
+}
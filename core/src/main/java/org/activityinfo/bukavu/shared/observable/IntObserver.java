@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+/**
+ * Receives notifications of changes to an {@link IntObservable}.
+ */
+@FunctionalInterface
+public interface IntObserver {
+
+    /**
+     * Called when the value changes, and upon subscription if the value is loaded.
+     */
+    void onChange(int newValue);
+
+    /**
+     * Called when the value is not yet available, including upon subscription.
+     */
+    default void onLoading() {
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits {@link ObservableMetrics} as Java Flight Recorder events, so that the observable graph can be
+ * profiled alongside the rest of the JVM. Events are only created when they are enabled in the
+ * current recording.
+ *
+ * <p>Fan-out and dependency events are not emitted, as they are too frequent to be useful in a recording.</p>
+ */
+@GwtIncompatible
+public class JfrObservableMetrics extends ObservableMetrics {
+
+    private static final RecomputeEvent RECOMPUTE = new RecomputeEvent();
+    private static final PropagationEvent PROPAGATION = new PropagationEvent();
+    private static final ConnectionEvent CONNECTION = new ConnectionEvent();
+
+    @Name("org.activityinfo.bukavu.Recompute")
+    @Label("Observable Recompute")
+    @Category("Bukavu")
+    @Description("A computed observable computed a new value")
+    static class RecomputeEvent extends Event {
+        @Label("Node")
+        String node;
+
+        @Label("Compute Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long computeTime;
+
+        @Label("Height")
+        int height;
+    }
+
+    @Name("org.activityinfo.bukavu.Propagation")
+    @Label("Observable Propagation")
+    @Category("Bukavu")
+    @Description("A change propagated through the observable graph")
+    static class PropagationEvent extends Event {
+        @Label("Nodes Recomputed")
+        int recomputed;
+
+        @Label("Max Height")
+        int maxHeight;
+    }
+
+    @Name("org.activityinfo.bukavu.Connection")
+    @Label("Observable Connection")
+    @Category("Bukavu")
+    @Description("An observable was connected or disconnected")
+    static class ConnectionEvent extends Event {
+        @Label("Node")
+        String node;
+
+        @Label("Connected")
+        boolean connected;
+    }
+
+    @Override
+    public void onRecompute(Observable<?> node, long nanos, int height) {
+        if(RECOMPUTE.isEnabled()) {
+            RecomputeEvent event = new RecomputeEvent();
+            event.node = describe(node);
+            event.computeTime = nanos;
+            event.height = height;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onPropagation(int recomputed, int maxHeight) {
+        if(PROPAGATION.isEnabled()) {
+            PropagationEvent event = new PropagationEvent();
+            event.recomputed = recomputed;
+            event.maxHeight = maxHeight;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onConnect(Observable<?> node) {
+        connection(node, true);
+    }
+
+    @Override
+    public void onDisconnect(Observable<?> node) {
+        connection(node, false);
+    }
+
+    private static void connection(Observable<?> node, boolean connected) {
+        if(CONNECTION.isEnabled()) {
+            ConnectionEvent event = new ConnectionEvent();
+            event.node = describe(node);
+            event.connected = connected;
+            event.commit();
+        }
+    }
+}
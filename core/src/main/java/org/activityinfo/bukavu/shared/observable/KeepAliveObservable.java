@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Stays subscribed to its source for a grace period after its last observer unsubscribes, so that
+ * an observer which subscribes again shortly afterwards finds the source and everything it depends on
+ * still connected and up to date.
+ *
+ * <p>Disconnected observables wait in the {@link WarmPool} until their grace period expires, or until they
+ * are evicted to make room for others.</p>
+ */
+class KeepAliveObservable<T> extends Observable<T> implements Observer<T> {
+
+    private final Observable<T> source;
+    private final int gracePeriod;
+
+    private @Nullable Subscription sourceSubscription;
+
+    /**
+     * The time at which the grace period expires, while this observable is in the warm pool.
+     */
+    long expiresAt;
+
+    KeepAliveObservable(Observable<T> source, int gracePeriod) {
+        this.source = source;
+        this.gracePeriod = gracePeriod;
+    }
+
+    @Override
+    protected void onConnect() {
+        if(sourceSubscription == null) {
+            sourceSubscription = source.subscribe(this);
+        } else {
+            // Still warm: we have been following the source all along
+            WarmPool.remove(this);
+        }
+    }
+
+    @Override
+    public void onChange(@Nullable T newValue) {
+        fireChange(newValue);
+    }
+
+    @Override
+    protected void onDisconnect() {
+        if(gracePeriod > 0) {
+            WarmPool.add(this, gracePeriod);
+        } else {
+            release();
+        }
+    }
+
+    /**
+     * Unsubscribes from the source, once the grace period has expired or we have been evicted from the pool.
+     */
+    void release() {
+        assert !isConnected();
+        if(sourceSubscription != null) {
+            sourceSubscription.unsubscribe();
+            sourceSubscription = null;
+        }
+        cachedValue = null;
+    }
+
+    boolean isWarm() {
+        return !isConnected() && sourceSubscription != null;
+    }
+
+    @Override
+    int getHeight() {
+        return source.getHeight();
+    }
+
+    @Override
+    @GwtIncompatible
+    public T waitFor() {
+        return source.waitFor();
+    }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        return evaluation.join(source);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+/**
+ * The priority lanes of the {@link PriorityScheduler}, from most to least urgent.
+ */
+public enum Lane {
+
+    /**
+     * Work the user is waiting on, such as responding to input or rendering its result.
+     */
+    USER_BLOCKING(250),
+
+    /**
+     * Work whose results should appear soon, but which should not delay the response to input.
+     */
+    NORMAL(5_000),
+
+    /**
+     * Background work, such as preparing data that is not yet visible.
+     */
+    IDLE(30_000);
+
+    private final long timeoutMillis;
+
+    Lane(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the longest a task in this lane should wait before it is run ahead of more urgent work.
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+/**
+ * An {@link Observer} which can be told that a value has become stale without being given the new value.
+ *
+ * <p>Observables computed with the {@link LazyScheduler} do not recompute when their arguments change if
+ * all of their observers are {@code LazyObserver}s. Instead, they call {@link #onInvalidate()}, and compute
+ * the new value only when it is read with {@link Observable#pull()}.</p>
+ *
+ * <p>{@link #onChange(Object)} is still called on subscription, and whenever a new value has been
+ * computed, either because it was pulled by this or another observer, or because the observable
+ * has other observers which are not lazy.</p>
+ */
+public interface LazyObserver<T> extends Observer<T> {
+
+    /**
+     * Called when the value of the observable has become stale. The observable will not call
+     * {@code onInvalidate()} again until its value has been brought up to date.
+     */
+    void onInvalidate();
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+/**
+ * Computes values on demand rather than as soon as their arguments change.
+ *
+ * <p>An observable computed with the {@code LazyScheduler}, for example with
+ * {@code observable.transform(LazyScheduler.INSTANCE, function)}, only marks itself as stale
+ * when one of its arguments changes, and notifies its {@link LazyObserver}s with
+ * {@link LazyObserver#onInvalidate()}. Further changes are absorbed until the value is read
+ * with {@link Observable#pull()}, at which point stale arguments are brought up to date and
+ * the value is computed once. If the arguments turn out to be unchanged, the value is not
+ * recomputed at all.</p>
+ *
+ * <p>This pays off for graphs with many intermediate values that change in bursts, where
+ * only a few values are actually read before the next change. A lazy observable that has
+ * any observer which is not a {@link LazyObserver} must push its values, and so behaves just
+ * as if it were computed with the {@link SynchronousScheduler}.</p>
+ */
+public enum LazyScheduler implements Scheduler {
+
+    INSTANCE;
+
+    @Override
+    public void schedule(Runnable runnable) {
+        runnable.run();
+    }
+}
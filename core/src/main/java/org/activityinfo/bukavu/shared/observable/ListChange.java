@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A single change to an {@link ObservableList}.
+ *
+ * <p>Changes are delivered in batches, and the index of each change refers to the list as it stands
+ * after all the preceding changes in the same batch have been applied.</p>
+ */
+public final class ListChange<T> {
+
+    public enum Kind {
+        INSERT,
+        REMOVE,
+        UPDATE,
+        MOVE
+    }
+
+    private final Kind kind;
+    private final int index;
+    private final int fromIndex;
+    private final @Nullable T oldValue;
+    private final @Nullable T newValue;
+
+    private ListChange(Kind kind, int index, int fromIndex, @Nullable T oldValue, @Nullable T newValue) {
+        this.kind = kind;
+        this.index = index;
+        this.fromIndex = fromIndex;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    public static <T> ListChange<T> insert(int index, @Nullable T value) {
+        return new ListChange<>(Kind.INSERT, index, -1, null, value);
+    }
+
+    public static <T> ListChange<T> remove(int index, @Nullable T oldValue) {
+        return new ListChange<>(Kind.REMOVE, index, -1, oldValue, null);
+    }
+
+    public static <T> ListChange<T> update(int index, @Nullable T oldValue, @Nullable T newValue) {
+        return new ListChange<>(Kind.UPDATE, index, -1, oldValue, newValue);
+    }
+
+    /**
+     * @return a change which moves an element from {@code fromIndex} to {@code toIndex}, where {@code toIndex}
+     * is the index of the element after the move.
+     */
+    public static <T> ListChange<T> move(int fromIndex, int toIndex, @Nullable T value) {
+        return new ListChange<>(Kind.MOVE, toIndex, fromIndex, value, value);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the index at which an element was inserted, removed, or updated, or to which it was moved.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the index from which an element was moved.
+     */
+    public int getFromIndex() {
+        return fromIndex;
+    }
+
+    /**
+     * @return the element removed, replaced, or moved.
+     */
+    public @Nullable T getOldValue() {
+        return oldValue;
+    }
+
+    /**
+     * @return the element inserted, the replacement, or the element moved.
+     */
+    public @Nullable T getNewValue() {
+        return newValue;
+    }
+
+    /**
+     * Applies this change to {@code list}.
+     */
+    public void applyTo(List<@Nullable T> list) {
+        switch (kind) {
+            case INSERT:
+                list.add(index, newValue);
+                break;
+            case REMOVE:
+                list.remove(index);
+                break;
+            case UPDATE:
+                list.set(index, newValue);
+                break;
+            case MOVE:
+                list.add(index, list.remove(fromIndex));
+                break;
+        }
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ListChange<?> that = (ListChange<?>) o;
+        return kind == that.kind &&
+                index == that.index &&
+                fromIndex == that.fromIndex &&
+                Objects.equals(oldValue, that.oldValue) &&
+                Objects.equals(newValue, that.newValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, index, fromIndex, oldValue, newValue);
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case INSERT:
+                return "insert(" + index + ", " + newValue + ")";
+            case REMOVE:
+                return "remove(" + index + ", " + oldValue + ")";
+            case UPDATE:
+                return "update(" + index + ", " + oldValue + " -> " + newValue + ")";
+            default:
+                return "move(" + fromIndex + " -> " + index + ", " + newValue + ")";
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import java.util.List;
+
+/**
+ * Receives changes to an {@link ObservableList}.
+ */
+public interface ListObserver<T> {
+
+    /**
+     * Called with a batch of changes to the list. The first batch received after subscribing, or
+     * after the list has finished loading again, inserts every element of the list.
+     */
+    void onChanges(List<ListChange<T>> changes);
+
+    /**
+     * Called when the list, or any of its elements, is loading.
+     */
+    default void onLoading() {
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.List;
+
+/**
+ * Adapts an {@link ObservableList} to an {@code Observable} of copies of its contents.
+ *
+ * <p>The copy is taken once the propagation of a change reaches this node, so each round
+ * of changes to the list is copied only once.</p>
+ */
+class ListSnapshotObservable<T> extends Observable<List<T>> implements ListObserver<T> {
+
+    private final ObservableList<T> list;
+    private @Nullable Subscription subscription;
+
+    private final DeferredPublisher publisher = new DeferredPublisher(this::publishSnapshot);
+
+    ListSnapshotObservable(ObservableList<T> list) {
+        this.list = list;
+    }
+
+    @Override
+    protected void onConnect() {
+        subscription = list.subscribe(this);
+        publisher.connect(list.getHeight());
+    }
+
+    @Override
+    int getHeight() {
+        return publisher.getHeight();
+    }
+
+    @Override
+    public void onChanges(List<ListChange<T>> changes) {
+        publishLater();
+    }
+
+    @Override
+    public void onLoading() {
+        publishLater();
+    }
+
+    private void publishLater() {
+        if(isConnecting()) {
+            publishSnapshot();
+        } else {
+            publisher.schedule(list.getHeight());
+        }
+    }
+
+    private void publishSnapshot() {
+        if(isConnected() || isConnecting()) {
+            fireChange(list.snapshot());
+        }
+    }
+
+    @Override
+    protected void onDisconnect() {
+        assert subscription != null : "onConnect not called";
+        subscription.unsubscribe();
+        subscription = null;
+    }
+}
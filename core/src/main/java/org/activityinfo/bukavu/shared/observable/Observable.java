@@ -16,13 +16,13 @@
 package org.activityinfo.bukavu.shared.observable;
 
 import com.google.common.collect.ImmutableList;
-import com.google.gwt.core.client.GWT;
 import com.google.gwt.core.shared.GwtIncompatible;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.util.*;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
@@ -40,7 +40,34 @@ public abstract class Observable<T> {
 
     protected @Nullable T cachedValue;
 
-    private final List<org.activityinfo.bukavu.shared.observable.Observer<T>> observers = new ArrayList<>();
+    private @Nullable String debugId;
+
+    /**
+     * Subscribed observers, allocated on first subscription.
+     */
+    private final ObserverRegistry<ObserverSlot<T>> observers = new ObserverRegistry<>();
+
+    /**
+     * The number of currently subscribed observers which are not {@link LazyObserver}s.
+     */
+    private int eagerObserverCount = 0;
+
+    private static final class ObserverSlot<T> extends ObserverRegistry.Slot {
+        private final Observable<T> observable;
+        private final org.activityinfo.bukavu.shared.observable.Observer<T> observer;
+        private final boolean lazy;
+
+        private ObserverSlot(Observable<T> observable, org.activityinfo.bukavu.shared.observable.Observer<T> observer) {
+            this.observable = observable;
+            this.observer = observer;
+            this.lazy = observer instanceof LazyObserver;
+        }
+
+        @Override
+        public void unsubscribe() {
+            observable.removeObserver(this);
+        }
+    }
 
     /**
      * @return true if the value is being loaded across the network, is being calculated, or
@@ -67,27 +94,53 @@ public abstract class Observable<T> {
     public final Subscription subscribe(final org.activityinfo.bukavu.shared.observable.Observer<T> observer) {
 
         if(!connecting && observers.isEmpty()) {
+            ObservableMetrics metrics = ObservableMetrics.installed;
+            if(metrics != null) {
+                metrics.onConnect(this);
+            }
             try {
                 connecting = true;
                 onConnect();
             } finally {
                 connecting = false;
             }
+        } else if(!connecting) {
+            // Don't hand a new observer a stale value
+            updateIfStale();
         }
-        observers.add(observer);
+        ObserverSlot<T> slot = new ObserverSlot<>(this, observer);
+        addObserver(slot);
 
         observer.onChange(cachedValue);
 
-        return new Subscription() {
-            @Override
-            public void unsubscribe() {
-                boolean removed = observers.remove(observer);
-                assert removed : "Already unsubscribed!";
-                if(observers.isEmpty()) {
-                    onDisconnect();
-                }
+        return slot;
+    }
+
+    private void addObserver(ObserverSlot<T> slot) {
+        // New observers always go at the end, so that an observer added during
+        // notification is not notified a second time.
+        observers.add(slot);
+        if(!slot.lazy) {
+            eagerObserverCount++;
+        }
+    }
+
+    private void removeObserver(ObserverSlot<T> slot) {
+        if(!observers.remove(slot)) {
+            // Already unsubscribed
+            return;
+        }
+        if(!slot.lazy) {
+            eagerObserverCount--;
+        }
+
+        if(observers.isEmpty()) {
+            ObservableMetrics metrics = ObservableMetrics.installed;
+            if(metrics != null) {
+                metrics.onDisconnect(this);
             }
-        };
+            onDisconnect();
+        }
     }
 
     /**
@@ -97,6 +150,52 @@ public abstract class Observable<T> {
         return !observers.isEmpty();
     }
 
+    /**
+     * @return true if any subscribed observer is not a {@link LazyObserver}, and so must be
+     * pushed new values as soon as they change.
+     */
+    final boolean hasEagerObservers() {
+        return eagerObserverCount > 0;
+    }
+
+    /**
+     * Brings this observable up to date, if it has been invalidated but not yet recomputed,
+     * and returns its current value.
+     *
+     * <p>Only observables computed with the {@link LazyScheduler} can be stale, all others
+     * simply return their current value.</p>
+     *
+     * @return the current value, or {@code null} if it is loading.
+     */
+    public final @Nullable T pull() {
+        if(isConnected()) {
+            updateIfStale();
+        }
+        return cachedValue;
+    }
+
+    /**
+     * Returns the current value of this observable.
+     *
+     * <p>When called from within a function passed to {@link #compute(Supplier)}, the read is tracked:
+     * the computed observable subscribes to this observable, and recomputes when it changes. If this
+     * observable is still loading, the computation is abandoned and the computed value is loading too.</p>
+     *
+     * @return the current value, or {@code null} if it is loading and this read is not tracked.
+     */
+    public @Nullable T get() {
+        if(TrackedObservable.isTracking()) {
+            return TrackedObservable.track(this);
+        }
+        return cachedValue;
+    }
+
+    /**
+     * Recomputes this observable if it has been invalidated but not yet recomputed.
+     */
+    void updateIfStale() {
+    }
+
     /**
      * Called when an {@link org.activityinfo.bukavu.shared.observable.Observer} subscribes to notifications.
      *
@@ -123,19 +222,98 @@ public abstract class Observable<T> {
             // Do not fire while connecting, we will call observer.onChange() ourselves
             // after connection is complete.
             if(!connecting) {
-                int s = observers.size();
-                if(s == 1) {
-                    observers.get(0).onChange(value);
-                } else if(s > 1) {
-                    List<org.activityinfo.bukavu.shared.observable.Observer<T>> toNotify = new ArrayList<>(observers);
-                    for (org.activityinfo.bukavu.shared.observable.Observer<T> observer : toNotify) {
-                        observer.onChange(value);
+                // Observers subscribing during notification are added after this point,
+                // and receive the current value upon subscription.
+                if(observers.isEmpty()) {
+                    return;
+                }
+                ObservableMetrics metrics = ObservableMetrics.installed;
+                if(metrics != null) {
+                    metrics.onNotify(this, observers.size());
+                }
+                // Computed observables downstream are queued rather than recomputed
+                // immediately, and then updated in height order once we're done here.
+                Propagation.enter();
+                int end = observers.beginNotify();
+                try {
+                    for (int i = 0; i < end; i++) {
+                        ObserverSlot<T> slot = observers.get(i);
+                        if(slot != null) {
+                            slot.observer.onChange(value);
+                        }
                     }
+                } finally {
+                    observers.endNotify();
+                    Propagation.exit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Notifies {@link LazyObserver}s that this observable's value is stale, without computing
+     * the new value.
+     */
+    @SuppressWarnings("unchecked")
+    final void fireInvalidate() {
+        if(connecting || observers.isEmpty()) {
+            return;
+        }
+        Propagation.enter();
+        int end = observers.beginNotify();
+        try {
+            for (int i = 0; i < end; i++) {
+                ObserverSlot<T> slot = observers.get(i);
+                if(slot != null && slot.lazy) {
+                    ((LazyObserver<T>) slot.observer).onInvalidate();
                 }
             }
+        } finally {
+            observers.endNotify();
+            Propagation.exit();
         }
     }
 
+    /**
+     * Sets an identifier for this observable, under which {@link ObservableMetrics} are recorded.
+     *
+     * @return this {@code Observable}
+     */
+    public final Observable<T> debugId(String debugId) {
+        this.debugId = debugId;
+        return this;
+    }
+
+    public final @Nullable String getDebugId() {
+        return debugId;
+    }
+
+    /**
+     * @return the height of this observable in the graph of computed values. Observables that
+     * are not computed from other observables have a height of zero, while observables that simply
+     * forward the values of another observable share the height of their source.
+     */
+    int getHeight() {
+        return 0;
+    }
+
+    /**
+     * Runs {@code updates} as a single transaction. Changes to {@link StatefulValue}s, {@link PendingValue}s
+     * and primitive values like {@link IntValue} made while {@code updates} runs are not visible to observers until it completes, after which
+     * each changed value fires once with its final value, and values computed from them are recomputed
+     * at most once.
+     *
+     * <p>Batches may be nested, in which case notifications are deferred until the outermost batch completes.</p>
+     *
+     * <p>A batch that fails still commits: if {@code updates} throws, the changes made before the exception
+     * are published to observers, and the exception is then rethrown. Changes cannot be rolled back, so this
+     * keeps observers consistent with the values their sources now hold. If an observer throws while the batch
+     * is committed, the remaining observers are still notified, and the first exception is rethrown.</p>
+     */
+    public static void batch(Runnable updates) {
+        Propagation.batch(updates);
+    }
+
     /**
      * Transforms this {@code Observable}'s using the given {@code function}
      * @param function a function that is applied to the current any subsequent value of this {@code Observable}
@@ -154,14 +332,41 @@ public abstract class Observable<T> {
      * @return a new {@code Observable}
      */
     public final <R> Observable<R> transform(Scheduler scheduler, final Function<T, R> function) {
-        return new ComputedObservable<R>(scheduler, this) {
-            @Override
-            @SuppressWarnings("unchecked")
-            protected R compute(Object[] arguments) {
-                T argumentValue = (T) arguments[0];
-                return function.apply(argumentValue);
+        if(scheduler == SynchronousScheduler.INSTANCE) {
+            Observable<R> fused = fuse(new FusedObservable.Map(function));
+            if(fused != null) {
+                return fused;
             }
-        };
+        }
+        return new ComputedObservable1<>(scheduler, this, function);
+    }
+
+    /**
+     * Attempts to combine {@code stage} with the operator that produced this {@code Observable},
+     * so that both are evaluated by a single node. Only chains started with {@link #fused()} can be fused.
+     *
+     * @return the fused {@code Observable}, or {@code null} if this {@code Observable} cannot be fused.
+     */
+    @Nullable <R> Observable<R> fuse(FusedObservable.Stage stage) {
+        return null;
+    }
+
+    /**
+     * Starts a chain of synchronous operators that are evaluated by a single node.
+     *
+     * <p>{@link #transform(Function)}, {@link #toOptional()} and {@link #cache(CachePredicate)} applied to
+     * the returned {@code Observable}, and to the results of those operators, are combined with the
+     * operators before them instead of each creating a node of their own. For example,
+     * {@code x.fused().transform(f).transform(g).cacheIfEqual()} subscribes once to {@code x}, and
+     * is recomputed in a single step when {@code x} changes.</p>
+     *
+     * <p>Intermediate results within the chain are <strong>not</strong> shared. Each operator creates a
+     * new node that evaluates the whole chain, so if {@code y = x.fused().transform(f)} is observed,
+     * or used to build several chains, {@code f} is evaluated once by each of them. Only use this
+     * where the intermediate steps of the chain are observed by nothing else.</p>
+     */
+    public final Observable<T> fused() {
+        return new FusedObservable<>(this);
     }
 
     public final <R> Observable<R> transformIf(Function<T, java.util.Optional<R>> function) {
@@ -173,16 +378,15 @@ public abstract class Observable<T> {
     }
 
     public static <T, U, R> Observable<R> transform(Scheduler scheduler, Observable<T> t, Observable<U> u, final BiFunction<T, U, R> function) {
-        return new ComputedObservable<R>(scheduler, t, u) {
+        return new ComputedObservable2<>(scheduler, t, u, function);
+    }
 
-            @Override
-            @SuppressWarnings("unchecked")
-            protected R compute(Object[] arguments) {
-                T t = (T)arguments[0];
-                U u = (U)arguments[1];
-                return function.apply(t, u);
-            }
-        };
+    public static <T, U, V, R> Observable<R> transform(Observable<T> t, Observable<U> u, Observable<V> v, final TriFunction<T, U, V, R> function) {
+        return transform(SynchronousScheduler.INSTANCE, t, u, v, function);
+    }
+
+    public static <T, U, V, R> Observable<R> transform(Scheduler scheduler, Observable<T> t, Observable<U> u, Observable<V> v, final TriFunction<T, U, V, R> function) {
+        return new ComputedObservable3<>(scheduler, t, u, v, function);
     }
 
     public <R> Observable<R> join(final Function<T, Observable<R>> function) {
@@ -223,7 +427,7 @@ public abstract class Observable<T> {
 
     @SuppressWarnings("unchecked")
     public static <T> Observable<List<T>> flatten(Scheduler scheduler, List<Observable<T>> list) {
-        return new ComputedObservable<List<T>>(scheduler, (List)list) {
+        return new ComputedObservableN<List<T>>(scheduler, list) {
             @Override
             protected List<T> compute(Object[] arguments) {
                 return (List<T>) ImmutableList.copyOf(arguments);
@@ -236,11 +440,39 @@ public abstract class Observable<T> {
         return flatten(SynchronousScheduler.INSTANCE, list);
     }
 
+    /**
+     * Aggregates the values of the given observables. When one of them changes, {@code retract} is applied to
+     * its old value and {@code accumulate} to its new value, so that the cost of an update does not depend on the
+     * number of observables.
+     *
+     * @param identity the result for an empty list.
+     * @param accumulate adds a value to the result
+     * @param retract removes a value from the result, undoing the effect of {@code accumulate}.
+     */
+    public static <T, R> Observable<R> reduce(List<? extends Observable<T>> list, R identity,
+                                              BiFunction<R, T, R> accumulate, BiFunction<R, T, R> retract) {
+        return reduce(list, Reducers.of(identity, accumulate, retract));
+    }
+
+    /**
+     * Aggregates the values of the given observables using the {@link Reducer}s provided by {@code reducer}.
+     * When one of the observables changes, only its old and new values are passed to the reducer.
+     *
+     * @see Reducers
+     */
+    public static <T, R> Observable<R> reduce(List<? extends Observable<T>> list, Supplier<? extends Reducer<T, R>> reducer) {
+        return ObservableList.flatten(list).reduce(reducer);
+    }
+
     /**
      *
      * @return a new Observable whose value if is {@code Optional.empty()} if this Observable is loading.
      */
     public Observable<java.util.Optional<T>> toOptional() {
+        Observable<java.util.Optional<T>> fused = fuse(FusedObservable.OPTIONAL);
+        if(fused != null) {
+            return fused;
+        }
         return new OptionalObservable<T>(this);
     }
 
@@ -248,6 +480,8 @@ public abstract class Observable<T> {
      * Given a collection which is observable, apply the function {@code f} to each of its elements, and join the results
      * in a new list which is itself observable.
      *
+     * <p>Note that {@code f} is applied to every element each time the collection changes. For long lists, consider
+     * {@link ObservableList#flatMap(Observable, Function, Function)}, which applies {@code f} only to new elements.</p>
      */
     public static <T, TT extends Iterable<T>, R> Observable<List<R>> flatMap(Observable<TT> observableCollection, final Function<T, Observable<R>> f) {
         return observableCollection.join(new Function<TT, Observable<List<R>>>() {
@@ -265,6 +499,10 @@ public abstract class Observable<T> {
     /**
      * Given a list of inputs, apply the given {@code function} to each element, then flatten the resulting list
      * of obserables into an observable list.
+     *
+     * <p>When the result is {@linkplain #waitForParallel() evaluated in parallel}, the observables returned by
+     * {@code function} are evaluated concurrently, provided that the values they are loaded from declare
+     * {@link #isWaitForThreadSafe()}.</p>
      */
     public static <T, R> Observable<List<R>> flatJoin(Iterable<T> inputList, Function<T, Observable<R>> function) {
         List<Observable<R>> applied = new ArrayList<>();
@@ -293,6 +531,68 @@ public abstract class Observable<T> {
         return collector.get(0);
     }
 
+    /**
+     * Waits for this observable to load, evaluating independent arguments concurrently on the common
+     * {@link java.util.concurrent.ForkJoinPool}.
+     *
+     * @see #waitForParallel(java.util.concurrent.ForkJoinPool)
+     */
+    @GwtIncompatible
+    public final T waitForParallel() {
+        return waitForParallel(java.util.concurrent.ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Waits for this observable to load, evaluating independent arguments concurrently on the given {@code pool}.
+     *
+     * <p>Each observable in the graph is evaluated at most once, even if it is reachable through several
+     * paths. Only the computations of observables derived from other observables run concurrently.
+     * Observables which are not computed from other observables are evaluated using their own
+     * {@link #waitFor()} methods, one at a time, unless they declare {@link #isWaitForThreadSafe()}.
+     * {@link StatefulValue}, {@link PendingValue} and constants do so, as should loaders which call a remote
+     * service without touching the graph.</p>
+     *
+     * <p>As with {@link #waitFor()}, the graph must not be in use on other threads during the evaluation.</p>
+     */
+    @GwtIncompatible
+    public final T waitForParallel(java.util.concurrent.ForkJoinPool pool) {
+        return ParallelEvaluation.evaluate(pool, this);
+    }
+
+    /**
+     * Computes the value of this observable as part of a parallel evaluation. Observables computed
+     * from other observables should override this method to obtain the values of their arguments
+     * from the {@code evaluation}.
+     */
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        return evaluation.leaf(this);
+    }
+
+    /**
+     * @return true if this observable's evaluation may be forked to another thread during a
+     * {@link #waitForParallel() parallel evaluation}.
+     */
+    @GwtIncompatible
+    boolean isForkable() {
+        return isWaitForThreadSafe();
+    }
+
+    /**
+     * Observables which are not computed from other observables, such as loaders calling a remote service,
+     * can override this method to allow {@link #waitForParallel()} to call their {@link #waitFor()} methods
+     * concurrently with each other.
+     *
+     * <p>This is only safe if {@code waitFor()} does not subscribe to any observable, or otherwise update the
+     * state of the graph. The default implementation of {@code waitFor()} subscribes to this observable.</p>
+     *
+     * @return true if {@link #waitFor()} can be called from any thread while other observables are evaluated.
+     */
+    @GwtIncompatible
+    protected boolean isWaitForThreadSafe() {
+        return false;
+    }
+
     /**
      * Returns a new observable that waits for this observable to finish loading,
      * and then doesn't subsequently change. Useful for loading a value from the server
@@ -304,9 +604,19 @@ public abstract class Observable<T> {
 
     /**
      * Executes a task that can be divided into batches in the browser to avoid blocking the event loop.
+     *
+     * <p>The task shares the calling thread's {@linkplain IncrementalRunner#getDefault() default runner} with other
+     * incremental tasks, which runs them for up to 8 ms per frame.</p>
      */
     public static <T> Observable<T> incremental(IncrementalTask<T> task) {
-        return new IncrementalObservable<>(task, EventLoopScheduler.SCHEDULER);
+        return incremental(task, IncrementalRunner.getDefault());
+    }
+
+    /**
+     * Executes a task that can be divided into batches, using the given {@code runner}.
+     */
+    public static <T> Observable<T> incremental(IncrementalTask<T> task, IncrementalRunner runner) {
+        return new IncrementalObservable<>(task, runner);
     }
 
     /**
@@ -318,7 +628,7 @@ public abstract class Observable<T> {
      *
      */
     public final Observable<T> cacheIfEqual() {
-        return new CachedObservable<>(this, Objects::equals);
+        return cache(Objects::equals);
     }
 
     public final Observable<T> cacheIfSame() {
@@ -326,9 +636,35 @@ public abstract class Observable<T> {
     }
 
     public final Observable<T> cache(CachePredicate<T> predicate) {
+        Observable<T> fused = fuse(new FusedObservable.Cache(predicate));
+        if(fused != null) {
+            return fused;
+        }
         return new CachedObservable<>(this, predicate);
     }
 
+    /**
+     * Returns a new {@code Observable} that stays connected to this {@code Observable} for
+     * {@link WarmPool#getDefaultGracePeriod() a few seconds} after its last observer unsubscribes.
+     *
+     * @see #keepAlive(int)
+     */
+    public final Observable<T> keepAlive() {
+        return keepAlive(WarmPool.getDefaultGracePeriod());
+    }
+
+    /**
+     * Returns a new {@code Observable} that stays connected to this {@code Observable} for the given
+     * number of milliseconds after its last observer unsubscribes.
+     *
+     * <p>This is useful for observables used by components which are frequently unmounted and remounted,
+     * so that a remount does not need to reconnect to, and possibly reload, the whole graph upstream. The
+     * number of observables kept alive at any time is bounded by the {@link WarmPool}.</p>
+     */
+    public final Observable<T> keepAlive(int milliseconds) {
+        return new KeepAliveObservable<>(this, milliseconds);
+    }
+
     /**
      * Returns a new {@code Observable} value that does not fire any additional loading events after the initial
      * loading event.
@@ -345,7 +681,7 @@ public abstract class Observable<T> {
      *
      */
     public final Observable<T> optimistic(int milliseconds) {
-        return new OptimisticObservableWithTimeout<>(this, milliseconds, null);
+        return new OptimisticObservableWithTimeout<>(this, milliseconds, null, TimerWheel.getDefault());
     }
 
 
@@ -380,12 +716,31 @@ public abstract class Observable<T> {
     }
 
 
+    /**
+     * Returns a new {@code Observable} value that only changes once this value has stopped changing for the
+     * given number of milliseconds.
+     *
+     * <p>Timeouts are scheduled on the calling thread's {@linkplain TimerWheel#getDefault() default} {@link TimerWheel}.
+     * Outside the browser, its clock jumps ahead to each timeout, so changes are passed on immediately.</p>
+     */
     public final Observable<T> debounce(int milliseconds) {
-        if(!GWT.isClient()) {
-            return this;
-        } else {
-            return new DebouncedObservable<>(this, milliseconds);
-        }
+        return new DebouncedObservable<>(this, milliseconds, TimerWheel.getDefault());
+    }
+
+    /**
+     * Returns a new {@code Observable} value that passes on the first change at once, and then changes at most
+     * once every {@code milliseconds}, taking the latest value of this observable.
+     */
+    public final Observable<T> throttle(int milliseconds) {
+        return new ThrottledObservable<>(this, milliseconds, TimerWheel.getDefault());
+    }
+
+    /**
+     * Returns a new {@code Observable} value that takes the latest value of this observable every
+     * {@code milliseconds}, while it is changing.
+     */
+    public final Observable<T> sample(int milliseconds) {
+        return new SampledObservable<>(this, milliseconds, TimerWheel.getDefault());
     }
 
     /**
@@ -405,4 +760,44 @@ public abstract class Observable<T> {
         return new ObservableComputedMap<>(keys, function);
     }
 
+
+    /**
+     * Creates an {@code Observable} computed by {@code function}, which reads the values of other observables
+     * with {@link #get()}. For example:
+     *
+     * <pre>
+     * Observable&lt;Integer&gt; total = Observable.compute(() -&gt; a.get() + (flag.get() ? b.get() : 0));
+     * </pre>
+     *
+     * <p>The observables that {@code function} reads are tracked each time it runs, and the result subscribes
+     * only to those. In the example above, {@code total} is not subscribed to {@code b} while {@code flag} is
+     * false, and so is not recomputed when {@code b} changes.</p>
+     *
+     * <p>If any observable read is still loading, the result is loading too. The run is abandoned by throwing an
+     * {@code Error} from {@link #get()}, so {@code function} can safely catch {@code Exception}s, but must not
+     * catch {@code Throwable} or {@code Error} around its reads.</p>
+     *
+     * <p>Tracking is confined to the calling thread.</p>
+     */
+    public static <T> Observable<T> compute(Supplier<T> function) {
+        return new TrackedObservable<>(SynchronousScheduler.INSTANCE, function);
+    }
+
+    /**
+     * Creates an {@code Observable} computed by {@code function}, like {@link #compute(Supplier)}, using the given
+     * {@code scheduler} to decide when to recompute. Because it must track the observables it reads,
+     * {@code function} always runs on the calling thread, so this is mainly useful with the {@link LazyScheduler}.
+     */
+    public static <T> Observable<T> compute(Scheduler scheduler, Supplier<T> function) {
+        return new TrackedObservable<>(scheduler, function);
+    }
+
+    /**
+     * Runs {@code function} without tracking the observables it reads with {@link #get()}, even when called
+     * from within {@link #compute(Supplier)}.
+     */
+    public static <T> T untracked(Supplier<T> function) {
+        return TrackedObservable.runUntracked(function);
+    }
+
 }
@@ -15,7 +15,7 @@
  */
 package org.activityinfo.bukavu.shared.observable;
 
-import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.shared.GWT;
 import com.google.gwt.core.client.Scheduler;
 import com.google.gwt.core.shared.GwtIncompatible;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -88,11 +88,27 @@ public class ObservableComputedMap<K, T> extends Observable<Map<K, Observable<T>
         }
     }
 
+    @Override
+    int getHeight() {
+        return keys.getHeight();
+    }
+
     @GwtIncompatible
     @Override
     public Map<K, Observable<T>> waitFor() {
+        return buildMap(keys.waitFor());
+    }
+
+    @GwtIncompatible
+    @Override
+    Map<K, Observable<T>> waitFor(ParallelEvaluation evaluation) {
+        return buildMap(evaluation.join(keys));
+    }
+
+    @GwtIncompatible
+    private Map<K, Observable<T>> buildMap(Collection<K> evaluatedKeys) {
         Map<K, Observable<T>> newMap = new HashMap<>();
-        for (K key : keys.waitFor()) {
+        for (K key : evaluatedKeys) {
             newMap.put(key, function.apply(key));
         }
         return newMap;
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.common.collect.ImmutableList;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * An observable list which notifies its observers of the individual elements inserted, removed,
+ * updated or moved, rather than the whole list.
+ *
+ * <p>Where {@link Observable#flatten(List)} and {@link Observable#flatMap(Observable, Function)} rebuild
+ * the entire list when any element changes, {@link #flatten(List)} and {@link #flatMap(Observable, Function, Function)}
+ * propagate only what has changed, so that the cost of a change does not depend on the length of the list.</p>
+ *
+ * <p>Like {@link Observable}, a list is connected to its sources only while it has observers.</p>
+ */
+public abstract class ObservableList<T> {
+
+    /**
+     * The current contents of the list. Elements may be {@code null} while the list is loading.
+     */
+    private final List<@Nullable T> elements = new ArrayList<>();
+
+    private boolean loaded = false;
+
+    /**
+     * Changes applied since observers were last notified.
+     */
+    private List<ListChange<T>> pending = new ArrayList<>();
+
+    private final ObserverRegistry<ListSubscription<T>> subscriptions = new ObserverRegistry<>();
+
+    private boolean connecting = false;
+
+    private final DeferredPublisher publisher = new DeferredPublisher(this::publishQueued);
+
+    private static final class ListSubscription<T> extends ObserverRegistry.Slot {
+        private final ObservableList<T> list;
+        private final ListObserver<T> observer;
+
+        /**
+         * True if the observer has received the full contents of the list, and can follow
+         * subsequent changes.
+         */
+        private boolean primed = false;
+
+        private ListSubscription(ObservableList<T> list, ListObserver<T> observer) {
+            this.list = list;
+            this.observer = observer;
+        }
+
+        @Override
+        public void unsubscribe() {
+            list.removeSubscription(this);
+        }
+    }
+
+    public final Subscription subscribe(ListObserver<T> observer) {
+        if(subscriptions.isEmpty()) {
+            try {
+                connecting = true;
+                onConnect();
+            } finally {
+                connecting = false;
+            }
+        }
+        ListSubscription<T> subscription = new ListSubscription<>(this, observer);
+        subscriptions.add(subscription);
+
+        if(!loaded) {
+            observer.onLoading();
+        } else if(pending.isEmpty()) {
+            subscription.primed = true;
+            observer.onChanges(contentsAsInserts());
+        }
+        // Otherwise, changes have been applied that have not yet been published, and
+        // the observer will receive the full contents when they are.
+
+        return subscription;
+    }
+
+    private void removeSubscription(ListSubscription<T> subscription) {
+        if(!subscriptions.remove(subscription)) {
+            // Already unsubscribed
+            return;
+        }
+        if(subscriptions.isEmpty()) {
+            onDisconnect();
+            elements.clear();
+            pending.clear();
+            loaded = false;
+        }
+    }
+
+    public final boolean isConnected() {
+        return !subscriptions.isEmpty();
+    }
+
+    protected final boolean isConnecting() {
+        return connecting;
+    }
+
+    /**
+     * Called when the first observer subscribes. Implementations should subscribe to their
+     * sources, {@link #apply(ListChange) apply} the initial contents, and {@link #publish(boolean) publish}.
+     */
+    protected void onConnect() {
+    }
+
+    /**
+     * Called when the last observer unsubscribes.
+     */
+    protected void onDisconnect() {
+    }
+
+    /**
+     * @return the height of this list in the graph, one more than its tallest source, or zero if
+     * it has no sources.
+     */
+    int getHeight() {
+        return publisher.getHeight();
+    }
+
+    /**
+     * Sets the height of this list when it connects, from the height of its tallest source.
+     */
+    final void connectHeight(int sourceHeight) {
+        publisher.connect(sourceHeight);
+    }
+
+    /**
+     * Publishes the changes applied so far once all of the sources below this list have been brought up to
+     * date, so that changes arriving from several sources in the same propagation are published together.
+     *
+     * @param sourceHeight the height of the source which changed
+     * @see #isComplete()
+     */
+    final void publishLater(int sourceHeight) {
+        publisher.schedule(sourceHeight);
+    }
+
+    /**
+     * @return true if the list and all its elements are loaded. Called when a change queued with
+     * {@link #publishLater(int)} is published.
+     */
+    boolean isComplete() {
+        return true;
+    }
+
+    private void publishQueued() {
+        if(isConnected()) {
+            publish(isComplete());
+        }
+    }
+
+    public final boolean isLoaded() {
+        return loaded;
+    }
+
+    public final int size() {
+        return elements.size();
+    }
+
+    /**
+     * @return the element at {@code index}, or {@code null} if it is still loading.
+     */
+    public final @Nullable T get(int index) {
+        return elements.get(index);
+    }
+
+    /**
+     * @return a copy of the current contents of the list, or {@code null} if it is loading.
+     */
+    public final @Nullable List<T> snapshot() {
+        if(!loaded) {
+            return null;
+        }
+        return ImmutableList.copyOf(elements);
+    }
+
+    /**
+     * Applies {@code change} to the contents of this list. Observers are notified of changes
+     * the next time this list {@link #publish(boolean) publishes}.
+     */
+    protected final void apply(ListChange<T> change) {
+        change.applyTo(elements);
+        if(loaded) {
+            pending.add(change);
+        }
+    }
+
+    /**
+     * Notifies observers of the changes applied since the last call.
+     *
+     * @param nowLoaded true if the list and all its elements are now loaded.
+     */
+    protected final void publish(boolean nowLoaded) {
+        boolean wasLoaded = loaded;
+        loaded = nowLoaded;
+
+        List<ListChange<T>> changes = pending;
+        if(!changes.isEmpty()) {
+            pending = new ArrayList<>();
+        }
+
+        if(subscriptions.isEmpty()) {
+            return;
+        }
+
+        // Observers may unsubscribe or subscribe others while we are notifying
+        @Nullable List<ListChange<T>> inserts = null;
+
+        Propagation.enter();
+        int end = subscriptions.beginNotify();
+        try {
+            for (int i = 0; i < end; i++) {
+                ListSubscription<T> subscription = subscriptions.get(i);
+                if(subscription == null) {
+                    continue;
+                }
+                if(!nowLoaded) {
+                    // Observers will receive the full contents when we are loaded again
+                    subscription.primed = false;
+                    if(wasLoaded) {
+                        subscription.observer.onLoading();
+                    }
+                } else if(!subscription.primed) {
+                    if(inserts == null) {
+                        inserts = contentsAsInserts();
+                    }
+                    subscription.primed = true;
+                    subscription.observer.onChanges(inserts);
+                } else if(!changes.isEmpty()) {
+                    subscription.observer.onChanges(changes);
+                }
+            }
+        } finally {
+            subscriptions.endNotify();
+            Propagation.exit();
+        }
+    }
+
+    private List<ListChange<T>> contentsAsInserts() {
+        List<ListChange<T>> inserts = new ArrayList<>(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            inserts.add(ListChange.insert(i, elements.get(i)));
+        }
+        return inserts;
+    }
+
+    /**
+     * @return an {@code Observable} whose value is a copy of this list.
+     *
+     * <p>Note that each change to the list copies the whole list, so this should
+     * be used sparingly for long lists.</p>
+     */
+    public final Observable<List<T>> asObservable() {
+        return new ListSnapshotObservable<>(this);
+    }
+
+    /**
+     * @return an {@code Observable} aggregate of the elements of this list, which passes only the elements
+     * inserted, removed, or updated to the {@link Reducer}.
+     *
+     * @see Reducers
+     */
+    public final <R> Observable<R> reduce(Supplier<? extends Reducer<T, R>> reducer) {
+        return new ReducedObservable<>(this, reducer);
+    }
+
+    /**
+     * @return a list of the values of the given observables, in which a change to any one of them
+     * is delivered as a single {@link ListChange.Kind#UPDATE}.
+     */
+    public static <T> ObservableList<T> flatten(List<? extends Observable<T>> list) {
+        return new FlattenedList<>(list);
+    }
+
+    /**
+     * Applies {@code function} to each element of {@code source}, and joins the results in an {@code ObservableList}.
+     *
+     * <p>When {@code source} changes, {@code function} is applied only to new elements, identified by
+     * {@code key}, while the observables of existing elements are kept, and observers receive the elements
+     * inserted, removed, and moved.</p>
+     */
+    public static <T, K, R> ObservableList<R> flatMap(Observable<? extends Iterable<T>> source,
+                                                      Function<? super T, K> key,
+                                                      Function<? super T, Observable<R>> function) {
+        return new FlatMappedList<>(source, key, function);
+    }
+
+    /**
+     * Applies {@code function} to each element of {@code source}, and joins the results in an {@code ObservableList},
+     * using the elements themselves as keys.
+     *
+     * @see #flatMap(Observable, Function, Function)
+     */
+    public static <T, R> ObservableList<R> flatMap(Observable<? extends Iterable<T>> source,
+                                                   Function<? super T, Observable<R>> function) {
+        return new FlatMappedList<>(source, Function.identity(), function);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Receives events from the observable graph, for profiling and monitoring.
+ *
+ * <p>At most one {@code ObservableMetrics} is installed at a time, using {@link #install(ObservableMetrics)}.
+ * When none is installed, the graph only checks a single static field before each event, so metrics can be left
+ * available in production and installed only when needed.</p>
+ *
+ * <p>All methods do nothing by default. Implementations are called on the thread propagating changes, and should
+ * return quickly.</p>
+ *
+ * @see ObservableProfiler
+ */
+public abstract class ObservableMetrics {
+
+    /**
+     * The installed metrics, or {@code null} if metrics are disabled.
+     */
+    static @Nullable ObservableMetrics installed = null;
+
+    /**
+     * Installs {@code metrics} to receive events from all observables, replacing any metrics already
+     * installed. Pass {@code null} to disable metrics.
+     */
+    public static void install(@Nullable ObservableMetrics metrics) {
+        installed = metrics;
+    }
+
+    public static @Nullable ObservableMetrics getInstalled() {
+        return installed;
+    }
+
+    /**
+     * @return a name for {@code node} under which its metrics are recorded: its {@link Observable#debugId(String) debug id}
+     * if it has one, or otherwise the name of its class.
+     */
+    public static String describe(Observable<?> node) {
+        String debugId = node.getDebugId();
+        if(debugId != null) {
+            return debugId;
+        }
+        return node.getClass().getName();
+    }
+
+    /**
+     * Called after a computed observable has computed a new value.
+     *
+     * @param nanos the time taken by the computation.
+     * @param height the height of the node in the graph: one more than its tallest argument, or zero if it
+     *               has no arguments.
+     */
+    public void onRecompute(Observable<?> node, long nanos, int height) {
+    }
+
+    /**
+     * Called when an observable notifies its observers of a new value.
+     *
+     * @param observerCount the number of observers notified.
+     */
+    public void onNotify(Observable<?> node, int observerCount) {
+    }
+
+    /**
+     * Called when an observable's first observer subscribes.
+     */
+    public void onConnect(Observable<?> node) {
+    }
+
+    /**
+     * Called when an observable's last observer unsubscribes.
+     */
+    public void onDisconnect(Observable<?> node) {
+    }
+
+    /**
+     * Called when a computed observable connects to one of its arguments.
+     */
+    public void onDependency(Observable<?> node, Observable<?> argument) {
+    }
+
+    /**
+     * Called after a change has propagated through the graph.
+     *
+     * @param recomputed the number of computed observables recomputed.
+     * @param maxHeight the greatest height in the graph reached by the change.
+     */
+    public void onPropagation(int recomputed, int maxHeight) {
+    }
+}
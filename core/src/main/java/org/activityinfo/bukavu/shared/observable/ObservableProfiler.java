@@ -0,0 +1,403 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records {@link ObservableMetrics} in memory, grouped by the name of each node as given
+ * by {@link ObservableMetrics#describe(Observable)}.
+ *
+ * <p>Nodes without a {@link Observable#debugId(String) debug id} are grouped by class, which keeps the
+ * number of entries bounded even as nodes are created and discarded.</p>
+ *
+ * <p>The profiler may receive events from several propagation threads at once, so all access to the
+ * recorded metrics is guarded by a single lock.</p>
+ */
+public class ObservableProfiler extends ObservableMetrics {
+
+    /**
+     * Metrics recorded for one node, or group of nodes sharing the same name.
+     */
+    public static final class NodeStats {
+        private final String name;
+        private int recomputeCount;
+        private long computeNanos;
+        private long maxComputeNanos;
+        private int maxHeight;
+        private int notifyCount;
+        private int maxFanOut;
+        private int connectCount;
+        private int disconnectCount;
+
+        private NodeStats(String name) {
+            this.name = name;
+        }
+
+        private NodeStats(NodeStats stats) {
+            this.name = stats.name;
+            this.recomputeCount = stats.recomputeCount;
+            this.computeNanos = stats.computeNanos;
+            this.maxComputeNanos = stats.maxComputeNanos;
+            this.maxHeight = stats.maxHeight;
+            this.notifyCount = stats.notifyCount;
+            this.maxFanOut = stats.maxFanOut;
+            this.connectCount = stats.connectCount;
+            this.disconnectCount = stats.disconnectCount;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getRecomputeCount() {
+            return recomputeCount;
+        }
+
+        /**
+         * @return the total time spent computing, in nanoseconds.
+         */
+        public long getComputeNanos() {
+            return computeNanos;
+        }
+
+        public long getMaxComputeNanos() {
+            return maxComputeNanos;
+        }
+
+        /**
+         * @return the greatest height in the graph at which the node was recomputed.
+         */
+        public int getMaxHeight() {
+            return maxHeight;
+        }
+
+        public int getNotifyCount() {
+            return notifyCount;
+        }
+
+        /**
+         * @return the greatest number of observers notified of a single change.
+         */
+        public int getMaxFanOut() {
+            return maxFanOut;
+        }
+
+        public int getConnectCount() {
+            return connectCount;
+        }
+
+        public int getDisconnectCount() {
+            return disconnectCount;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": recomputes=" + recomputeCount +
+                    ", computeMs=" + (computeNanos / 1_000_000d) +
+                    ", maxHeight=" + maxHeight +
+                    ", notifications=" + notifyCount +
+                    ", maxFanOut=" + maxFanOut +
+                    ", connects=" + connectCount +
+                    ", disconnects=" + disconnectCount;
+        }
+    }
+
+    private final Object lock = new Object();
+
+    /**
+     * Metrics by node name. Guarded by {@link #lock}, as are all the fields below.
+     */
+    private final Map<String, NodeStats> stats = new HashMap<>();
+
+    /**
+     * Dependencies between nodes, as pairs of argument name and node name.
+     */
+    private final Set<List<String>> edges = new LinkedHashSet<>();
+
+    /**
+     * The number of recomputes at each height in the graph.
+     */
+    private int[] heightHistogram = new int[8];
+
+    private int propagationCount;
+    private int maxPropagationHeight;
+    private int maxPropagationSize;
+
+    private NodeStats stats(Observable<?> node) {
+        String name = describe(node);
+        NodeStats nodeStats = stats.get(name);
+        if(nodeStats == null) {
+            nodeStats = new NodeStats(name);
+            stats.put(name, nodeStats);
+        }
+        return nodeStats;
+    }
+
+    @Override
+    public void onRecompute(Observable<?> node, long nanos, int height) {
+        synchronized (lock) {
+            NodeStats nodeStats = stats(node);
+            nodeStats.recomputeCount++;
+            nodeStats.computeNanos += nanos;
+            nodeStats.maxComputeNanos = Math.max(nodeStats.maxComputeNanos, nanos);
+            nodeStats.maxHeight = Math.max(nodeStats.maxHeight, height);
+
+            if(height >= heightHistogram.length) {
+                heightHistogram = Arrays.copyOf(heightHistogram, Math.max(height + 1, heightHistogram.length * 2));
+            }
+            heightHistogram[height]++;
+        }
+    }
+
+    @Override
+    public void onNotify(Observable<?> node, int observerCount) {
+        synchronized (lock) {
+            NodeStats nodeStats = stats(node);
+            nodeStats.notifyCount++;
+            nodeStats.maxFanOut = Math.max(nodeStats.maxFanOut, observerCount);
+        }
+    }
+
+    @Override
+    public void onConnect(Observable<?> node) {
+        synchronized (lock) {
+            stats(node).connectCount++;
+        }
+    }
+
+    @Override
+    public void onDisconnect(Observable<?> node) {
+        synchronized (lock) {
+            stats(node).disconnectCount++;
+        }
+    }
+
+    @Override
+    public void onDependency(Observable<?> node, Observable<?> argument) {
+        List<String> edge = new ArrayList<>(2);
+        edge.add(describe(argument));
+        edge.add(describe(node));
+        synchronized (lock) {
+            edges.add(edge);
+        }
+    }
+
+    @Override
+    public void onPropagation(int recomputed, int maxHeight) {
+        synchronized (lock) {
+            propagationCount++;
+            maxPropagationHeight = Math.max(maxPropagationHeight, maxHeight);
+            maxPropagationSize = Math.max(maxPropagationSize, recomputed);
+        }
+    }
+
+    public int getPropagationCount() {
+        synchronized (lock) {
+            return propagationCount;
+        }
+    }
+
+    /**
+     * @return the greatest height in the graph reached by a single change.
+     */
+    public int getMaxPropagationHeight() {
+        synchronized (lock) {
+            return maxPropagationHeight;
+        }
+    }
+
+    /**
+     * @return the number of recomputes of nodes at each height in the graph, indexed by height, up to the
+     * greatest height recorded.
+     */
+    public int[] getHeightHistogram() {
+        synchronized (lock) {
+            int length = heightHistogram.length;
+            while (length > 0 && heightHistogram[length - 1] == 0) {
+                length--;
+            }
+            return Arrays.copyOf(heightHistogram, length);
+        }
+    }
+
+    /**
+     * @return the greatest number of nodes recomputed after a single change.
+     */
+    public int getMaxPropagationSize() {
+        synchronized (lock) {
+            return maxPropagationSize;
+        }
+    }
+
+    /**
+     * @return a copy of the metrics recorded so far, hottest nodes first.
+     */
+    public List<NodeStats> snapshot() {
+        List<NodeStats> list = new ArrayList<>();
+        synchronized (lock) {
+            for (NodeStats nodeStats : stats.values()) {
+                list.add(new NodeStats(nodeStats));
+            }
+        }
+        list.sort(Comparator.comparingLong(NodeStats::getComputeNanos).reversed()
+                .thenComparing(Comparator.comparingInt(NodeStats::getRecomputeCount).reversed())
+                .thenComparing(NodeStats::getName));
+        return list;
+    }
+
+    public void reset() {
+        synchronized (lock) {
+            stats.clear();
+            edges.clear();
+            Arrays.fill(heightHistogram, 0);
+            propagationCount = 0;
+            maxPropagationHeight = 0;
+            maxPropagationSize = 0;
+        }
+    }
+
+    /**
+     * @return the graph of nodes in the Graphviz DOT format, with hotter nodes in stronger red.
+     */
+    public String toDot() {
+        synchronized (lock) {
+            double maxHeat = maxHeat();
+            StringBuilder dot = new StringBuilder();
+            dot.append("digraph observables {\n");
+            dot.append("  node [shape=box, style=filled];\n");
+            for (NodeStats nodeStats : snapshot()) {
+                dot.append("  ").append(quote(nodeStats.name))
+                    .append(" [label=").append(quote(nodeStats.name + "\n" +
+                        nodeStats.recomputeCount + " recomputes, " + formatMillis(nodeStats.computeNanos) + " ms"))
+                    .append(", fillcolor=\"0.000 ").append(formatFraction(heat(nodeStats) / maxHeat)).append(" 1.000\"];\n");
+            }
+            for (List<String> edge : edges) {
+                dot.append("  ").append(quote(edge.get(0))).append(" -> ").append(quote(edge.get(1))).append(";\n");
+            }
+            dot.append("}\n");
+            return dot.toString();
+        }
+    }
+
+    /**
+     * @return the recorded metrics and graph as JSON, with a {@code heat} between 0 and 1 for each node.
+     */
+    public String toJson() {
+        synchronized (lock) {
+            double maxHeat = maxHeat();
+            StringBuilder json = new StringBuilder();
+            json.append("{\"propagations\":").append(propagationCount)
+                .append(",\"maxPropagationHeight\":").append(maxPropagationHeight)
+                .append(",\"maxPropagationSize\":").append(maxPropagationSize)
+                .append(",\"heights\":").append(Arrays.toString(getHeightHistogram()).replace(" ", ""))
+                .append(",\"nodes\":[");
+            boolean first = true;
+            for (NodeStats nodeStats : snapshot()) {
+                if(!first) {
+                    json.append(",");
+                }
+                first = false;
+                json.append("{\"name\":").append(quote(nodeStats.name))
+                    .append(",\"recomputes\":").append(nodeStats.recomputeCount)
+                    .append(",\"computeNanos\":").append(nodeStats.computeNanos)
+                    .append(",\"maxComputeNanos\":").append(nodeStats.maxComputeNanos)
+                    .append(",\"maxHeight\":").append(nodeStats.maxHeight)
+                    .append(",\"notifications\":").append(nodeStats.notifyCount)
+                    .append(",\"maxFanOut\":").append(nodeStats.maxFanOut)
+                    .append(",\"connects\":").append(nodeStats.connectCount)
+                    .append(",\"disconnects\":").append(nodeStats.disconnectCount)
+                    .append(",\"heat\":").append(formatFraction(heat(nodeStats) / maxHeat))
+                    .append("}");
+            }
+            json.append("],\"edges\":[");
+            first = true;
+            for (List<String> edge : edges) {
+                if(!first) {
+                    json.append(",");
+                }
+                first = false;
+                json.append("[").append(quote(edge.get(0))).append(",").append(quote(edge.get(1))).append("]");
+            }
+            json.append("]}");
+            return json.toString();
+        }
+    }
+
+    /**
+     * Nodes are "hot" if they spend a lot of time computing, or are recomputed often.
+     */
+    private static double heat(NodeStats nodeStats) {
+        return nodeStats.computeNanos + nodeStats.recomputeCount * 1000d;
+    }
+
+    private double maxHeat() {
+        double max = 1;
+        for (NodeStats nodeStats : stats.values()) {
+            max = Math.max(max, heat(nodeStats));
+        }
+        return max;
+    }
+
+    private static String formatMillis(long nanos) {
+        return Double.toString(Math.round(nanos / 10_000d) / 100d);
+    }
+
+    private static String formatFraction(double fraction) {
+        return Double.toString(Math.round(fraction * 1000d) / 1000d);
+    }
+
+    /**
+     * Quotes {@code string} for both JSON and DOT. Newlines are kept as {@code \n}, which DOT renders as a
+     * line break, and other control characters are written as four-digit Unicode escapes.
+     */
+    private static String quote(String string) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                default:
+                    if(c < 0x20) {
+                        String hex = Integer.toHexString(c);
+                        quoted.append("\\u");
+                        for (int pad = hex.length(); pad < 4; pad++) {
+                            quoted.append('0');
+                        }
+                        quoted.append(hex);
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -28,6 +28,17 @@ import java.util.logging.Logger;
  *
  * <p>To use this class, you must provide a {@link TreeLoader} implementation.</p>
  *
+ * <p>Nodes are loaded breadth-first: the children discovered in each pass are requested together through
+ * {@link TreeLoader#getAll(Collection)}, so that a loader which can fetch many nodes in one request needs only
+ * one round trip per level of the tree. Keys with a higher {@link TreeLoader#getPriority(Object) priority}
+ * are requested first, and the number of nodes loading at once can be capped with
+ * {@link #ObservableTree(TreeLoader, Scheduler, int)}.</p>
+ *
+ * <p>The tree is maintained incrementally: when a node changes, only that node's children are re-read,
+ * newly reachable subtrees are crawled, and nodes are only checked for reachability when a node loses
+ * children. While a changed node is reloading, the tree keeps its last value rather than returning to
+ * the loading state.</p>
+ *
  * @param <KeyT> the type of a key that uniquely identifies tree nodes
  * @param <NodeT> the type of the tree nodes.
  * @param <TreeT> the type of the final tree constructed from the nodes.
@@ -49,6 +60,32 @@ public final class ObservableTree<KeyT extends @NonNull Object, NodeT extends @N
          */
         org.activityinfo.bukavu.shared.observable.Observable<NodeT> get(KeyT nodeKey);
 
+        /**
+         * Requests several nodes at once. Loaders which can fetch many nodes in a single request should
+         * override this method; by default, each node is requested separately with {@link #get(Object)}.
+         *
+         * @return the values of the nodes identified by {@code nodeKeys}. Keys missing from the result
+         * are requested with {@link #get(Object)}.
+         */
+        default Map<KeyT, org.activityinfo.bukavu.shared.observable.Observable<NodeT>> getAll(Collection<KeyT> nodeKeys) {
+            Map<KeyT, org.activityinfo.bukavu.shared.observable.Observable<NodeT>> map = new HashMap<>();
+            for (KeyT nodeKey : nodeKeys) {
+                map.put(nodeKey, get(nodeKey));
+            }
+            return map;
+        }
+
+        /**
+         * @return the priority with which to load the node identified by {@code nodeKey}. Nodes with higher
+         * priorities are requested first, for example to load the branches that the user has expanded before
+         * the rest of the tree. Nodes of equal priority are loaded breadth-first.
+         *
+         * @see #reprioritize()
+         */
+        default int getPriority(KeyT nodeKey) {
+            return 0;
+        }
+
         /**
          *
          * @return the keys of the given {@code node}'s children.
@@ -61,27 +98,127 @@ public final class ObservableTree<KeyT extends @NonNull Object, NodeT extends @N
          * @return a new tree structure.
          */
         TreeT build(Map<KeyT, @Nullable NodeT> nodes);
+
+        /**
+         * Updates a tree after some of its nodes have changed. Implementations can override this method
+         * to reuse the unchanged parts of {@code tree}; by default, the tree is built again from scratch.
+         *
+         * @param tree the tree previously returned by {@link #build(Map)} or {@code update}
+         * @param nodes the nodes now in this tree. All nodes will be loaded when this method is called.
+         * @param changedKeys the keys of the nodes which have been added, changed or removed since {@code tree}
+         *                    was built. Removed nodes are no longer present in {@code nodes}.
+         * @return the updated tree structure.
+         */
+        default TreeT update(TreeT tree, Map<KeyT, @Nullable NodeT> nodes, Set<KeyT> changedKeys) {
+            return build(nodes);
+        }
+    }
+
+    /**
+     * A node which has been discovered but not yet requested.
+     */
+    private static final class QueuedNode<KeyT> {
+        private final KeyT key;
+        private final int depth;
+        private final long sequence;
+        private int priority;
+
+        private QueuedNode(KeyT key, int depth, long sequence, int priority) {
+            this.key = key;
+            this.depth = depth;
+            this.sequence = sequence;
+            this.priority = priority;
+        }
     }
 
+    private static final Comparator<QueuedNode<?>> LOAD_ORDER = (a, b) -> {
+        if(a.priority != b.priority) {
+            return Integer.compare(b.priority, a.priority);
+        }
+        if(a.depth != b.depth) {
+            return Integer.compare(a.depth, b.depth);
+        }
+        return Long.compare(a.sequence, b.sequence);
+    };
+
     private final TreeLoader<KeyT, NodeT, TreeT> loader;
     private final Scheduler scheduler;
+    private final int maxLoading;
 
     private final Map<KeyT, org.activityinfo.bukavu.shared.observable.Observable<NodeT>> nodes = new HashMap<>();
     private final Map<KeyT, @Nullable NodeT> loadedNodes = new HashMap<>();
     private final Map<KeyT, Subscription> subscriptions = new HashMap<>();
 
-    private boolean crawling = false;
-    private boolean crawlPending = false;
+    /**
+     * The children of each node, as of the last time the node was expanded.
+     */
+    private final Map<KeyT, List<KeyT>> children = new HashMap<>();
+
+    /**
+     * Connected nodes which have not yet loaded.
+     */
+    private final Set<KeyT> loading = new HashSet<>();
+
+    /**
+     * Loaded nodes whose children have yet to be read.
+     */
+    private final Set<KeyT> unexpanded = new LinkedHashSet<>();
+
+    /**
+     * The depth of each connected node below the root.
+     */
+    private final Map<KeyT, Integer> depths = new HashMap<>();
+
+    /**
+     * Nodes discovered but not yet requested, in the order in which they will be requested.
+     */
+    private PriorityQueue<QueuedNode<KeyT>> queue = new PriorityQueue<>(LOAD_ORDER);
+    private final Map<KeyT, QueuedNode<KeyT>> queued = new HashMap<>();
+    private long sequence = 0;
+
+    /**
+     * Nodes added, changed or removed since the tree was last built.
+     */
+    private final Set<KeyT> changed = new HashSet<>();
+
+    private @Nullable TreeT tree;
+
+    private boolean updating = false;
+    private boolean updatePending = false;
 
     public ObservableTree(TreeLoader<KeyT, NodeT, TreeT> loader, Scheduler scheduler) {
+        this(loader, scheduler, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxLoading the maximum number of nodes to have loading at once. Further nodes are requested
+     *                   as others finish loading.
+     */
+    public ObservableTree(TreeLoader<KeyT, NodeT, TreeT> loader, Scheduler scheduler, int maxLoading) {
+        assert maxLoading > 0;
         this.loader = loader;
         this.scheduler = scheduler;
+        this.maxLoading = maxLoading;
+    }
+
+    /**
+     * Re-reads the {@link TreeLoader#getPriority(Object) priority} of the nodes waiting to be requested,
+     * for example after the user has expanded a branch.
+     */
+    public void reprioritize() {
+        PriorityQueue<QueuedNode<KeyT>> reordered = new PriorityQueue<>(Math.max(1, queued.size()), LOAD_ORDER);
+        for (QueuedNode<KeyT> node : queued.values()) {
+            node.priority = loader.getPriority(node.key);
+            reordered.add(node);
+        }
+        queue = reordered;
     }
 
     @Override
     protected void onConnect() {
-        connectTo(loader.getRootKey());
-        recrawl();
+        KeyT rootKey = loader.getRootKey();
+        connectTo(rootKey, loader.get(rootKey), 0);
+        update();
     }
 
     @Override
@@ -92,36 +229,49 @@ public final class ObservableTree<KeyT extends @NonNull Object, NodeT extends @N
         nodes.clear();
         loadedNodes.clear();
         subscriptions.clear();
+        children.clear();
+        loading.clear();
+        unexpanded.clear();
+        depths.clear();
+        queue.clear();
+        queued.clear();
+        changed.clear();
+        tree = null;
     }
 
-    private org.activityinfo.bukavu.shared.observable.Observable<NodeT> connectTo(KeyT nodeKey) {
-        org.activityinfo.bukavu.shared.observable.Observable<NodeT> node = nodes.get(nodeKey);
-        if(node == null) {
-            node = loader.get(nodeKey);
-            Subscription subscription = node.subscribe(new Observer<NodeT>() {
-
-                private boolean onConnect = true;
-
-                @Override
-                public void onChange(@Nullable NodeT node) {
-                    if(onConnect) {
-                        loadedNodes.put(nodeKey, node);
-                        onConnect = false;
-                    } else {
-                        ObservableTree.this.onNodeChanged(nodeKey, node);
-                    }
+    private void connectTo(KeyT nodeKey, org.activityinfo.bukavu.shared.observable.Observable<NodeT> node, int depth) {
+        nodes.put(nodeKey, node);
+        depths.put(nodeKey, depth);
+        changed.add(nodeKey);
+
+        Subscription subscription = node.subscribe(new Observer<NodeT>() {
+            @Override
+            public void onChange(@Nullable NodeT node) {
+                if(subscriptions.containsKey(nodeKey)) {
+                    ObservableTree.this.onNodeChanged(nodeKey, node);
+                } else if(nodes.containsKey(nodeKey)) {
+                    // Still subscribing
+                    loadedNodes.put(nodeKey, node);
                 }
-            });
+            }
+        });
+        subscriptions.put(nodeKey, subscription);
 
-            nodes.put(nodeKey, node);
-            subscriptions.put(nodeKey, subscription);
+        if(loadedNodes.get(nodeKey) == null) {
+            loading.add(nodeKey);
+        } else {
+            unexpanded.add(nodeKey);
         }
-        return node;
     }
 
     private void disconnectFrom(KeyT nodeKey) {
         nodes.remove(nodeKey);
         loadedNodes.remove(nodeKey);
+        children.remove(nodeKey);
+        depths.remove(nodeKey);
+        loading.remove(nodeKey);
+        unexpanded.remove(nodeKey);
+        changed.add(nodeKey);
         Subscription subscription = subscriptions.remove(nodeKey);
         if(subscription != null) {
             subscription.unsubscribe();
@@ -129,93 +279,167 @@ public final class ObservableTree<KeyT extends @NonNull Object, NodeT extends @N
     }
 
     private void onNodeChanged(KeyT nodeKey, @Nullable NodeT node) {
+        if(!nodes.containsKey(nodeKey)) {
+            return;
+        }
         loadedNodes.put(nodeKey, node);
-        if(node != null) {
-            if(crawling) {
-                crawlPending = true;
-            } else {
-                recrawl();
-            }
+        changed.add(nodeKey);
+        if(node == null) {
+            // Keep the node's subtree connected, and the last tree,
+            // until the node has loaded again.
+            loading.add(nodeKey);
+        } else {
+            loading.remove(nodeKey);
+            unexpanded.add(nodeKey);
+            update();
         }
     }
 
-    /**
-     * Crawl from the root tree to all the leaves to find the set
-     * of forms we need to query,
-     */
-    private void recrawl() {
-
-        LOGGER.info("Tree " + loader + ": Recrawl starting...");
-
-        Set<KeyT> reachable = new HashSet<>();
-        Set<KeyT> loading = new HashSet<>();
-
-        crawling = true;
-        fireChange(null);
-
+    private void update() {
+        if(updating) {
+            // Changes found while expanding are picked up by the loop in expand(),
+            // but changes fired while we are building the tree must wait.
+            updatePending = true;
+            return;
+        }
+        updating = true;
         try {
+            expand();
 
-            crawl(loader.getRootKey(), reachable, loading);
-
-            // First clean up forms that are no longer reachable
-            List<KeyT> connectedForms = new ArrayList<>(nodes.keySet());
-            for (KeyT nodeKey : connectedForms) {
-                if (!reachable.contains(nodeKey)) {
-                    disconnectFrom(nodeKey);
-                }
+            if(LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Tree " + loader + ": connected = " + nodes.size() +
+                        ", loading = " + loading + ", changed = " + changed.size());
             }
 
-            LOGGER.info("Tree " + loader + ": reachable = " + reachable +
-                    ", loading = " + loading);
-
-
-            // Otherwise if we've got everything, we can build the tree
-            if (loading.isEmpty()) {
+            // If we've got everything, we can build the tree.
+            // Otherwise we have to wait for one of our pending nodes to load.
+            if (loading.isEmpty() && queued.isEmpty() && !changed.isEmpty()) {
                 rebuildTree();
             }
-
-            // Otherwise we have to wait for one of our pending nodes to load
-            // and then we can recrawl.
-
         } finally {
-            crawling = false;
+            updating = false;
         }
 
-        // Was there a change to one of the nodes while we crawling?
-        // Restart a crawl now
-
-        if(crawlPending) {
+        if(updatePending) {
+            updatePending = false;
             scheduler.scheduleDeferred(new Scheduler.ScheduledCommand() {
                 @Override
                 public void execute() {
-                    ObservableTree.this.recrawl();
+                    ObservableTree.this.update();
                 }
             });
-            crawlPending = false;
         }
     }
 
     /**
-     * Recursively search the tree of forms for those that are reachable, missing, and still loading.
+     * Reads the children of each changed node, and requests any new children. Rather than recursing,
+     * newly loaded nodes are added to the work list, so that deep trees can't overflow the stack.
      */
-    private void crawl(KeyT parentKey, Set<KeyT> reachable, Set<KeyT> loading) {
-        boolean seenForFirstTime = reachable.add(parentKey);
+    private void expand() {
+        do {
+            expandLoaded();
+        } while (requestQueued());
+    }
 
-        if(!seenForFirstTime) {
-            return;
+    private void expandLoaded() {
+        boolean removedChildren = false;
+
+        while(!unexpanded.isEmpty()) {
+            Iterator<KeyT> it = unexpanded.iterator();
+            KeyT nodeKey = it.next();
+            it.remove();
+
+            @Nullable NodeT node = loadedNodes.get(nodeKey);
+            if(node == null) {
+                continue;
+            }
+
+            int childDepth = depths.get(nodeKey) + 1;
+            List<KeyT> newChildren = new ArrayList<>();
+            for (KeyT childKey : loader.getChildren(node)) {
+                newChildren.add(childKey);
+                if(!nodes.containsKey(childKey) && !queued.containsKey(childKey)) {
+                    QueuedNode<KeyT> queuedNode = new QueuedNode<>(childKey, childDepth, sequence++,
+                            loader.getPriority(childKey));
+                    queue.add(queuedNode);
+                    queued.put(childKey, queuedNode);
+                }
+            }
+            List<KeyT> oldChildren = children.put(nodeKey, newChildren);
+            if(oldChildren != null && !removedChildren && !new HashSet<>(newChildren).containsAll(oldChildren)) {
+                removedChildren = true;
+            }
         }
 
-        Observable<NodeT> node = connectTo(parentKey);
-        @Nullable NodeT loaded = loadedNodes.get(parentKey);
+        if(removedChildren) {
+            disconnectUnreachable();
+        }
+    }
 
-        if(loaded == null) {
-            loading.add(parentKey);
+    /**
+     * Requests as many of the queued nodes as we are allowed to have loading, in a single batch.
+     *
+     * @return true if any nodes were requested.
+     */
+    private boolean requestQueued() {
+        List<QueuedNode<KeyT>> batch = new ArrayList<>();
+        while (!queue.isEmpty() && loading.size() + batch.size() < maxLoading) {
+            QueuedNode<KeyT> queuedNode = queue.poll();
+            if(queued.remove(queuedNode.key) == queuedNode) {
+                batch.add(queuedNode);
+            }
+        }
+        if(batch.isEmpty()) {
+            return false;
+        }
 
-        } else {
-            for (KeyT childKey : loader.getChildren(loaded)) {
-                crawl(childKey, reachable, loading);
+        List<KeyT> batchKeys = new ArrayList<>(batch.size());
+        for (QueuedNode<KeyT> queuedNode : batch) {
+            batchKeys.add(queuedNode.key);
+        }
+        Map<KeyT, org.activityinfo.bukavu.shared.observable.Observable<NodeT>> batchNodes = loader.getAll(batchKeys);
+
+        for (QueuedNode<KeyT> queuedNode : batch) {
+            if(!nodes.containsKey(queuedNode.key)) {
+                org.activityinfo.bukavu.shared.observable.Observable<NodeT> node = batchNodes.get(queuedNode.key);
+                if(node == null) {
+                    node = loader.get(queuedNode.key);
+                }
+                connectTo(queuedNode.key, node, queuedNode.depth);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * After a node has lost children, finds and disconnects the nodes which can no longer be reached
+     * from the root. This walks the children already known, without reading any nodes.
+     */
+    private void disconnectUnreachable() {
+        Set<KeyT> reachable = new HashSet<>();
+        ArrayDeque<KeyT> stack = new ArrayDeque<>();
+        stack.push(loader.getRootKey());
+        while(!stack.isEmpty()) {
+            KeyT nodeKey = stack.pop();
+            if(reachable.add(nodeKey)) {
+                List<KeyT> nodeChildren = children.get(nodeKey);
+                if(nodeChildren != null) {
+                    for (KeyT childKey : nodeChildren) {
+                        stack.push(childKey);
+                    }
+                }
             }
         }
+
+        List<KeyT> connectedNodes = new ArrayList<>(nodes.keySet());
+        for (KeyT nodeKey : connectedNodes) {
+            if (!reachable.contains(nodeKey)) {
+                disconnectFrom(nodeKey);
+            }
+        }
+
+        // Queued nodes are dropped here, and skipped when they reach the head of the queue
+        queued.keySet().retainAll(reachable);
     }
 
     /**
@@ -223,10 +447,26 @@ public final class ObservableTree<KeyT extends @NonNull Object, NodeT extends @N
      */
     private void rebuildTree() {
 
-        LOGGER.info("Tree " + loader + " complete!");
+        if(LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Tree " + loader + " complete!");
+        }
 
+        ObservableMetrics metrics = ObservableMetrics.installed;
+        long start = metrics == null ? 0 : System.nanoTime();
         try {
-            fireChange(loader.build(loadedNodes));
+            TreeT previous = tree;
+            if(previous == null) {
+                changed.clear();
+                tree = loader.build(loadedNodes);
+            } else {
+                Set<KeyT> changedKeys = new HashSet<>(changed);
+                changed.clear();
+                tree = loader.update(previous, loadedNodes, changedKeys);
+            }
+            if(metrics != null) {
+                metrics.onRecompute(this, System.nanoTime() - start, getHeight());
+            }
+            fireChange(tree);
         } catch (Error e) {
             LOGGER.log(Level.SEVERE, "Exception rebuilding tree", e);
         }
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * The observers subscribed to an {@link Observable}, {@link ObservableList} or primitive observable.
+ *
+ * <p>Each subscription is a {@link Slot} that knows its own index in the registry, so that it can be removed
+ * without searching. Outside of notification, a removed slot is replaced by the last one. While observers are
+ * being notified, slots never move: removed slots are left empty and compacted once notification completes,
+ * and new slots are added after the range being notified, so that they are not notified of a change they
+ * did not observe. The array of slots is only allocated on first subscription.</p>
+ *
+ * <p>Notification follows this pattern:</p>
+ * <pre>
+ *     int end = registry.beginNotify();
+ *     try {
+ *         for (int i = 0; i &lt; end; i++) {
+ *             S slot = registry.get(i);
+ *             if (slot != null) { ... }
+ *         }
+ *     } finally {
+ *         registry.endNotify();
+ *     }
+ * </pre>
+ *
+ * @param <S> the type of slot, which holds the observer
+ */
+final class ObserverRegistry<S extends ObserverRegistry.Slot> {
+
+    /**
+     * A subscription, whose {@link #unsubscribe()} should remove it from the registry.
+     */
+    abstract static class Slot implements Subscription {
+
+        /**
+         * The index of this slot in the registry, or -1 if it has been removed.
+         */
+        int index = -1;
+    }
+
+    private Slot @Nullable [] slots = null;
+
+    /**
+     * The number of slots in use, including slots vacated during notification.
+     */
+    private int slotCount = 0;
+
+    /**
+     * The number of subscribed observers.
+     */
+    private int size = 0;
+
+    /**
+     * The number of notifications currently iterating over the slots.
+     */
+    private int notifying = 0;
+
+    /**
+     * True if slots were removed during notification, leaving holes to be compacted.
+     */
+    private boolean vacated = false;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void add(S slot) {
+        if(slots == null) {
+            slots = new Slot[4];
+        } else if(slotCount == slots.length) {
+            slots = Arrays.copyOf(slots, slotCount * 2);
+        }
+        slot.index = slotCount;
+        slots[slotCount++] = slot;
+        size++;
+    }
+
+    /**
+     * Removes {@code slot} from the registry.
+     *
+     * @return false if the slot had already been removed, in which case nothing is changed.
+     */
+    boolean remove(S slot) {
+        if(slot.index < 0) {
+            return false;
+        }
+        assert slots != null;
+
+        int index = slot.index;
+        slot.index = -1;
+        size--;
+
+        if(notifying > 0) {
+            slots[index] = null;
+            vacated = true;
+        } else {
+            int last = --slotCount;
+            Slot moved = slots[last];
+            slots[last] = null;
+            if(index != last) {
+                slots[index] = moved;
+                moved.index = index;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts a notification. Until the matching {@link #endNotify()}, slots keep their indexes.
+     *
+     * @return the number of slots to notify, some of which may be empty.
+     */
+    int beginNotify() {
+        notifying++;
+        return slotCount;
+    }
+
+    /**
+     * @return the slot at {@code index}, or {@code null} if it has been removed during notification.
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable S get(int index) {
+        assert slots != null;
+        return (S) slots[index];
+    }
+
+    void endNotify() {
+        notifying--;
+        if(notifying == 0 && vacated) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        assert slots != null;
+        int count = 0;
+        for (int i = 0; i < slotCount; i++) {
+            Slot slot = slots[i];
+            if(slot != null) {
+                slot.index = count;
+                slots[count++] = slot;
+            }
+        }
+        Arrays.fill(slots, count, slotCount, null);
+        slotCount = count;
+        vacated = false;
+    }
+}
@@ -55,4 +55,15 @@ class OptimisticObservable<T> extends Observable<T> {
     public T waitFor() {
         return observable.waitFor();
     }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        return evaluation.join(observable);
+    }
+
+    @Override
+    int getHeight() {
+        return observable.getHeight();
+    }
 }
@@ -15,7 +15,6 @@
  */
 package org.activityinfo.bukavu.shared.observable;
 
-import com.google.gwt.user.client.Timer;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 class OptimisticObservableWithTimeout<T> extends Observable<T> {
@@ -24,25 +23,18 @@ class OptimisticObservableWithTimeout<T> extends Observable<T> {
 
     private @Nullable Subscription subscription;
 
-    private @Nullable Timer timer;
+    private final TimerWheel.Timeout timeout;
 
-    OptimisticObservableWithTimeout(Observable<T> observable, int timeoutMillis, @Nullable T defaultValue) {
+    OptimisticObservableWithTimeout(Observable<T> observable, int timeoutMillis, @Nullable T defaultValue,
+                                    TimerWheel wheel) {
         this.observable = observable;
         this.timeoutMillis = timeoutMillis;
         this.cachedValue = defaultValue;
+        this.timeout = wheel.newTimeout(this::onTimeout);
     }
 
     @Override
     protected void onConnect() {
-        if(timer == null) {
-            this.timer = new Timer() {
-                @Override
-                public void run() {
-                    onTimeout();
-                }
-            };
-        }
-
         subscription = observable.subscribe(new Observer<T>() {
             @Override
             public void onChange(@Nullable T newValue) {
@@ -55,6 +47,8 @@ class OptimisticObservableWithTimeout<T> extends Observable<T> {
     protected void onDisconnect() {
         super.onDisconnect();
 
+        timeout.cancel();
+
         assert subscription != null : "onConnect was not called";
         subscription.unsubscribe();
         subscription = null;
@@ -63,18 +57,15 @@ class OptimisticObservableWithTimeout<T> extends Observable<T> {
     private void onValueChanged(@Nullable T newValue) {
         if(newValue != null) {
             if(newValue != cachedValue) {
-                if(timer != null && timer.isRunning()) {
-                    timer.cancel();
-                }
+                timeout.cancel();
                 fireChange(newValue);
             }
 
         } else {
             // Start the timer... if we don't get a loaded value within the
             // provided timeout, THEN fire then alert observers that we are loading.
-            assert timer != null;
-            if(!timer.isRunning()) {
-                timer.schedule(timeoutMillis);
+            if(!timeout.isPending()) {
+                timeout.reschedule(timeoutMillis);
             }
         }
     }
@@ -84,4 +75,9 @@ class OptimisticObservableWithTimeout<T> extends Observable<T> {
         // but no we've lost our patience.
         fireChange(null);
     }
+
+    @Override
+    int getHeight() {
+        return observable.getHeight();
+    }
 }
@@ -46,4 +46,9 @@ class OptionalObservable<T> extends Observable<Optional<T>> {
             sourceSubscription = null;
         }
     }
+
+    @Override
+    int getHeight() {
+        return source.getHeight();
+    }
 }
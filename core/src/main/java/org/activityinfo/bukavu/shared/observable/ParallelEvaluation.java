@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates a graph of observables on a {@link ForkJoinPool}, resolving the arguments of each node
+ * concurrently.
+ *
+ * <p>Each node is evaluated at most once per evaluation, even if it is reachable through several paths.</p>
+ *
+ * <p>Only {@linkplain Observable#isForkable() forkable} nodes are evaluated in the background: computed
+ * observables, which reach their arguments only through the evaluation, and leaves which declare
+ * {@link Observable#isWaitForThreadSafe()}. Other leaves are evaluated by the thread which joins them, by
+ * calling their own {@link Observable#waitFor()}. Since this subscribes to observables of the graph, which are not
+ * thread-safe, these leaves are evaluated one at a time.</p>
+ *
+ * @see Observable#waitForParallel()
+ */
+@GwtIncompatible
+final class ParallelEvaluation {
+
+    private final Map<Observable<?>, ForkJoinTask<?>> tasks = new IdentityHashMap<>();
+
+    /**
+     * Held while evaluating leaves which are not thread-safe.
+     */
+    private final Object graphLock = new Object();
+
+    private ParallelEvaluation() {
+    }
+
+    static <T> T evaluate(ForkJoinPool pool, Observable<T> root) {
+        ParallelEvaluation evaluation = new ParallelEvaluation();
+        ForkJoinTask<T> task;
+        synchronized (evaluation.tasks) {
+            task = evaluation.task(root);
+        }
+        return pool.invoke(task);
+    }
+
+    /**
+     * Starts evaluating {@code node} in the background, if it is forkable and not already being evaluated.
+     * Otherwise, it is evaluated when {@linkplain #join(Observable) joined}.
+     */
+    void fork(Observable<?> node) {
+        if(!node.isForkable()) {
+            return;
+        }
+        ForkJoinTask<?> task;
+        synchronized (tasks) {
+            if(tasks.containsKey(node)) {
+                return;
+            }
+            task = task(node);
+        }
+        task.fork();
+    }
+
+    /**
+     * Evaluates {@code node}, or waits for its evaluation to complete if it has already been started.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T join(Observable<T> node) {
+        ForkJoinTask<T> task;
+        boolean started;
+        synchronized (tasks) {
+            started = tasks.containsKey(node);
+            task = started ? (ForkJoinTask<T>) tasks.get(node) : task(node);
+        }
+        if(started) {
+            return task.join();
+        } else {
+            return task.invoke();
+        }
+    }
+
+    /**
+     * Creates and registers the task for a node. Must be called while holding the lock on {@link #tasks}.
+     */
+    private <T> ForkJoinTask<T> task(Observable<T> node) {
+        ForkJoinTask<T> task = new RecursiveTask<T>() {
+            @Override
+            protected T compute() {
+                return node.waitFor(ParallelEvaluation.this);
+            }
+        };
+        tasks.put(node, task);
+        return task;
+    }
+
+    /**
+     * Evaluates a node which is not computed from other observables by calling its {@link Observable#waitFor()},
+     * which may block, such as a call to a remote service.
+     */
+    <T> T leaf(Observable<T> node) {
+        if(node.isWaitForThreadSafe()) {
+            return block(node::waitFor);
+        }
+        return block(() -> {
+            synchronized (graphLock) {
+                return node.waitFor();
+            }
+        });
+    }
+
+    /**
+     * Runs a computation that may block, allowing the pool to start additional threads while we wait.
+     */
+    private <T> T block(Supplier<T> blockingCall) {
+        Blocker<T> blocker = new Blocker<>(blockingCall);
+        try {
+            ForkJoinPool.managedBlock(blocker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting", e);
+        }
+        return blocker.result;
+    }
+
+    private static class Blocker<T> implements ForkJoinPool.ManagedBlocker {
+        private final Supplier<T> call;
+        private @Nullable T result;
+        private boolean done;
+
+        Blocker(Supplier<T> call) {
+            this.call = call;
+        }
+
+        @Override
+        public boolean block() {
+            result = call.get();
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+}
@@ -29,6 +29,13 @@ public class PendingValue<T> extends Observable<T> implements Consumer<T> {
 
     private @Nullable T value;
 
+    /**
+     * The value to fire at the end of the current batch, if any.
+     */
+    private @Nullable T deferredValue;
+
+    private boolean deferred = false;
+
     public PendingValue() {
         value = null;
     }
@@ -43,11 +50,34 @@ public class PendingValue<T> extends Observable<T> implements Consumer<T> {
      */
     public void updateValue(@Nullable T value) {
         this.value = value;
-        fireChange(value);
+        publish(value);
     }
 
     public void clear() {
-        fireChange(null);
+        publish(null);
+    }
+
+    /**
+     * Notifies subscribers of the given value, or, if a batch is open,
+     * defers notification until the batch completes.
+     */
+    private void publish(@Nullable T newValue) {
+        if(Propagation.isBatching()) {
+            deferredValue = newValue;
+            if(!deferred) {
+                deferred = true;
+                Propagation.defer(this::commitDeferredChange);
+            }
+        } else {
+            fireChange(newValue);
+        }
+    }
+
+    private void commitDeferredChange() {
+        T newValue = deferredValue;
+        deferred = false;
+        deferredValue = null;
+        fireChange(newValue);
     }
 
     @Override
@@ -64,6 +94,12 @@ public class PendingValue<T> extends Observable<T> implements Consumer<T> {
         return value;
     }
 
+    @Override
+    @GwtIncompatible
+    protected boolean isWaitForThreadSafe() {
+        return true;
+    }
+
     /**
      * If the given {@code newValue} is not equal to the current value,
      * update the current value, fire a changed event, and return {@code true}.
@@ -76,7 +112,7 @@ public class PendingValue<T> extends Observable<T> implements Consumer<T> {
     public boolean updateIfNotEqual(T newValue) {
         if (!Objects.equals(this.value, newValue)) {
             this.value = newValue;
-            fireChange(newValue);
+            publish(newValue);
             return true;
         } else {
             return false;
@@ -86,15 +122,19 @@ public class PendingValue<T> extends Observable<T> implements Consumer<T> {
     public boolean updateIfNotSame(T value) {
         if(this.value != value) {
             this.value = value;
-            fireChange(value);
+            publish(value);
             return true;
         } else {
             return false;
         }
     }
 
+    @Override
     @SuppressWarnings("deprecation")
     public @Nullable T get() {
+        if(TrackedObservable.isTracking()) {
+            return super.get();
+        }
         return value;
     }
 
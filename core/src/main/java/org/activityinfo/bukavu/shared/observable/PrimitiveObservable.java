@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+/**
+ * Common base for {@link IntObservable}, {@link DoubleObservable} and {@link BooleanObservable}.
+ *
+ * <p>Manages the subscription of observers and the connection lifecycle, following the same rules as
+ * {@link Observable}. Subclasses store their current value in a primitive field and decide whether
+ * it has changed by comparing values, rather than references.</p>
+ *
+ * <p>Unlike {@link ComputedObservable}, primitive observables derived from other primitive observables are
+ * updated as soon as their sources change. They are intended for small, cheap values like counters, offsets,
+ * widths and flags.</p>
+ *
+ * @param <O> the type of observer
+ */
+abstract class PrimitiveObservable<O> {
+
+    private boolean connecting = false;
+
+    /**
+     * False if the value is still loading.
+     */
+    boolean loaded = false;
+
+    private final ObserverRegistry<Slot> observers = new ObserverRegistry<>();
+
+    private static final class Slot extends ObserverRegistry.Slot {
+        private final PrimitiveObservable<?> observable;
+        private final Object observer;
+
+        private Slot(PrimitiveObservable<?> observable, Object observer) {
+            this.observable = observable;
+            this.observer = observer;
+        }
+
+        @Override
+        public void unsubscribe() {
+            observable.removeObserver(this);
+        }
+    }
+
+    /**
+     * Subscribes to changes to this value. The observer is immediately notified of the current value.
+     */
+    public final Subscription subscribe(O observer) {
+        if(!connecting && observers.isEmpty()) {
+            try {
+                connecting = true;
+                onConnect();
+            } finally {
+                connecting = false;
+            }
+        }
+        Slot slot = new Slot(this, observer);
+        observers.add(slot);
+
+        deliver(observer);
+
+        return slot;
+    }
+
+    private void removeObserver(Slot slot) {
+        if(!observers.remove(slot)) {
+            // Already unsubscribed
+            return;
+        }
+        if(observers.isEmpty()) {
+            onDisconnect();
+        }
+    }
+
+    /**
+     * @return true if there any observers subscribed to this value.
+     */
+    public final boolean isConnected() {
+        return !observers.isEmpty();
+    }
+
+    protected final boolean isConnecting() {
+        return connecting;
+    }
+
+    /**
+     * @return true if the value is being loaded or is otherwise not yet available.
+     */
+    public final boolean isLoading() {
+        return !loaded;
+    }
+
+    /**
+     * Called when the first observer subscribes.
+     */
+    protected void onConnect() {
+    }
+
+    /**
+     * Called when the last observer unsubscribes.
+     */
+    protected void onDisconnect() {
+    }
+
+    /**
+     * Delivers the current value, or the loading state, to the given observer.
+     */
+    abstract void deliver(O observer);
+
+    /**
+     * @return the height of this value in the graph, for the benefit of {@link ComputedObservable}s
+     * that are computed from it.
+     */
+    int getHeight() {
+        return 0;
+    }
+
+    /**
+     * Called by subclasses after the value has changed to notify observers.
+     */
+    @SuppressWarnings("unchecked")
+    final void notifyObservers() {
+        if(connecting || observers.isEmpty()) {
+            return;
+        }
+        Propagation.enter();
+        int end = observers.beginNotify();
+        try {
+            for (int i = 0; i < end; i++) {
+                Slot slot = observers.get(i);
+                if(slot != null) {
+                    deliver((O) slot.observer);
+                }
+            }
+        } finally {
+            observers.endNotify();
+            Propagation.exit();
+        }
+    }
+
+    /**
+     * Marks this value as loading, and notifies observers if it was previously loaded.
+     */
+    protected final void fireLoading() {
+        if(loaded) {
+            loaded = false;
+            notifyObservers();
+        }
+    }
+}
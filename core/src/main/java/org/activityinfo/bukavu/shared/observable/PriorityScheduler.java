@@ -0,0 +1,286 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GWT;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs work in priority {@link Lane}s, so that interactive work is not stuck behind background work.
+ *
+ * <p>Each lane is exposed as a {@link Scheduler} by {@link #lane(Lane)}, so that computed observables,
+ * incremental tasks and rendering can tag their work with a lane simply by using the corresponding
+ * scheduler. For example:</p>
+ *
+ * <pre>
+ * Observable&lt;Report&gt; report = data.transform(PriorityScheduler.getDefault().lane(Lane.IDLE), Report::build);
+ * </pre>
+ *
+ * <p>Queued work is run in batches: each batch runs tasks from the most urgent lane first, in the order
+ * they were scheduled, until the batch's time budget is spent, and then yields to the browser. So that
+ * less urgent work is not starved, a task which has waited longer than its lane's
+ * {@link Lane#getTimeoutMillis() timeout} is run ahead of all other work.</p>
+ */
+public final class PriorityScheduler {
+
+    /**
+     * The environment in which a {@code PriorityScheduler} runs.
+     */
+    public interface Host {
+
+        /**
+         * @return the current time, in milliseconds.
+         */
+        long now();
+
+        /**
+         * Requests that {@code callback} be called once, after the current event has been handled.
+         */
+        void requestCallback(Runnable callback);
+    }
+
+    /**
+     * A {@link Host} for tests, whose time only advances when told to, and which only runs callbacks
+     * when asked.
+     */
+    public static final class ManualHost implements Host {
+        private long now = 0;
+        private final List<Runnable> callbacks = new ArrayList<>();
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        public void advance(long millis) {
+            now += millis;
+        }
+
+        @Override
+        public void requestCallback(Runnable callback) {
+            callbacks.add(callback);
+        }
+
+        /**
+         * @return the number of callbacks waiting to run.
+         */
+        public int countPending() {
+            return callbacks.size();
+        }
+
+        /**
+         * Runs the callbacks requested so far, but not those requested while they run.
+         */
+        public void runCallbacks() {
+            List<Runnable> toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+            for (Runnable callback : toRun) {
+                callback.run();
+            }
+        }
+    }
+
+    private static final class BrowserHost implements Host {
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void requestCallback(Runnable callback) {
+            com.google.gwt.core.client.Scheduler.get().scheduleDeferred(callback::run);
+        }
+    }
+
+    /**
+     * Outside the browser, as with the {@link EventLoopScheduler}, work is run as soon as it is scheduled,
+     * although in order of priority.
+     */
+    private static final class ImmediateHost implements Host {
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void requestCallback(Runnable callback) {
+            callback.run();
+        }
+    }
+
+    private static final class Task {
+        private final Runnable runnable;
+        private final long deadline;
+
+        private Task(Runnable runnable, long deadline) {
+            this.runnable = runnable;
+            this.deadline = deadline;
+        }
+    }
+
+    private final class LaneScheduler implements Scheduler {
+        private final Lane lane;
+
+        private LaneScheduler(Lane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void schedule(Runnable runnable) {
+            PriorityScheduler.this.schedule(lane, runnable);
+        }
+
+        @Override
+        public String toString() {
+            return "PriorityScheduler[" + lane + "]";
+        }
+    }
+
+    /**
+     * The time budget of each batch of work in the browser, after which we yield.
+     */
+    public static final long DEFAULT_BUDGET_MILLIS = 5;
+
+    private static final Lane[] LANES = Lane.values();
+
+    private final Host host;
+    private final long budgetMillis;
+
+    private final ArrayDeque<Task>[] queues = newQueues(LANES.length);
+    private final LaneScheduler[] laneSchedulers = new LaneScheduler[LANES.length];
+
+    private boolean callbackRequested = false;
+    private boolean flushing = false;
+
+    public PriorityScheduler(Host host, long budgetMillis) {
+        this.host = host;
+        this.budgetMillis = budgetMillis;
+        for (Lane lane : LANES) {
+            queues[lane.ordinal()] = new ArrayDeque<>();
+            laneSchedulers[lane.ordinal()] = new LaneScheduler(lane);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<Task>[] newQueues(int count) {
+        return (ArrayDeque<Task>[]) new ArrayDeque<?>[count];
+    }
+
+    /**
+     * @return the default {@code PriorityScheduler}, which runs on the browser's event loop, or,
+     * outside the browser, runs work immediately.
+     *
+     * <p>A {@code PriorityScheduler} is not thread-safe, so outside the browser, each thread has its own
+     * default, kept with its {@link PropagationContext}.</p>
+     */
+    public static PriorityScheduler getDefault() {
+        PropagationContext context = CurrentContext.get();
+        if(context.priorityScheduler == null) {
+            if(GWT.isScript()) {
+                context.priorityScheduler = new PriorityScheduler(new BrowserHost(), DEFAULT_BUDGET_MILLIS);
+            } else {
+                context.priorityScheduler = new PriorityScheduler(new ImmediateHost(), Long.MAX_VALUE);
+            }
+        }
+        return context.priorityScheduler;
+    }
+
+    /**
+     * @return a {@link Scheduler} which schedules work in the given {@code lane}.
+     */
+    public Scheduler lane(Lane lane) {
+        return laneSchedulers[lane.ordinal()];
+    }
+
+    public void schedule(Lane lane, Runnable runnable) {
+        queues[lane.ordinal()].add(new Task(runnable, host.now() + lane.getTimeoutMillis()));
+        requestCallback();
+    }
+
+    /**
+     * @return the number of tasks waiting in {@code lane}
+     */
+    public int countPending(Lane lane) {
+        return queues[lane.ordinal()].size();
+    }
+
+    private void requestCallback() {
+        // While flushing, new work is picked up by the loop in flush()
+        if(!callbackRequested && !flushing) {
+            callbackRequested = true;
+            host.requestCallback(this::flush);
+        }
+    }
+
+    private void flush() {
+        callbackRequested = false;
+        flushing = true;
+        try {
+            long start = host.now();
+            Task task;
+            while ((task = next(host.now())) != null) {
+                task.runnable.run();
+                if(host.now() - start >= budgetMillis) {
+                    break;
+                }
+            }
+        } finally {
+            flushing = false;
+            if(hasPending()) {
+                requestCallback();
+            }
+        }
+    }
+
+    /**
+     * Removes the next task to run: the task which is furthest past its deadline, if any,
+     * or otherwise the oldest task in the most urgent lane.
+     */
+    private Task next(long now) {
+        ArrayDeque<Task> expired = null;
+        ArrayDeque<Task> urgent = null;
+        for (ArrayDeque<Task> queue : queues) {
+            Task head = queue.peek();
+            if(head != null) {
+                if(urgent == null) {
+                    urgent = queue;
+                }
+                if(head.deadline <= now && (expired == null || head.deadline < expired.peek().deadline)) {
+                    expired = queue;
+                }
+            }
+        }
+        if(expired != null) {
+            return expired.poll();
+        }
+        if(urgent != null) {
+            return urgent.poll();
+        }
+        return null;
+    }
+
+    private boolean hasPending() {
+        for (ArrayDeque<Task> queue : queues) {
+            if(!queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import java.util.PriorityQueue;
+
+/**
+ * Coordinates the propagation of changes through the graph of {@link ComputedObservable}s
+ * and the other {@link Node}s which depend on them.
+ *
+ * <p>Rather than recomputing immediately when one of its arguments changes, a synchronous
+ * {@code ComputedObservable} marks itself dirty and is added to a queue ordered by its
+ * height in the graph. Once the outermost {@link Observable#fireChange(Object)} has notified
+ * its observers, the queue is drained from the lowest height to the highest, so that each
+ * node is recomputed exactly once, after all of its arguments have been brought up to date.</p>
+ *
+ * <p>For example, given a "diamond" where {@code a} and {@code b} are both derived from {@code x},
+ * and {@code c} is derived from both {@code a} and {@code b}, a change to {@code x} recomputes
+ * {@code a} and {@code b} and then {@code c} once, and {@code c} never observes a new {@code a}
+ * together with a stale {@code b}.</p>
+ *
+ * <p>Because the queue is drained by a loop rather than by nested {@code fireChange()} calls,
+ * long chains of computed values no longer translate into deep call stacks.</p>
+ *
+ * <p>Changes can also be grouped into a batch using {@link Observable#batch(Runnable)}. While a batch
+ * is open, sources like {@link StatefulValue} defer their notifications until the outermost batch
+ * completes, and then fire once with their final value.</p>
+ *
+ * <p>The queue and batches belong to the calling thread's {@link PropagationContext}, so graphs on
+ * different threads propagate independently.</p>
+ */
+final class Propagation {
+
+    /**
+     * A node which can be queued to run once all nodes below it in the graph have been brought up to date.
+     *
+     * <p>Most nodes are {@link ComputedObservable}s. Nodes which receive changes from an {@link ObservableList}
+     * use a {@link DeferredPublisher}.</p>
+     */
+    interface Node {
+
+        /**
+         * @return the height of this node in the graph, one more than the height of its tallest argument.
+         */
+        int getPropagationHeight();
+
+        /**
+         * @return the order in which this node was queued, used to break ties between nodes of the same height.
+         */
+        int getPropagationSequence();
+
+        void setPropagationSequence(int sequence);
+
+        /**
+         * Called when this node reaches the front of the queue.
+         */
+        void propagate();
+    }
+
+    private Propagation() {
+    }
+
+    /**
+     * Called before an observable begins notifying its observers.
+     */
+    static void enter() {
+        CurrentContext.get().depth++;
+    }
+
+    /**
+     * Called after an observable has finished notifying its observers. When the outermost
+     * notification completes, all queued nodes are recomputed.
+     */
+    static void exit() {
+        PropagationContext context = CurrentContext.get();
+        context.depth--;
+        if (context.depth == 0 && !context.draining) {
+            drain(context);
+        }
+    }
+
+    /**
+     * Queues a dirty node for recomputation. If no change is currently being propagated,
+     * the node is recomputed immediately.
+     */
+    static void enqueue(Node node) {
+        PropagationContext context = CurrentContext.get();
+        node.setPropagationSequence(context.nextSequence++);
+        context.queue.add(node);
+        if (context.depth == 0 && !context.draining) {
+            drain(context);
+        }
+    }
+
+    /**
+     * Runs {@code updates}, deferring change notifications from sources until it completes.
+     *
+     * <p>The outermost batch commits even if {@code updates} throws: sources have already taken
+     * their new values, so their observers are notified before the exception is rethrown.</p>
+     */
+    static void batch(Runnable updates) {
+        PropagationContext context = CurrentContext.get();
+        context.batchDepth++;
+        enter();
+        try {
+            updates.run();
+        } finally {
+            context.batchDepth--;
+            try {
+                if (context.batchDepth == 0) {
+                    commit(context);
+                }
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    /**
+     * @return true if a batch is open, and sources should defer their change notifications
+     * using {@link #defer(Runnable)}
+     */
+    static boolean isBatching() {
+        return CurrentContext.get().batchDepth > 0;
+    }
+
+    /**
+     * Registers a change notification that has been deferred until the end of the batch.
+     * {@code commit} will be called exactly once when the batch is committed.
+     */
+    static void defer(Runnable commit) {
+        PropagationContext context = CurrentContext.get();
+        assert context.batchDepth > 0 : "No batch is open";
+        context.deferred.add(commit);
+    }
+
+    private static void commit(PropagationContext context) {
+        // Sources notify their observers in the order they were first changed. Computed nodes
+        // downstream are queued, and recomputed once when we exit.
+        // The list is emptied before running anything, so that a failure can never leave stale
+        // commits behind to be replayed by the next, unrelated batch. Every commit runs even if an
+        // earlier one throws, because each commit also clears its source's deferred flag, and a
+        // source whose flag is left set would never notify again.
+        Runnable[] deferred = context.deferred.toArray(new Runnable[0]);
+        context.deferred.clear();
+
+        Throwable failure = null;
+        for (Runnable commit : deferred) {
+            try {
+                commit.run();
+            } catch (RuntimeException | Error e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    /**
+     * @return true if a change is currently being propagated through the graph.
+     */
+    static boolean isPropagating() {
+        PropagationContext context = CurrentContext.get();
+        return context.depth > 0 || context.draining;
+    }
+
+    private static void drain(PropagationContext context) {
+        PriorityQueue<Node> queue = context.queue;
+        context.draining = true;
+        ObservableMetrics metrics = ObservableMetrics.installed;
+        int recomputed = 0;
+        int maxHeight = 0;
+        try {
+            Node node;
+            while ((node = queue.poll()) != null) {
+                node.propagate();
+                recomputed++;
+                maxHeight = Math.max(maxHeight, node.getPropagationHeight());
+            }
+            if(metrics != null && recomputed > 0) {
+                metrics.onPropagation(recomputed, maxHeight);
+            }
+        } finally {
+            context.draining = false;
+
+            // If an observer threw an exception, nodes may be left in the queue. They stay
+            // queued and dirty, and are recomputed by the next drain on this thread.
+            if (queue.isEmpty()) {
+                context.nextSequence = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The state of the changes being propagated on one thread, and the thread's default {@link TimerWheel},
+ * {@link PriorityScheduler}, {@link IncrementalRunner}s and {@link WarmPool}.
+ *
+ * <p>On the JVM, each thread has its own context, so that threads updating graphs that share nothing
+ * do not interfere with each other. A graph of observables must still only be used from one thread at
+ * a time. In the browser, there is a single context.</p>
+ *
+ * @see CurrentContext
+ */
+final class PropagationContext {
+
+    private static final Comparator<Propagation.Node> HEIGHT_ORDER = (a, b) -> {
+        int aHeight = a.getPropagationHeight();
+        int bHeight = b.getPropagationHeight();
+        if (aHeight != bHeight) {
+            return Integer.compare(aHeight, bHeight);
+        }
+        return Integer.compare(a.getPropagationSequence(), b.getPropagationSequence());
+    };
+
+    final PriorityQueue<Propagation.Node> queue = new PriorityQueue<>(HEIGHT_ORDER);
+
+    /**
+     * The number of {@code fireChange()} calls currently notifying observers.
+     */
+    int depth = 0;
+
+    boolean draining = false;
+
+    /**
+     * The number of batches currently open.
+     */
+    int batchDepth = 0;
+
+    /**
+     * Sources whose changes have been deferred until the end of the current batch.
+     */
+    final List<Runnable> deferred = new ArrayList<>();
+
+    int nextSequence = 0;
+
+    /**
+     * The {@link TrackedObservable} whose function is currently running, if any.
+     */
+    @Nullable TrackedObservable<?> tracking = null;
+
+    /**
+     * The default wheel for time-based operators created on this thread, created on first use.
+     */
+    @Nullable TimerWheel timerWheel = null;
+
+    @Nullable PriorityScheduler priorityScheduler = null;
+
+    @Nullable IncrementalRunner incrementalRunner = null;
+
+    @Nullable IncrementalRunner idleRunner = null;
+
+    @Nullable WarmPool warmPool = null;
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Aggregates the elements of an {@link ObservableList}, applying only the elements that have
+ * changed to the {@link Reducer}.
+ *
+ * <p>Like a {@link ComputedObservable}, the result is published once the propagation of a change
+ * reaches this node, so its observers never see a result computed from some of the elements
+ * derived from a source, but not others.</p>
+ */
+class ReducedObservable<T, R> extends Observable<R> implements ListObserver<T> {
+
+    private final ObservableList<T> list;
+    private final Supplier<? extends Reducer<T, R>> reducerFactory;
+
+    private @Nullable Reducer<T, R> reducer;
+    private @Nullable Subscription subscription;
+
+    private final DeferredPublisher publisher = new DeferredPublisher(this::publishResult);
+
+    ReducedObservable(ObservableList<T> list, Supplier<? extends Reducer<T, R>> reducerFactory) {
+        this.list = list;
+        this.reducerFactory = reducerFactory;
+    }
+
+    @Override
+    protected void onConnect() {
+        subscription = list.subscribe(this);
+        publisher.connect(list.getHeight());
+    }
+
+    @Override
+    int getHeight() {
+        return publisher.getHeight();
+    }
+
+    @Override
+    public void onChanges(List<ListChange<T>> changes) {
+        if(reducer == null) {
+            // The first batch after connecting or loading holds the whole list
+            reducer = reducerFactory.get();
+        }
+        for (ListChange<T> change : changes) {
+            switch (change.getKind()) {
+                case INSERT:
+                    reducer.add(change.getNewValue());
+                    break;
+                case REMOVE:
+                    reducer.remove(change.getOldValue());
+                    break;
+                case UPDATE:
+                    reducer.remove(change.getOldValue());
+                    reducer.add(change.getNewValue());
+                    break;
+                case MOVE:
+                    break;
+            }
+        }
+        publishLater();
+    }
+
+    @Override
+    public void onLoading() {
+        reducer = null;
+        publishLater();
+    }
+
+    private void publishLater() {
+        if(isConnecting()) {
+            publishResult();
+        } else {
+            publisher.schedule(list.getHeight());
+        }
+    }
+
+    private void publishResult() {
+        if(!isConnected() && !isConnecting()) {
+            return;
+        }
+        @Nullable R result = reducer == null ? null : reducer.getResult();
+        if(!Objects.equals(cachedValue, result)) {
+            fireChange(result);
+        }
+    }
+
+    @Override
+    protected void onDisconnect() {
+        assert subscription != null : "onConnect not called";
+        subscription.unsubscribe();
+        subscription = null;
+        reducer = null;
+        cachedValue = null;
+    }
+}
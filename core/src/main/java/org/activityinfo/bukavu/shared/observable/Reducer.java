@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+/**
+ * Maintains an aggregate of a collection of values, which can be updated incrementally as values
+ * are added and removed.
+ *
+ * @see Reducers
+ * @see Observable#reduce(java.util.List, java.util.function.Supplier)
+ */
+public interface Reducer<T, R> {
+
+    void add(T value);
+
+    /**
+     * Removes a value previously passed to {@link #add(Object)}.
+     */
+    void remove(T value);
+
+    /**
+     * @return the aggregate of all values added and not yet removed.
+     */
+    R getResult();
+}
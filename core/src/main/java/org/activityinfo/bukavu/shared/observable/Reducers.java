@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Common {@link Reducer}s.
+ */
+public final class Reducers {
+
+    private Reducers() {
+    }
+
+    /**
+     * @return a reducer which starts with {@code identity}, and applies {@code accumulate} to each value added,
+     * and {@code retract} to each value removed. {@code retract} must undo the effect of {@code accumulate}.
+     */
+    public static <T, R> Supplier<Reducer<T, R>> of(R identity, BiFunction<R, T, R> accumulate, BiFunction<R, T, R> retract) {
+        return () -> new Reducer<T, R>() {
+            private R result = identity;
+
+            @Override
+            public void add(T value) {
+                result = accumulate.apply(result, value);
+            }
+
+            @Override
+            public void remove(T value) {
+                result = retract.apply(result, value);
+            }
+
+            @Override
+            public R getResult() {
+                return result;
+            }
+        };
+    }
+
+    public static Supplier<Reducer<Integer, Integer>> sumInt() {
+        return of(0, (sum, x) -> sum + x, (sum, x) -> sum - x);
+    }
+
+    /**
+     * Note that the result may accumulate rounding errors as values are added and removed.
+     */
+    public static Supplier<Reducer<Double, Double>> sumDouble() {
+        return of(0d, (sum, x) -> sum + x, (sum, x) -> sum - x);
+    }
+
+    public static <T> Supplier<Reducer<T, Integer>> count() {
+        return of(0, (count, x) -> count + 1, (count, x) -> count - 1);
+    }
+
+    public static <T extends Comparable<? super T>> Supplier<Reducer<T, Optional<T>>> min() {
+        return min(Comparator.naturalOrder());
+    }
+
+    public static <T extends Comparable<? super T>> Supplier<Reducer<T, Optional<T>>> max() {
+        return max(Comparator.naturalOrder());
+    }
+
+    /**
+     * @return a reducer which finds the smallest value according to {@code comparator}, or {@code Optional.empty()}
+     * if there are no values. Adding and removing values costs {@code O(log n)}.
+     */
+    public static <T> Supplier<Reducer<T, Optional<T>>> min(Comparator<? super T> comparator) {
+        return () -> new Extremum<>(comparator, false);
+    }
+
+    /**
+     * @return a reducer which finds the largest value according to {@code comparator}, or {@code Optional.empty()}
+     * if there are no values. Adding and removing values costs {@code O(log n)}.
+     */
+    public static <T> Supplier<Reducer<T, Optional<T>>> max(Comparator<? super T> comparator) {
+        return () -> new Extremum<>(comparator, true);
+    }
+
+    private static final class Extremum<T> implements Reducer<T, Optional<T>> {
+
+        /**
+         * The number of times each value has been added.
+         */
+        private final TreeMap<T, Integer> counts;
+        private final boolean max;
+
+        private Extremum(Comparator<? super T> comparator, boolean max) {
+            this.counts = new TreeMap<>(comparator);
+            this.max = max;
+        }
+
+        @Override
+        public void add(T value) {
+            counts.merge(value, 1, Integer::sum);
+        }
+
+        @Override
+        public void remove(T value) {
+            Integer count = counts.get(value);
+            assert count != null : "value was not added";
+            if(count == 1) {
+                counts.remove(value);
+            } else {
+                counts.put(value, count - 1);
+            }
+        }
+
+        @Override
+        public Optional<T> getResult() {
+            Map.Entry<T, Integer> entry = max ? counts.lastEntry() : counts.firstEntry();
+            if(entry == null) {
+                return Optional.empty();
+            }
+            return Optional.of(entry.getKey());
+        }
+    }
+}
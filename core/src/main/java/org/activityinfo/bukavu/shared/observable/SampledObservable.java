@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Fires the latest value of its source once per period, if it has changed since the last sample.
+ *
+ * <p>The period starts with the first change after the source has been quiet, so that no timeouts are
+ * scheduled while nothing is changing.</p>
+ */
+class SampledObservable<T> extends Observable<T> {
+
+    private final Observable<T> source;
+    private final int period;
+    private final TimerWheel.Timeout timeout;
+    private @Nullable Subscription sourceSubscription;
+    private @Nullable T latestValue;
+    private boolean changed = false;
+
+    SampledObservable(Observable<T> source, int period, TimerWheel wheel) {
+        this.source = source;
+        this.period = period;
+        this.timeout = wheel.newTimeout(this::onSample);
+    }
+
+    @Override
+    protected void onConnect() {
+        sourceSubscription = source.subscribe(new Observer<T>() {
+            @Override
+            public void onChange(@Nullable T newValue) {
+                if(isConnecting()) {
+                    SampledObservable.this.fireChange(newValue);
+                } else {
+                    latestValue = newValue;
+                    changed = true;
+                    if(!timeout.isPending()) {
+                        timeout.reschedule(period);
+                    }
+                }
+            }
+        });
+    }
+
+    private void onSample() {
+        if(changed) {
+            T value = latestValue;
+            latestValue = null;
+            changed = false;
+            fireChange(value);
+        }
+    }
+
+    @Override
+    protected void onDisconnect() {
+        cachedValue = null;
+        latestValue = null;
+        changed = false;
+        timeout.cancel();
+        if(sourceSubscription != null) {
+            sourceSubscription.unsubscribe();
+            sourceSubscription = null;
+        }
+    }
+
+    @Override
+    @GwtIncompatible
+    public T waitFor() {
+        return source.waitFor();
+    }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        return evaluation.join(source);
+    }
+
+    @Override
+    int getHeight() {
+        return source.getHeight();
+    }
+}
@@ -15,6 +15,22 @@
  */
 package org.activityinfo.bukavu.shared.observable;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
 public interface Scheduler {
     void schedule(Runnable runnable);
+
+    /**
+     * Runs a computation for a {@link ComputedObservable} and passes the result to {@code callback}.
+     * The {@code callback} must be called on the same thread as the tasks passed to {@link #schedule(Runnable)},
+     * but {@code computation} may be run elsewhere.
+     *
+     * <p>The default implementation runs both immediately on the calling thread.</p>
+     */
+    default <T> void compute(Supplier<@Nullable T> computation, Consumer<@Nullable T> callback) {
+        callback.accept(computation.get());
+    }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A mutable list whose changes are delivered to observers as individual insertions, removals,
+ * updates and moves.
+ *
+ * <p>Within {@link Observable#batch(Runnable)}, changes are delivered together when the batch completes.</p>
+ */
+public class StatefulList<T> extends ObservableList<T> {
+
+    private final List<T> values;
+
+    private boolean deferred = false;
+
+    public StatefulList() {
+        this.values = new ArrayList<>();
+    }
+
+    public StatefulList(Collection<? extends T> initialValues) {
+        this.values = new ArrayList<>(initialValues);
+    }
+
+    @Override
+    protected void onConnect() {
+        for (int i = 0; i < values.size(); i++) {
+            apply(ListChange.insert(i, values.get(i)));
+        }
+        publish(true);
+    }
+
+    public List<T> get() {
+        return Collections.unmodifiableList(values);
+    }
+
+    public void add(T value) {
+        add(values.size(), value);
+    }
+
+    public void add(int index, T value) {
+        values.add(index, value);
+        change(ListChange.insert(index, value));
+    }
+
+    public T remove(int index) {
+        T removed = values.remove(index);
+        change(ListChange.remove(index, removed));
+        return removed;
+    }
+
+    public T set(int index, T value) {
+        T oldValue = values.set(index, value);
+        if(oldValue != value) {
+            change(ListChange.update(index, oldValue, value));
+        }
+        return oldValue;
+    }
+
+    /**
+     * Moves the element at {@code fromIndex} so that it is at {@code toIndex} afterwards.
+     */
+    public void move(int fromIndex, int toIndex) {
+        if(fromIndex != toIndex) {
+            T value = values.remove(fromIndex);
+            values.add(toIndex, value);
+            change(ListChange.move(fromIndex, toIndex, value));
+        }
+    }
+
+    public void clear() {
+        for (int i = values.size() - 1; i >= 0; i--) {
+            remove(i);
+        }
+    }
+
+    private void change(ListChange<T> change) {
+        if(!isConnected()) {
+            return;
+        }
+        apply(change);
+        if(Propagation.isBatching()) {
+            if(!deferred) {
+                deferred = true;
+                Propagation.defer(this::commitDeferredChanges);
+            }
+        } else {
+            publish(true);
+        }
+    }
+
+    private void commitDeferredChanges() {
+        deferred = false;
+        if(isConnected()) {
+            publish(true);
+        }
+    }
+}
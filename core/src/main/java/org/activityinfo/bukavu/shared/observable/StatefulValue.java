@@ -25,6 +25,8 @@ public class StatefulValue<T> extends Observable<T> implements Consumer<T> {
     
     private T value;
 
+    private boolean deferred = false;
+
     public StatefulValue(T value) {
         this.value = value;
         this.cachedValue = value;
@@ -40,6 +42,26 @@ public class StatefulValue<T> extends Observable<T> implements Consumer<T> {
      */
     public void updateValue(T value) {
         this.value = value;
+        publish();
+    }
+
+    /**
+     * Notifies subscribers of the current value, or, if a batch is open,
+     * defers notification until the batch completes.
+     */
+    private void publish() {
+        if(Propagation.isBatching()) {
+            if(!deferred) {
+                deferred = true;
+                Propagation.defer(this::commitDeferredChange);
+            }
+        } else {
+            fireChange(value);
+        }
+    }
+
+    private void commitDeferredChange() {
+        deferred = false;
         fireChange(value);
     }
 
@@ -54,6 +76,12 @@ public class StatefulValue<T> extends Observable<T> implements Consumer<T> {
         return value;
     }
 
+    @Override
+    @GwtIncompatible
+    protected boolean isWaitForThreadSafe() {
+        return true;
+    }
+
     /**
      * If the given {@code newValue} is not equal to the current value,
      * update the current value, fire a changed event, and return {@code true}.
@@ -66,7 +94,7 @@ public class StatefulValue<T> extends Observable<T> implements Consumer<T> {
     public boolean updateIfNotEqual(T newValue) {
         if (!Objects.equals(this.value, newValue)) {
             this.value = newValue;
-            fireChange(newValue);
+            publish();
             return true;
         } else {
             return false;
@@ -76,14 +104,18 @@ public class StatefulValue<T> extends Observable<T> implements Consumer<T> {
     public boolean updateIfNotSame(T value) {
         if(this.value != value) {
             this.value = value;
-            fireChange(value);
+            publish();
             return true;
         } else {
             return false;
         }
     }
 
+    @Override
     public T get() {
+        if(TrackedObservable.isTracking()) {
+            return super.get();
+        }
         return value;
     }
 
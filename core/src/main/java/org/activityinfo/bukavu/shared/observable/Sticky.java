@@ -81,4 +81,15 @@ class Sticky<T> extends Observable<T> {
     public T waitFor() {
         return source.waitFor();
     }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        return evaluation.join(source);
+    }
+
+    @Override
+    int getHeight() {
+        return source.getHeight();
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Passes on the first change at once, and then at most one change per interval: the latest value
+ * received during the interval is fired when it ends.
+ */
+class ThrottledObservable<T> extends Observable<T> {
+
+    private final Observable<T> source;
+    private final int interval;
+    private final TimerWheel.Timeout timeout;
+    private @Nullable Subscription sourceSubscription;
+    private @Nullable T pendingValue;
+    private boolean pending = false;
+
+    ThrottledObservable(Observable<T> source, int interval, TimerWheel wheel) {
+        this.source = source;
+        this.interval = interval;
+        this.timeout = wheel.newTimeout(this::onIntervalEnd);
+    }
+
+    @Override
+    protected void onConnect() {
+        sourceSubscription = source.subscribe(new Observer<T>() {
+            @Override
+            public void onChange(@Nullable T newValue) {
+                if(isConnecting()) {
+                    ThrottledObservable.this.fireChange(newValue);
+                } else if(timeout.isPending()) {
+                    pendingValue = newValue;
+                    pending = true;
+                } else {
+                    ThrottledObservable.this.fireChange(newValue);
+                    timeout.reschedule(interval);
+                }
+            }
+        });
+    }
+
+    private void onIntervalEnd() {
+        if(pending) {
+            T value = pendingValue;
+            pendingValue = null;
+            pending = false;
+            timeout.reschedule(interval);
+            fireChange(value);
+        }
+    }
+
+    @Override
+    protected void onDisconnect() {
+        cachedValue = null;
+        pendingValue = null;
+        pending = false;
+        timeout.cancel();
+        if(sourceSubscription != null) {
+            sourceSubscription.unsubscribe();
+            sourceSubscription = null;
+        }
+    }
+
+    @Override
+    @GwtIncompatible
+    public T waitFor() {
+        return source.waitFor();
+    }
+
+    @Override
+    @GwtIncompatible
+    T waitFor(ParallelEvaluation evaluation) {
+        return evaluation.join(source);
+    }
+
+    @Override
+    int getHeight() {
+        return source.getHeight();
+    }
+}
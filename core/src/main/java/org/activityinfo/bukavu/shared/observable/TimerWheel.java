@@ -0,0 +1,404 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GWT;
+import com.google.gwt.user.client.Timer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Schedules timeouts for the time-based operators, such as {@link Observable#debounce(int)},
+ * {@link Observable#throttle(int)} and {@link Observable#optimistic(int)}.
+ *
+ * <p>Timeouts are kept in a hierarchical timing wheel: each level has {@value #SLOTS} slots, and each slot
+ * of a level spans all of the slots of the level below. Scheduling, rescheduling and cancelling a timeout
+ * are constant-time operations, and however many timeouts are pending, the wheel asks its {@link Clock}
+ * for a single wake-up at a time. This means that a screen with hundreds of debounced inputs uses one
+ * browser timer rather than hundreds, and that debouncing a rapidly changing value only moves an
+ * entry between slots.</p>
+ *
+ * <p>Timeouts are rounded up to the wheel's tick, which is {@value #DEFAULT_TICK_MILLIS} milliseconds by
+ * default.</p>
+ */
+public final class TimerWheel {
+
+    /**
+     * The source of time for a {@code TimerWheel}.
+     */
+    public interface Clock {
+
+        /**
+         * @return the current time, in milliseconds.
+         */
+        long now();
+
+        /**
+         * Requests that {@code callback} be called once, after {@code delayMillis} milliseconds.
+         * Replaces any wake-up requested earlier which has not yet been called.
+         */
+        void requestWakeUp(long delayMillis, Runnable callback);
+    }
+
+    /**
+     * A {@link Clock} for tests, whose time only advances when told to.
+     */
+    public static final class ManualClock implements Clock {
+        private long now = 0;
+        private long wakeUpTime;
+        private @Nullable Runnable wakeUp;
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void requestWakeUp(long delayMillis, Runnable callback) {
+            wakeUpTime = now + delayMillis;
+            wakeUp = callback;
+        }
+
+        /**
+         * Advances the time by {@code millis}, calling any wake-ups which fall due along the way.
+         */
+        public void advance(long millis) {
+            long target = now + millis;
+            while(wakeUp != null && wakeUpTime <= target) {
+                Runnable callback = wakeUp;
+                now = Math.max(now, wakeUpTime);
+                wakeUp = null;
+                callback.run();
+            }
+            now = target;
+        }
+    }
+
+    private static final class BrowserClock implements Clock {
+        private final Timer timer = new Timer() {
+            @Override
+            public void run() {
+                Runnable callback = wakeUp;
+                wakeUp = null;
+                if(callback != null) {
+                    callback.run();
+                }
+            }
+        };
+        private @Nullable Runnable wakeUp;
+
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void requestWakeUp(long delayMillis, Runnable callback) {
+            wakeUp = callback;
+            timer.schedule((int) Math.min(delayMillis, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Outside the browser, as with the {@link EventLoopScheduler}, we don't wait: time is virtual, and
+     * jumps forward to each wake-up as soon as it is requested. Time-based operators therefore pass
+     * values straight through, while still seeing them arrive in the right order.
+     */
+    private static final class ImmediateClock implements Clock {
+        private long now = System.currentTimeMillis();
+        private long wakeUpTime;
+        private @Nullable Runnable wakeUp;
+        private boolean running = false;
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void requestWakeUp(long delayMillis, Runnable callback) {
+            wakeUpTime = now + delayMillis;
+            wakeUp = callback;
+            if(!running) {
+                running = true;
+                try {
+                    while (wakeUp != null) {
+                        Runnable next = wakeUp;
+                        now = Math.max(now, wakeUpTime);
+                        wakeUp = null;
+                        next.run();
+                    }
+                } finally {
+                    running = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * A pending timeout, which can be cancelled or rescheduled.
+     */
+    public final class Timeout {
+        private final Runnable task;
+        private long deadline;
+        private int bucket = -1;
+        private @Nullable Timeout prev;
+        private @Nullable Timeout next;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * @return true if this timeout has been scheduled and has neither run nor been cancelled.
+         */
+        public boolean isPending() {
+            return bucket != -1;
+        }
+
+        /**
+         * Cancels this timeout, if it is pending.
+         */
+        public void cancel() {
+            if(isPending()) {
+                unlink(this);
+            }
+        }
+
+        /**
+         * Schedules this timeout to run after {@code delayMillis}, replacing its earlier schedule if it
+         * is still pending.
+         */
+        public void reschedule(long delayMillis) {
+            cancel();
+            if(size == 0 && !advancing) {
+                // Nothing is pending, so we can skip over the idle ticks
+                currentTick = Math.max(currentTick, clock.now() / tickMillis);
+            }
+            deadline = Math.max(currentTick + 1, ticksAfter(delayMillis));
+            insert(this);
+            requestWakeUp();
+        }
+    }
+
+    public static final int DEFAULT_TICK_MILLIS = 10;
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    /**
+     * Deadlines beyond the range of the wheel are parked in the last slot of the top level, and are
+     * cascaded down again when it comes around.
+     */
+    private static final long MAX_SPAN = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final Clock clock;
+    private final long tickMillis;
+
+    private final @Nullable Timeout[] buckets = new Timeout[LEVELS * SLOTS];
+    private int size = 0;
+
+    /**
+     * The last tick whose timeouts have been run.
+     */
+    private long currentTick;
+
+    private long wakeUpTick = Long.MAX_VALUE;
+    private boolean advancing = false;
+
+    private final Runnable onWakeUp = () -> {
+        wakeUpTick = Long.MAX_VALUE;
+        advance();
+    };
+
+    public TimerWheel(Clock clock) {
+        this(clock, DEFAULT_TICK_MILLIS);
+    }
+
+    public TimerWheel(Clock clock, int tickMillis) {
+        assert tickMillis > 0;
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.currentTick = clock.now() / tickMillis;
+    }
+
+    /**
+     * @return the default {@code TimerWheel}, which is driven by a single browser timer, or, outside the browser,
+     * by a virtual clock which runs timeouts as soon as they are scheduled.
+     *
+     * <p>A {@code TimerWheel} is not thread-safe, so outside the browser, each thread has its own default,
+     * kept with its {@link PropagationContext}. Time-based operators use the default wheel of the thread
+     * which creates them.</p>
+     */
+    public static TimerWheel getDefault() {
+        PropagationContext context = CurrentContext.get();
+        if(context.timerWheel == null) {
+            if(GWT.isScript()) {
+                context.timerWheel = new TimerWheel(new BrowserClock());
+            } else {
+                context.timerWheel = new TimerWheel(new ImmediateClock());
+            }
+        }
+        return context.timerWheel;
+    }
+
+    /**
+     * Replaces the calling thread's default {@code TimerWheel}, for example to drive time-based operators
+     * with a {@link ManualClock} in tests. Only operators created afterwards will use it.
+     */
+    public static void setDefault(TimerWheel wheel) {
+        CurrentContext.get().timerWheel = wheel;
+    }
+
+    /**
+     * @return a new, unscheduled {@link Timeout} which runs {@code task}.
+     */
+    public Timeout newTimeout(Runnable task) {
+        return new Timeout(task);
+    }
+
+    /**
+     * Runs {@code task} once, after {@code delayMillis} milliseconds.
+     */
+    public Timeout schedule(long delayMillis, Runnable task) {
+        Timeout timeout = new Timeout(task);
+        timeout.reschedule(delayMillis);
+        return timeout;
+    }
+
+    /**
+     * @return the number of pending timeouts.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Runs all timeouts which have fallen due.
+     */
+    public void advance() {
+        if(advancing) {
+            return;
+        }
+        advancing = true;
+        try {
+            long targetTick = clock.now() / tickMillis;
+            while (currentTick < targetTick) {
+                if (size == 0) {
+                    currentTick = targetTick;
+                    break;
+                }
+                currentTick++;
+                cascade();
+                runBucket((int) (currentTick & SLOT_MASK));
+            }
+        } finally {
+            advancing = false;
+        }
+        requestWakeUp();
+    }
+
+    private long ticksAfter(long delayMillis) {
+        return (clock.now() + Math.max(0, delayMillis) + tickMillis - 1) / tickMillis;
+    }
+
+    /**
+     * When a level wraps around, the timeouts in the next slot of the level above now fall within its range,
+     * and are moved down.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if(((currentTick >> (SLOT_BITS * (level - 1))) & SLOT_MASK) != 0) {
+                break;
+            }
+            int bucket = level * SLOTS + (int) ((currentTick >> (SLOT_BITS * level)) & SLOT_MASK);
+            Timeout timeout;
+            while ((timeout = buckets[bucket]) != null) {
+                unlink(timeout);
+                insert(timeout);
+            }
+        }
+    }
+
+    private void runBucket(int bucket) {
+        Timeout timeout;
+        while ((timeout = buckets[bucket]) != null) {
+            unlink(timeout);
+            if(timeout.deadline <= currentTick) {
+                timeout.task.run();
+            } else {
+                insert(timeout);
+            }
+        }
+    }
+
+    private void insert(Timeout timeout) {
+        long delta = Math.min(timeout.deadline - currentTick, MAX_SPAN);
+        long slotTick = currentTick + Math.max(0, delta);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int bucket = level * SLOTS + (int) ((slotTick >> (SLOT_BITS * level)) & SLOT_MASK);
+
+        Timeout head = buckets[bucket];
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = head;
+        if(head != null) {
+            head.prev = timeout;
+        }
+        buckets[bucket] = timeout;
+        size++;
+    }
+
+    private void unlink(Timeout timeout) {
+        if(timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if(timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        size--;
+    }
+
+    /**
+     * Asks the clock to wake us at the next tick which might have work to do: the next non-empty slot
+     * of the lowest level, or, failing that, the next time the lowest level wraps around.
+     */
+    private void requestWakeUp() {
+        if(advancing || size == 0) {
+            return;
+        }
+        long nextTick = (currentTick | SLOT_MASK) + 1;
+        for (long tick = currentTick + 1; tick < nextTick; tick++) {
+            if(buckets[(int) (tick & SLOT_MASK)] != null) {
+                nextTick = tick;
+                break;
+            }
+        }
+        if(nextTick < wakeUpTick) {
+            wakeUpTick = nextTick;
+            clock.requestWakeUp(Math.max(0, nextTick * tickMillis - clock.now()), onWakeUp);
+        }
+    }
+}
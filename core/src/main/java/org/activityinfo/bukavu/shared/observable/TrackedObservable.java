@@ -0,0 +1,258 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GwtIncompatible;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A computed observable which discovers its arguments as it runs, created by {@link Observable#compute(Supplier)}.
+ *
+ * <p>While the function runs, every call to {@link Observable#get()} is recorded, and we subscribe to
+ * the observables read. After each run, we unsubscribe from any observable which was not read, so that
+ * branches which are not taken hold no subscriptions and cause no recomputes.</p>
+ */
+final class TrackedObservable<T> extends ComputedObservable<T> {
+
+    /**
+     * Thrown by {@link #read(Observable)} when an observable is still loading, to abandon the run.
+     *
+     * <p>This is an {@code Error} rather than a {@code RuntimeException}, so that functions which catch
+     * exceptions thrown by their own code don't carry on computing without the missing value.</p>
+     */
+    private static final class Loading extends Error {
+        private static final long serialVersionUID = 1L;
+
+        private Loading() {
+            super("Loading", null, false, false);
+        }
+    }
+
+    private static final Loading LOADING = new Loading();
+
+    private final class Dependency implements LazyObserver<Object> {
+        private final Observable<Object> observable;
+        private @Nullable Object value;
+        private @Nullable Subscription subscription;
+        private int run;
+
+        private Dependency(Observable<Object> observable) {
+            this.observable = observable;
+        }
+
+        private void subscribe() {
+            subscription = observable.subscribe(this);
+        }
+
+        private void unsubscribe() {
+            assert subscription != null : "subscription already unsubscribed!";
+            subscription.unsubscribe();
+            subscription = null;
+        }
+
+        @Override
+        public void onChange(@Nullable Object newValue) {
+            Object oldValue = value;
+            value = newValue;
+            if(!running) {
+                onArgumentChange(observable, oldValue, newValue);
+            }
+        }
+
+        @Override
+        public void onInvalidate() {
+            if(!running) {
+                onArgumentInvalidated(observable);
+            }
+        }
+    }
+
+    private final Supplier<T> function;
+
+    private final Map<Observable<?>, Dependency> dependencies = new HashMap<>();
+
+    /**
+     * True while the function is running, and new values delivered by dependencies are
+     * being read rather than being changes that require a recompute.
+     */
+    private boolean running = false;
+
+    /**
+     * Incremented each time the function runs, so that we can find dependencies which
+     * were not read by the latest run.
+     */
+    private int run = 0;
+
+    TrackedObservable(Scheduler scheduler, Supplier<T> function) {
+        super(scheduler);
+        this.function = function;
+    }
+
+    static boolean isTracking() {
+        return CurrentContext.get().tracking != null;
+    }
+
+    /**
+     * @return the value of {@code observable} for the running function.
+     */
+    static <R> R track(Observable<R> observable) {
+        TrackedObservable<?> current = CurrentContext.get().tracking;
+        assert current != null;
+        return current.read(observable);
+    }
+
+    /**
+     * Runs {@code function} without tracking the observables it reads.
+     */
+    static <R> R runUntracked(Supplier<R> function) {
+        PropagationContext context = CurrentContext.get();
+        TrackedObservable<?> tracking = context.tracking;
+        context.tracking = null;
+        try {
+            return function.get();
+        } finally {
+            context.tracking = tracking;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R read(Observable<R> observable) {
+        Dependency dependency = dependencies.get(observable);
+        if(dependency == null) {
+            dependency = new Dependency((Observable<Object>) observable);
+            dependencies.put(observable, dependency);
+        }
+        // Connecting or pulling may compute other observables, whose reads are not ours to track
+        PropagationContext context = CurrentContext.get();
+        context.tracking = null;
+        try {
+            if(dependency.subscription == null) {
+                dependency.subscribe();
+            } else {
+                // Brings lazy observables up to date, delivering the new value to the dependency
+                observable.pull();
+            }
+        } finally {
+            context.tracking = this;
+        }
+        dependency.run = run;
+        if(dependency.value == null) {
+            throw LOADING;
+        }
+        return (R) dependency.value;
+    }
+
+    @Override
+    void connectArguments() {
+        // Reconnect to the observables read by the last run, which will be
+        // re-tracked when we next recompute.
+        for (Dependency dependency : dependencies.values()) {
+            dependency.subscribe();
+        }
+    }
+
+    @Override
+    void disconnectArguments() {
+        for (Dependency dependency : dependencies.values()) {
+            dependency.unsubscribe();
+        }
+    }
+
+    @Override
+    boolean argumentsLoaded() {
+        // Only the function knows which of its arguments it needs
+        return true;
+    }
+
+    @Override
+    int argumentHeight() {
+        int height = 0;
+        for (Dependency dependency : dependencies.values()) {
+            height = Math.max(height, dependency.observable.getHeight());
+        }
+        return height;
+    }
+
+    @Override
+    void forEachArgument(Consumer<Observable<?>> action) {
+        // Copy, in case pulling an argument changes our dependencies
+        List<Observable<?>> arguments = new ArrayList<>(dependencies.keySet());
+        for (Observable<?> argument : arguments) {
+            action.accept(argument);
+        }
+    }
+
+    @Override
+    @Nullable T computeValue() {
+        PropagationContext context = CurrentContext.get();
+        TrackedObservable<?> outer = context.tracking;
+        context.tracking = this;
+        running = true;
+        run++;
+        T result;
+        try {
+            result = function.get();
+        } catch (Loading e) {
+            result = null;
+        } finally {
+            running = false;
+            context.tracking = outer;
+            removeUnusedDependencies();
+        }
+
+        // Our dependencies may have changed, so make sure we stay above all of them
+        height = argumentHeight() + 1;
+
+        return result;
+    }
+
+    private void removeUnusedDependencies() {
+        Iterator<Dependency> it = dependencies.values().iterator();
+        while (it.hasNext()) {
+            Dependency dependency = it.next();
+            if(dependency.run != run) {
+                it.remove();
+                if(dependency.subscription != null) {
+                    dependency.unsubscribe();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of observables read by the most recent run
+     */
+    int getDependencyCount() {
+        return dependencies.size();
+    }
+
+    /**
+     * Dependencies are only discovered by subscribing to them, so a parallel evaluation must not fork us.
+     */
+    @Override
+    @GwtIncompatible
+    boolean isForkable() {
+        return false;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.shared.GWT;
+import com.google.gwt.user.client.Timer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded pool of recently disconnected observables created by {@link Observable#keepAlive()}, which
+ * remain subscribed to their sources until their grace period expires.
+ *
+ * <p>When the pool is full, the observable which was disconnected longest ago is released first.</p>
+ *
+ * <p>In the browser, there is a single pool, and a timer releases observables as their grace period expires.
+ * Outside the browser, each thread has its own pool and settings, kept with its {@link PropagationContext},
+ * and there is no timer: expired observables are released the next time an observable is added to the
+ * thread's pool, or when {@link #releaseExpired()} is called.</p>
+ */
+public final class WarmPool {
+
+    public static final int DEFAULT_CAPACITY = 100;
+
+    public static final int DEFAULT_GRACE_PERIOD = 5000;
+
+    /**
+     * The source of the current time, in milliseconds. Only replaced by tests.
+     */
+    static volatile LongSupplier clock = System::currentTimeMillis;
+
+    /**
+     * Observables in the order in which they were disconnected.
+     */
+    private final LinkedHashSet<KeepAliveObservable<?>> pool = new LinkedHashSet<>();
+
+    private int capacity = DEFAULT_CAPACITY;
+
+    private int defaultGracePeriod = DEFAULT_GRACE_PERIOD;
+
+    private @Nullable Timer timer;
+
+    /**
+     * The time at which {@link #timer} is scheduled to run, or {@code Long.MAX_VALUE}.
+     */
+    private long timerScheduledAt = Long.MAX_VALUE;
+
+    private WarmPool() {
+    }
+
+    /**
+     * @return the calling thread's pool.
+     */
+    private static WarmPool current() {
+        PropagationContext context = CurrentContext.get();
+        if(context.warmPool == null) {
+            context.warmPool = new WarmPool();
+        }
+        return context.warmPool;
+    }
+
+    /**
+     * Sets the maximum number of disconnected observables to keep alive. If the pool currently
+     * holds more, the oldest are released immediately.
+     */
+    public static void setCapacity(int capacity) {
+        WarmPool pool = current();
+        pool.capacity = capacity;
+        pool.evictOverflow();
+    }
+
+    public static int getCapacity() {
+        return current().capacity;
+    }
+
+    /**
+     * Sets the grace period, in milliseconds, used by {@link Observable#keepAlive()}.
+     */
+    public static void setDefaultGracePeriod(int milliseconds) {
+        current().defaultGracePeriod = milliseconds;
+    }
+
+    public static int getDefaultGracePeriod() {
+        return current().defaultGracePeriod;
+    }
+
+    /**
+     * @return the number of disconnected observables currently kept alive.
+     */
+    public static int size() {
+        return current().pool.size();
+    }
+
+    /**
+     * Immediately releases all disconnected observables.
+     */
+    public static void clear() {
+        WarmPool pool = current();
+        List<KeepAliveObservable<?>> released = new ArrayList<>(pool.pool);
+        pool.pool.clear();
+        releaseAll(released);
+    }
+
+    /**
+     * Releases all disconnected observables whose grace period has expired. In the browser, this
+     * is done by a timer.
+     */
+    public static void releaseExpired() {
+        current().evictExpired(clock.getAsLong());
+    }
+
+    static void add(KeepAliveObservable<?> observable, int gracePeriod) {
+        WarmPool pool = current();
+        long now = clock.getAsLong();
+        observable.expiresAt = now + gracePeriod;
+        pool.pool.add(observable);
+        pool.evictExpired(now);
+        pool.evictOverflow();
+        pool.scheduleTimer(observable.expiresAt);
+    }
+
+    static void remove(KeepAliveObservable<?> observable) {
+        current().pool.remove(observable);
+    }
+
+    /**
+     * Releases all observables whose grace period has expired.
+     */
+    private void evictExpired(long now) {
+        List<KeepAliveObservable<?>> released = new ArrayList<>();
+        Iterator<KeepAliveObservable<?>> it = pool.iterator();
+        while (it.hasNext()) {
+            KeepAliveObservable<?> observable = it.next();
+            if(observable.expiresAt <= now) {
+                it.remove();
+                released.add(observable);
+            }
+        }
+        releaseAll(released);
+    }
+
+    private void evictOverflow() {
+        List<KeepAliveObservable<?>> released = new ArrayList<>();
+        Iterator<KeepAliveObservable<?>> it = pool.iterator();
+        while (pool.size() > capacity && it.hasNext()) {
+            released.add(it.next());
+            it.remove();
+        }
+        releaseAll(released);
+    }
+
+    private static void releaseAll(List<KeepAliveObservable<?>> released) {
+        // Releasing an observable can disconnect others upstream, which may
+        // in turn be added to the pool, so only release once we are done iterating.
+        for (KeepAliveObservable<?> observable : released) {
+            observable.release();
+        }
+    }
+
+    /**
+     * In the browser, make sure a timer is set to release observables when their grace period expires.
+     */
+    private void scheduleTimer(long expiresAt) {
+        if(!GWT.isClient() || expiresAt >= timerScheduledAt) {
+            return;
+        }
+        if(timer == null) {
+            timer = new Timer() {
+                @Override
+                public void run() {
+                    timerScheduledAt = Long.MAX_VALUE;
+                    evictExpired(clock.getAsLong());
+                    long next = Long.MAX_VALUE;
+                    for (KeepAliveObservable<?> observable : pool) {
+                        next = Math.min(next, observable.expiresAt);
+                    }
+                    if(next != Long.MAX_VALUE) {
+                        scheduleTimer(next);
+                    }
+                }
+            };
+        }
+        timerScheduledAt = expiresAt;
+        timer.schedule((int) Math.max(0, expiresAt - clock.getAsLong()));
+    }
+}
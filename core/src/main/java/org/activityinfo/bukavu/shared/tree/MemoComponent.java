@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.tree;
+
+import java.util.Objects;
+
+/**
+ * A component which is only re-rendered when its props change.
+ *
+ * <p>When a parent component re-renders, {@link #updateProps(VComponentProps)} compares the new props with
+ * the current props using {@link #isSameProps(VComponentProps, VComponentProps)}, and if they are the same,
+ * this component's {@link #render()} and the diff of its subtree are skipped. Subclasses must therefore
+ * render only from their props and their own state, and call {@link #refresh()} when their state changes.</p>
+ *
+ * @param <P> the type of this component's props
+ * @see VComponent#memo(Object, java.util.function.Function)
+ */
+public abstract class MemoComponent<P extends VComponentProps> extends VComponentInstance {
+
+    private P props;
+
+    protected MemoComponent(P props) {
+        this.props = props;
+    }
+
+    public final P getProps() {
+        return props;
+    }
+
+    /**
+     * @return {@code true} if rendering with {@code newProps} would give the same result as rendering with
+     * {@code oldProps}. By default, props are compared with {@link Object#equals(Object)}.
+     */
+    protected boolean isSameProps(P oldProps, P newProps) {
+        return Objects.equals(oldProps, newProps);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public final boolean updateProps(VComponentProps newProps) {
+        P oldProps = this.props;
+        this.props = (P) newProps;
+        return !isSameProps(oldProps, this.props);
+    }
+}
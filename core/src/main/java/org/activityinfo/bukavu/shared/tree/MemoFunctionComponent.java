@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.tree;
+
+/**
+ * Renders the component nodes created by {@link VComponent#memo(Object, java.util.function.Function)}.
+ */
+class MemoFunctionComponent<T> extends MemoComponent<MemoProps<T>> {
+
+    static final VComponentConstructor CONSTRUCTOR = MemoFunctionComponent::new;
+
+    @SuppressWarnings("unchecked")
+    private MemoFunctionComponent(VComponentProps props) {
+        super((MemoProps<T>) props);
+    }
+
+    @Override
+    public boolean canAcceptProps(VComponent vnode) {
+        return vnode.getConstructor() == CONSTRUCTOR;
+    }
+
+    @Override
+    protected boolean isSameProps(MemoProps<T> oldProps, MemoProps<T> newProps) {
+        return newProps.getPredicate().isSame(oldProps.getValue(), newProps.getValue());
+    }
+
+    @Override
+    public VNode render() {
+        return getProps().getRenderer().apply(getProps().getValue());
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.tree;
+
+import org.activityinfo.bukavu.shared.observable.CachePredicate;
+
+import java.util.function.Function;
+
+class MemoProps<T> implements VComponentProps {
+    private final T value;
+    private final Function<T, VNode> renderer;
+    private final CachePredicate<T> predicate;
+
+    MemoProps(T value, Function<T, VNode> renderer, CachePredicate<T> predicate) {
+        this.value = value;
+        this.renderer = renderer;
+        this.predicate = predicate;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public Function<T, VNode> getRenderer() {
+        return renderer;
+    }
+
+    public CachePredicate<T> getPredicate() {
+        return predicate;
+    }
+}
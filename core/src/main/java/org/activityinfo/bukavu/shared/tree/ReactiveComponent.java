@@ -16,7 +16,7 @@
 package org.activityinfo.bukavu.shared.tree;
 
 import org.activityinfo.bukavu.shared.html.H;
-import org.activityinfo.bukavu.shared.observable.Observer;
+import org.activityinfo.bukavu.shared.observable.LazyObserver;
 import org.activityinfo.bukavu.shared.observable.Subscription;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -36,6 +36,22 @@ public class ReactiveComponent<T> extends VComponentInstance {
 
     private VNode content = null;
 
+    /**
+     * True if our value has been invalidated, and must be pulled before we render.
+     */
+    private boolean stale = false;
+
+    /**
+     * True while we are pulling our value during render.
+     */
+    private boolean pulling = false;
+
+    /**
+     * True while our parent is updating our props. Changes delivered in the meantime are rendered
+     * as part of the parent's render, so they do not need a refresh of their own.
+     */
+    private boolean updating = false;
+
 
     public ReactiveComponent(VComponentProps props) {
         this.props = (ReactiveProps<T>) props;
@@ -58,15 +74,36 @@ public class ReactiveComponent<T> extends VComponentInstance {
         if((oldProps.getValue() != props.getValue() ||
                 oldProps.getRenderer() != props.getRenderer()) && subscription != null) {
             subscription.unsubscribe();
-            subscribe();
+            if(oldProps.getRenderer() != props.getRenderer()) {
+                // Make sure the content is rendered again with the new renderer
+                value = null;
+            }
+            VNode oldContent = content;
+            updating = true;
+            try {
+                subscribe();
+            } finally {
+                updating = false;
+            }
+            // Render now if the new subscription delivered new content, or a lazy value that must be pulled
+            return content != oldContent || stale;
         }
-
-        // Always return false, because subscribe() will trigger a refresh if needed.
         return false;
     }
 
     @Override
     public VNode render() {
+        if(stale && subscription != null) {
+            // Our value is computed lazily: compute it now that it is actually needed.
+            // If it has changed, it is delivered to onChange() below.
+            stale = false;
+            pulling = true;
+            try {
+                props.getValue().pull();
+            } finally {
+                pulling = false;
+            }
+        }
         return content;
     }
 
@@ -76,26 +113,41 @@ public class ReactiveComponent<T> extends VComponentInstance {
     }
 
     private void subscribe() {
-        subscription = props.getValue().subscribe(new Observer<T>() {
+        stale = false;
+        subscription = props.getValue().subscribe(new LazyObserver<T>() {
             @Override
             public void onChange(@Nullable T newValue) {
                 if(newValue == null) {
                     if(props.getLoadingIndicator() != null && content != props.getLoadingIndicator()) {
                         content = props.getLoadingIndicator();
                         value = null;
-                        ReactiveComponent.this.refresh();
+                        refreshUnlessRendering();
                     }
                 } else {
                     if(newValue != value) {
                         value = newValue;
                         content = props.getRenderer().apply(value);
-                        ReactiveComponent.this.refresh();
+                        refreshUnlessRendering();
                     }
                 }
             }
+
+            @Override
+            public void onInvalidate() {
+                stale = true;
+                if(!updating) {
+                    ReactiveComponent.this.refresh();
+                }
+            }
         });
     }
 
+    private void refreshUnlessRendering() {
+        if(!pulling && !updating) {
+            refresh();
+        }
+    }
+
     @Override
     public void componentWillUnmount() {
         if(subscription != null) {
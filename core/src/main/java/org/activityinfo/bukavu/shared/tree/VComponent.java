@@ -15,6 +15,11 @@
  */
 package org.activityinfo.bukavu.shared.tree;
 
+import org.activityinfo.bukavu.shared.observable.CachePredicate;
+
+import java.util.Objects;
+import java.util.function.Function;
+
 public final class VComponent extends VNode {
 
 
@@ -34,6 +39,25 @@ public final class VComponent extends VNode {
         return props;
     }
 
+    /**
+     * Creates a component which renders {@code value} with {@code renderer}, and which is only re-rendered
+     * when its parent renders it with a value that is not {@link Object#equals(Object) equal}.
+     *
+     * <p>The renderer must depend only on {@code value}: when the value is unchanged, the previous rendering
+     * is kept, even if the renderer is a different function.</p>
+     */
+    public static <T> VComponent memo(T value, Function<T, VNode> renderer) {
+        return memo(value, renderer, Objects::equals);
+    }
+
+    /**
+     * Creates a component which renders {@code value} with {@code renderer}, and which is only re-rendered
+     * when its parent renders it with a value that {@code predicate} judges to be different.
+     */
+    public static <T> VComponent memo(T value, Function<T, VNode> renderer, CachePredicate<T> predicate) {
+        return new VComponent(MemoFunctionComponent.CONSTRUCTOR, new MemoProps<>(value, renderer, predicate));
+    }
+
     @Override
     public void accept(VTreeVisitor visitor) {
         visitor.visitComponent(this);
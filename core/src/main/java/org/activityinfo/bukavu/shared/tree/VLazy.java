@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.tree;
+
+import org.activityinfo.bukavu.shared.observable.TriFunction;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A node which is only rendered when its arguments change, in the spirit of Elm's {@code Html.Lazy}.
+ *
+ * <p>The DOM node rendered from a {@code VLazy} remembers it. When the next {@code VLazy} diffed against that
+ * DOM node has the same render function, and arguments which are the same objects, the existing DOM
+ * is kept as it is: the render function is not called, and the subtree is not diffed.</p>
+ *
+ * <p>The render function must therefore depend only on its arguments, and is compared by reference. A lambda
+ * which captures variables is a new object each time it is evaluated, and so never matches, and the browser
+ * may also create a new object for each evaluation of a method reference. Keep the render function in a
+ * constant instead. For example:</p>
+ *
+ * <pre>
+ * private static final Function&lt;Record, VNode&gt; RENDER_ROW = Table::renderRow;
+ *
+ * VNode row = VLazy.lazy(RENDER_ROW, record).withKey(record.getId());
+ * </pre>
+ */
+public final class VLazy extends VNode {
+
+    private final Object function;
+    private final Object[] arguments;
+    private final Supplier<VNode> thunk;
+
+    private VLazy(Object function, Object[] arguments, Supplier<VNode> thunk) {
+        this.function = function;
+        this.arguments = arguments;
+        this.thunk = thunk;
+    }
+
+    public static <A> VLazy lazy(Function<A, VNode> function, A a) {
+        return new VLazy(function, new Object[] { a }, () -> function.apply(a));
+    }
+
+    public static <A, B> VLazy lazy(BiFunction<A, B, VNode> function, A a, B b) {
+        return new VLazy(function, new Object[] { a, b }, () -> function.apply(a, b));
+    }
+
+    public static <A, B, C> VLazy lazy(TriFunction<A, B, C, VNode> function, A a, B b, C c) {
+        return new VLazy(function, new Object[] { a, b, c }, () -> function.apply(a, b, c));
+    }
+
+    /**
+     * Sets the key of this node, which should also be the key of the node it renders.
+     */
+    public VLazy withKey(String key) {
+        this.key = key;
+        return this;
+    }
+
+    /**
+     * @return {@code true} if this node would render the same as {@code previous}, which
+     * was rendered earlier.
+     */
+    public boolean isSameAs(VLazy previous) {
+        if (previous == null || previous.function != function ||
+                previous.arguments.length != arguments.length) {
+            return false;
+        }
+        for (int i = 0; i < arguments.length; i++) {
+            if (previous.arguments[i] != arguments[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calls the render function. The result is not kept, so that DOM nodes which remember this
+     * node do not also hold on to the tree rendered from it.
+     */
+    public VNode render() {
+        return thunk.get();
+    }
+
+    @Override
+    public String key() {
+        return key;
+    }
+
+    @Override
+    public void accept(VTreeVisitor visitor) {
+        visitor.visitLazy(this);
+    }
+
+    @Override
+    public String toString() {
+        return "VLazy(" + function.getClass().getSimpleName() + ")";
+    }
+}
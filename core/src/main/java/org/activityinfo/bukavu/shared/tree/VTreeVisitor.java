@@ -23,4 +23,11 @@ public interface VTreeVisitor {
 
     void visitComponent(VComponent vComponent);
 
+    /**
+     * Visits the tree rendered by {@code lazy}. Visitors which can skip unchanged subtrees may override this.
+     */
+    default void visitLazy(VLazy lazy) {
+        lazy.render().accept(this);
+    }
+
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.client;
+
+import org.activityinfo.bukavu.shared.html.H;
+import org.activityinfo.bukavu.shared.tree.VComponent;
+import org.activityinfo.bukavu.shared.tree.VComponentInstance;
+import org.activityinfo.bukavu.shared.tree.VComponentProps;
+import org.activityinfo.bukavu.shared.tree.VNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class RenderPassTest {
+
+    private static final class Component extends VComponentInstance {
+        private final String name;
+        private final List<Component> children = new ArrayList<>();
+
+        private Component(String name) {
+            this.name = name;
+            this.dirty = true;
+        }
+
+        @Override
+        public boolean canAcceptProps(VComponent vnode) {
+            return false;
+        }
+
+        @Override
+        public boolean updateProps(VComponentProps props) {
+            return false;
+        }
+
+        @Override
+        public VNode render() {
+            return H.span(name);
+        }
+    }
+
+    private final List<String> rendered = new ArrayList<>();
+
+    /**
+     * Renders a component and, like {@code Diff.renderComponent}, its child components.
+     */
+    private void render(VComponentInstance instance) {
+        Component component = (Component) instance;
+        component.dirty = false;
+        rendered.add(component.name);
+        for (Component child : component.children) {
+            render(child);
+        }
+    }
+
+    @Test
+    public void rendersTopDown() {
+        RenderPass pass = new RenderPass();
+        pass.add(new Component("leaf"), 5);
+        pass.add(new Component("root"), 1);
+        pass.add(new Component("middle"), 3);
+
+        assertThat(pass.render(this::render), equalTo(0));
+        assertThat(rendered, equalTo(Arrays.asList("root", "middle", "leaf")));
+    }
+
+    @Test
+    public void siblingsAreRenderedInOrderQueued() {
+        RenderPass pass = new RenderPass();
+        pass.add(new Component("c"), 2);
+        pass.add(new Component("a"), 2);
+        pass.add(new Component("b"), 2);
+
+        pass.render(this::render);
+        assertThat(rendered, equalTo(Arrays.asList("c", "a", "b")));
+    }
+
+    @Test
+    public void componentsRenderedByAnAncestorAreSkipped() {
+        Component parent = new Component("parent");
+        Component child = new Component("child");
+        parent.children.add(child);
+        Component other = new Component("other");
+
+        // The child is queued before its parent, but is only rendered once
+        RenderPass pass = new RenderPass();
+        pass.add(child, 4);
+        pass.add(other, 4);
+        pass.add(parent, 2);
+
+        assertThat(pass.render(this::render), equalTo(1));
+        assertThat(pass.size(), equalTo(3));
+        assertThat(rendered, equalTo(Arrays.asList("parent", "child", "other")));
+    }
+
+    @Test
+    public void componentsNoLongerDirtyAreSkipped() {
+        Component clean = new Component("clean");
+        clean.dirty = false;
+
+        RenderPass pass = new RenderPass();
+        pass.add(clean, 1);
+        pass.add(new Component("dirty"), 1);
+
+        assertThat(pass.render(this::render), equalTo(1));
+        assertThat(rendered, equalTo(Arrays.asList("dirty")));
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ComputedObservableTest {
+
+    @Test
+    public void diamondIsRecomputedOnce() {
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Integer> a = x.transform(x_ -> x_ + 1);
+        Observable<Integer> b = x.transform(x_ -> x_ * 10);
+
+        List<String> computed = new ArrayList<>();
+        Observable<String> c = Observable.transform(a, b, (a_, b_) -> {
+            String result = a_ + "/" + b_;
+            computed.add(result);
+            return result;
+        });
+
+        MockObserver<String> observer = new MockObserver<>();
+        c.subscribe(observer);
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals("2/10");
+
+        computed.clear();
+        x.updateValue(2);
+
+        // c should never see the new value of a together with the old value of b
+        assertThat(computed.size(), equalTo(1));
+        assertThat(computed.get(0), equalTo("3/20"));
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals("3/20");
+    }
+
+    @Test
+    public void reduceIsNotGlitched() {
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Integer> sum = Observable.reduce(Arrays.asList(
+                x.transform(x_ -> x_ + 1),
+                x.transform(x_ -> x_ + 2)), Reducers.sumInt());
+
+        List<Integer> sums = new ArrayList<>();
+        sum.subscribe(sums::add);
+        assertThat(sums, equalTo(Collections.singletonList(5)));
+
+        // Both elements are updated before the sum is published
+        sums.clear();
+        x.updateValue(10);
+        assertThat(sums, equalTo(Collections.singletonList(23)));
+    }
+
+    @Test
+    public void listSnapshotIsNotGlitched() {
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<List<Integer>> list = ObservableList.flatten(Arrays.asList(
+                x.transform(x_ -> x_ + 1),
+                x.transform(x_ -> x_ + 2))).asObservable();
+
+        List<List<Integer>> snapshots = new ArrayList<>();
+        list.subscribe(snapshots::add);
+        assertThat(snapshots, equalTo(Collections.singletonList(Arrays.asList(2, 3))));
+
+        // The list is copied once, after both elements are updated
+        snapshots.clear();
+        x.updateValue(2);
+        assertThat(snapshots, equalTo(Collections.singletonList(Arrays.asList(3, 4))));
+
+        // Nodes computed from both the snapshot and x are recomputed after the snapshot
+        List<String> computed = new ArrayList<>();
+        Observable<String> c = Observable.transform(list, x.transform(x_ -> x_ * 10), (l, x10) -> {
+            String result = l + "/" + x10;
+            computed.add(result);
+            return result;
+        });
+        c.subscribe(value -> { });
+        computed.clear();
+        x.updateValue(3);
+        assertThat(computed, equalTo(Collections.singletonList("[4, 5]/30")));
+    }
+
+    @Test
+    public void threadsPropagateIndependently() throws Exception {
+        int threadCount = 4;
+        int[] glitches = new int[threadCount];
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            int index = t;
+            threads[t] = new Thread(() -> {
+                StatefulValue<Integer> x = new StatefulValue<>(0);
+                Observable<Integer> a = x.transform(x_ -> x_ + 1);
+                Observable<Integer> b = x.transform(x_ -> x_ * 2);
+                Observable<Integer> c = Observable.transform(a, b, (a_, b_) -> {
+                    if (b_ != (a_ - 1) * 2) {
+                        glitches[index]++;
+                    }
+                    return a_ + b_;
+                });
+                Subscription subscription = c.subscribe(value -> { });
+                for (int i = 1; i <= 20_000; i++) {
+                    x.updateValue(i);
+                }
+                subscription.unsubscribe();
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int t = 0; t < threadCount; t++) {
+            assertThat(glitches[t], equalTo(0));
+        }
+    }
+
+    @Test
+    public void strandedNodesAreRecomputedByNextDrain() {
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        StatefulValue<Integer> y = new StatefulValue<>(1);
+        Observable<Integer> a = x.transform(x_ -> x_ * 10);
+        Observable<Integer> b = x.transform(x_ -> x_ + 1);
+
+        boolean[] fail = new boolean[1];
+        a.subscribe(value -> {
+            if (fail[0]) {
+                throw new IllegalStateException("observer failed");
+            }
+        });
+        MockObserver<Integer> observer = new MockObserver<>();
+        b.subscribe(observer);
+        y.transform(y_ -> y_).subscribe(value -> { });
+
+        // a and b have the same height, and a is queued first, so its observer
+        // throws before b is recomputed
+        fail[0] = true;
+        try {
+            x.updateValue(2);
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        fail[0] = false;
+        observer.assertValueEquals(2);
+
+        // The next change on this thread, even to an unrelated graph, recomputes b
+        y.updateValue(2);
+        observer.assertValueEquals(3);
+    }
+
+    @Test
+    public void unevenDiamond() {
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Integer> a = x.transform(x_ -> x_ + 1).cacheIfEqual().transform(a_ -> a_ * 2);
+        Observable<Integer> b = x.transform(x_ -> x_ * 10);
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        Observable.transform(a, b, (a_, b_) -> a_ + b_).subscribe(observer);
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.getCurrentValue(), equalTo(4 + 10));
+
+        x.updateValue(3);
+
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.getCurrentValue(), equalTo(8 + 30));
+    }
+
+    @Test
+    public void loadingPropagatesThroughDiamond() {
+        PendingValue<Integer> x = new PendingValue<>(1);
+        Observable<Integer> a = x.transform(x_ -> x_ + 1);
+        Observable<Integer> b = x.transform(x_ -> x_ * 10);
+        Observable<Integer> c = Observable.transform(a, b, (a_, b_) -> a_ + b_);
+
+        MockObserver<Integer> observer = new MockObserver<>();
+        c.subscribe(observer);
+        observer.assertChangeFiredOnce();
+
+        x.clear();
+        observer.assertChangeFiredOnce();
+        assertTrue(observer.isLoading());
+
+        x.updateValue(2);
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals(3 + 20);
+    }
+
+    @Test
+    public void wideFanOut() {
+        StatefulValue<Integer> x = new StatefulValue<>(0);
+        List<Observable<Integer>> derived = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int offset = i;
+            derived.add(x.transform(x_ -> x_ + offset));
+        }
+
+        int[] computeCount = new int[1];
+        Observable<Integer> sum = Observable.flatten(derived).transform(list -> {
+            computeCount[0]++;
+            int total = 0;
+            for (Integer value : list) {
+                total += value;
+            }
+            return total;
+        });
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        sum.subscribe(observer);
+        computeCount[0] = 0;
+        observer.countChanges();
+
+        x.updateValue(1);
+
+        assertThat(computeCount[0], equalTo(1));
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.getCurrentValue(), equalTo(100 + 4950));
+    }
+
+    @Test
+    public void threeArguments() {
+        StatefulValue<Integer> a = new StatefulValue<>(1);
+        StatefulValue<Integer> b = new StatefulValue<>(2);
+        PendingValue<Integer> c = new PendingValue<>(3);
+
+        MockObserver<Integer> observer = new MockObserver<>();
+        Observable.transform(a, b, c, (a_, b_, c_) -> a_ * 100 + b_ * 10 + c_).subscribe(observer);
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals(123);
+
+        b.updateValue(5);
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals(153);
+
+        c.clear();
+        observer.assertChangeFiredOnce();
+        assertTrue(observer.isLoading());
+    }
+
+    @Test
+    public void transformChainIsFused() {
+        PendingValue<Integer> x = new PendingValue<>(1);
+        Observable<Integer> chain = x.fused().transform(x_ -> x_ + 1).transform(x_ -> x_ * 2).transform(x_ -> x_ / 4);
+        assertTrue(chain instanceof FusedObservable);
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        chain.subscribe(observer);
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.getCurrentValue(), equalTo(1));
+
+        x.updateValue(3);
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.getCurrentValue(), equalTo(2));
+
+        x.clear();
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.isLoaded(), equalTo(false));
+    }
+
+    @Test
+    public void fusedCacheSuppressesEqualValues() {
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        int[] computeCount = new int[1];
+        Observable<String> chain = x.fused()
+            .transform(x_ -> x_ % 2 == 0 ? "even" : "odd")
+            .cacheIfEqual()
+            .transform(s -> {
+                computeCount[0]++;
+                return s.toUpperCase();
+            });
+        assertTrue(chain instanceof FusedObservable);
+
+        CountingObserver<String> observer = new CountingObserver<>();
+        chain.subscribe(observer);
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.getCurrentValue(), equalTo("ODD"));
+
+        x.updateValue(3);
+        assertThat(observer.countChanges(), equalTo(0));
+        assertThat(computeCount[0], equalTo(1));
+
+        x.updateValue(4);
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.getCurrentValue(), equalTo("EVEN"));
+    }
+
+    @Test
+    public void fusedOptional() {
+        PendingValue<Integer> x = new PendingValue<>();
+        Observable<String> chain = x.fused().transform(x_ -> x_ * 2).toOptional().transform(o -> o.map(String::valueOf).orElse("none"));
+
+        MockObserver<String> observer = new MockObserver<>();
+        chain.subscribe(observer);
+        observer.assertValueEquals("none");
+
+        x.updateValue(21);
+        observer.assertValueEquals("42");
+
+        assertThat(chain.waitFor(), equalTo("42"));
+    }
+
+    @Test
+    public void fusedChainOfOneStage() {
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Integer> chain = x.fused().transform(x_ -> x_ + 1);
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        chain.subscribe(observer);
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.getCurrentValue(), equalTo(2));
+
+        x.updateValue(2);
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.getCurrentValue(), equalTo(3));
+    }
+
+    @Test
+    public void sharedIntermediateIsEvaluatedOnce() {
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        int[] computeCount = new int[1];
+        Observable<Integer> shared = x.transform(x_ -> {
+            computeCount[0]++;
+            return x_ * 10;
+        });
+        List<Observable<Integer>> consumers = new ArrayList<>();
+        consumers.add(shared.transform(v -> v + 1));
+        consumers.add(shared.transform(v -> v + 2));
+        consumers.add(shared.cacheIfEqual().toOptional().transform(o -> o.orElse(0)));
+
+        List<CountingObserver<Integer>> observers = new ArrayList<>();
+        for (Observable<Integer> consumer : consumers) {
+            assertTrue(!(consumer instanceof FusedObservable));
+            CountingObserver<Integer> observer = new CountingObserver<>();
+            consumer.subscribe(observer);
+            observers.add(observer);
+        }
+        assertThat(computeCount[0], equalTo(1));
+
+        x.updateValue(2);
+        assertThat(computeCount[0], equalTo(2));
+        assertThat(observers.get(0).getCurrentValue(), equalTo(21));
+        assertThat(observers.get(1).getCurrentValue(), equalTo(22));
+        assertThat(observers.get(2).getCurrentValue(), equalTo(20));
+    }
+
+    @Test
+    public void scheduledRecomputesAreCoalesced() {
+        SchedulerStub scheduler = new SchedulerStub();
+        StatefulValue<Integer> x = new StatefulValue<>(0);
+        List<Integer> computed = new ArrayList<>();
+        Observable<Integer> y = x.transform(scheduler, x_ -> {
+            computed.add(x_);
+            return x_ * 2;
+        });
+
+        MockObserver<Integer> observer = new MockObserver<>();
+        y.subscribe(observer);
+        computed.clear();
+        observer.resetCount();
+
+        for (int i = 1; i <= 10; i++) {
+            x.updateValue(i);
+        }
+        assertThat(scheduler.countPending(), equalTo(1));
+
+        scheduler.runAll();
+
+        // Only the latest value should be computed
+        assertThat(computed, equalTo(Collections.singletonList(10)));
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals(20);
+    }
+
+    @Test
+    public void staleRecomputeIsCancelled() {
+        SchedulerStub scheduler = new SchedulerStub();
+        PendingValue<Integer> x = new PendingValue<>(1);
+        int[] computeCount = new int[1];
+        Observable<Integer> y = x.transform(scheduler, x_ -> {
+            computeCount[0]++;
+            return x_ * 2;
+        });
+
+        MockObserver<Integer> observer = new MockObserver<>();
+        y.subscribe(observer);
+        computeCount[0] = 0;
+
+        x.updateValue(2);
+        x.clear();
+        assertTrue(observer.isLoading());
+
+        scheduler.runAll();
+        assertThat(computeCount[0], equalTo(0));
+        assertTrue(observer.isLoading());
+    }
+
+    @Test
+    public void scheduledRecomputeIsCancelledOnDisconnect() {
+        SchedulerStub scheduler = new SchedulerStub();
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        int[] computeCount = new int[1];
+        Observable<Integer> y = x.transform(scheduler, x_ -> {
+            computeCount[0]++;
+            return x_ * 2;
+        });
+
+        Subscription subscription = y.subscribe(new MockObserver<>());
+        computeCount[0] = 0;
+
+        x.updateValue(2);
+        subscription.unsubscribe();
+        scheduler.runAll();
+        assertThat(computeCount[0], equalTo(0));
+
+        // Reconnecting picks up the missed change
+        MockObserver<Integer> observer = new MockObserver<>();
+        y.subscribe(observer);
+        observer.assertValueEquals(4);
+        assertThat(computeCount[0], equalTo(1));
+    }
+}
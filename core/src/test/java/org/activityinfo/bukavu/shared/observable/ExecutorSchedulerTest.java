@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExecutorSchedulerTest {
+
+    @Test
+    public void computesOffPropagationThread() throws Exception {
+        try (ExecutorScheduler scheduler = ExecutorScheduler.forkJoin()) {
+            List<Thread> computeThreads = new ArrayList<>();
+            List<Thread> notifyThreads = new ArrayList<>();
+            List<Integer> values = new ArrayList<>();
+
+            StatefulValue<Integer> x = scheduler.submit(() -> new StatefulValue<>(1)).get();
+            Observable<Integer> y = x.transform(scheduler, x_ -> {
+                synchronized (computeThreads) {
+                    computeThreads.add(Thread.currentThread());
+                }
+                return x_ * 2;
+            });
+
+            scheduler.execute(() -> y.subscribe(value -> {
+                notifyThreads.add(Thread.currentThread());
+                values.add(value);
+            }));
+            assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS));
+
+            scheduler.execute(() -> x.updateValue(2));
+            assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS));
+
+            // Loading, followed by each computed value
+            assertThat(values, equalTo(Arrays.asList(null, 2, 4)));
+
+            Thread propagationThread = scheduler.submit(Thread::currentThread).get();
+            for (Thread thread : notifyThreads) {
+                assertThat(thread, equalTo(propagationThread));
+            }
+            synchronized (computeThreads) {
+                for (Thread thread : computeThreads) {
+                    assertThat(thread, not(equalTo(propagationThread)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void resultsArePublishedInOrder() throws Exception {
+        try (ExecutorScheduler scheduler = ExecutorScheduler.forkJoin()) {
+            List<Integer> values = new ArrayList<>();
+
+            StatefulValue<Integer> x = scheduler.submit(() -> new StatefulValue<>(0)).get();
+            Observable<Integer> y = x.transform(scheduler, x_ -> {
+                try {
+                    // Make earlier computations slower than later ones
+                    Thread.sleep(Math.max(0, 20 - x_));
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return x_;
+            });
+
+            scheduler.execute(() -> y.subscribe(value -> {
+                if(value != null) {
+                    values.add(value);
+                }
+            }));
+            for (int i = 1; i <= 20; i++) {
+                int newValue = i;
+                scheduler.execute(() -> x.updateValue(newValue));
+            }
+            assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS));
+
+            for (int i = 1; i < values.size(); i++) {
+                assertTrue(values.get(i) > values.get(i - 1), "values published out of order: " + values);
+            }
+            assertThat(values.get(values.size() - 1), equalTo(20));
+        }
+    }
+
+    @Test
+    public void schedulersHaveSeparatePropagationThreads() throws Exception {
+        ExecutorScheduler first = ExecutorScheduler.forkJoin();
+        try (ExecutorScheduler second = ExecutorScheduler.forkJoin()) {
+            Thread firstThread = first.submit(Thread::currentThread).get();
+            Thread secondThread = second.submit(Thread::currentThread).get();
+            assertThat(firstThread, not(equalTo(secondThread)));
+            assertTrue(first.submit(first::isPropagationThread).get());
+            assertFalse(first.submit(second::isPropagationThread).get());
+
+            // Closing one scheduler leaves the other running
+            first.close();
+            assertThat(second.submit(() -> 42).get(), equalTo(42));
+        }
+    }
+
+    @Test
+    public void shutdown() throws Exception {
+        ExecutorScheduler scheduler = ExecutorScheduler.forkJoin();
+        List<Integer> values = new ArrayList<>();
+
+        StatefulValue<Integer> x = scheduler.submit(() -> new StatefulValue<>(1)).get();
+        Observable<Integer> y = x.transform(scheduler, x_ -> x_ * 2);
+        scheduler.execute(() -> y.subscribe(value -> {
+            if(value != null) {
+                values.add(value);
+            }
+        }));
+        assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS));
+        scheduler.close();
+
+        assertTrue(scheduler.isShutdown());
+        assertThat(values, equalTo(Collections.singletonList(2)));
+
+        // No further work is accepted
+        scheduler.schedule(() -> values.add(-1));
+        assertThat(values, equalTo(Collections.singletonList(2)));
+    }
+}
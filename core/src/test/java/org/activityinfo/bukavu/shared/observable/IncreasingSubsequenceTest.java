@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IncreasingSubsequenceTest {
+
+    private static String longest(int... sources) {
+        return Arrays.toString(IncreasingSubsequence.longest(sources));
+    }
+
+    private static String marks(boolean... stable) {
+        return Arrays.toString(stable);
+    }
+
+    @Test
+    public void empty() {
+        assertThat(longest(), equalTo(marks()));
+    }
+
+    @Test
+    public void allNew() {
+        assertThat(longest(-1, -1, -1), equalTo(marks(false, false, false)));
+    }
+
+    @Test
+    public void unchanged() {
+        assertThat(longest(0, 1, 2, 3), equalTo(marks(true, true, true, true)));
+    }
+
+    @Test
+    public void reversed() {
+        boolean[] stable = IncreasingSubsequence.longest(new int[] { 3, 2, 1, 0 });
+        int count = 0;
+        for (boolean s : stable) {
+            if (s) {
+                count++;
+            }
+        }
+        assertThat(count, equalTo(1));
+    }
+
+    @Test
+    public void singleMove() {
+        // The last element moved to the front: only it needs to move
+        assertThat(longest(4, 0, 1, 2, 3), equalTo(marks(false, true, true, true, true)));
+
+        // The first element moved to the back
+        assertThat(longest(1, 2, 3, 4, 0), equalTo(marks(true, true, true, true, false)));
+    }
+
+    @Test
+    public void newElementsAreIgnored() {
+        assertThat(longest(0, -1, 1, -1, 2), equalTo(marks(true, false, true, false, true)));
+    }
+
+    @Test
+    public void randomPermutations() {
+        Random random = new Random(42);
+        for (int trial = 0; trial < 200; trial++) {
+            int n = random.nextInt(12);
+            int[] sources = new int[n];
+            for (int i = 0; i < n; i++) {
+                sources[i] = random.nextInt(4) == 0 ? -1 : random.nextInt(20);
+            }
+            boolean[] stable = IncreasingSubsequence.longest(sources);
+
+            int previous = -1;
+            int length = 0;
+            for (int i = 0; i < n; i++) {
+                if (stable[i]) {
+                    assertTrue(sources[i] > previous, "not increasing: " + Arrays.toString(sources));
+                    previous = sources[i];
+                    length++;
+                }
+            }
+            assertTrue(length == bruteForce(sources), "not the longest: " + Arrays.toString(sources));
+        }
+    }
+
+    /**
+     * @return the length of the longest strictly increasing subsequence of the non-negative entries
+     */
+    private static int bruteForce(int[] sources) {
+        int[] lengths = new int[sources.length];
+        int longest = 0;
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i] < 0) {
+                continue;
+            }
+            lengths[i] = 1;
+            for (int j = 0; j < i; j++) {
+                if (sources[j] >= 0 && sources[j] < sources[i]) {
+                    lengths[i] = Math.max(lengths[i], lengths[j] + 1);
+                }
+            }
+            longest = Math.max(longest, lengths[i]);
+        }
+        return longest;
+    }
+}
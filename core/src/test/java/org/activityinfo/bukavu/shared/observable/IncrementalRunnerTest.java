@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IncrementalRunnerTest {
+
+    private static final long MILLISECOND = 1_000_000;
+
+    private long now;
+    private SchedulerStub scheduler;
+    private IncrementalRunner runner;
+
+    /**
+     * A task which counts up to a target, where each step advances the fake clock.
+     */
+    private class Counter implements IncrementalTask<Integer> {
+        private final int target;
+        private final long nanosPerStep;
+        private final int priority;
+        private int count;
+        private final List<Integer> chunkSizes = new ArrayList<>();
+
+        private Counter(int target, long nanosPerStep, int priority) {
+            this.target = target;
+            this.nanosPerStep = nanosPerStep;
+            this.priority = priority;
+        }
+
+        @Override
+        public @Nullable Integer execute() {
+            count++;
+            now += nanosPerStep;
+            return count;
+        }
+
+        @Override
+        public @Nullable Integer execute(int units) {
+            chunkSizes.add(units);
+            return IncrementalTask.super.execute(units);
+        }
+
+        @Override
+        public boolean isDone() {
+            return count == target;
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        now = 0;
+        scheduler = new SchedulerStub();
+        runner = new IncrementalRunner(scheduler, 8, () -> now);
+    }
+
+    @Test
+    public void runsUntilBudgetIsSpent() {
+        Counter task = new Counter(100, MILLISECOND, 0);
+        MockObserver<Integer> observer = new MockObserver<>();
+        new IncrementalObservable<>(task, runner).subscribe(observer);
+        observer.resetCount();
+
+        scheduler.runAll();
+
+        // Only the latest result is published at the end of the slice
+        assertThat(task.count, equalTo(8));
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals(8);
+
+        while (scheduler.countPending() > 0) {
+            scheduler.runAll();
+        }
+        observer.assertValueEquals(100);
+    }
+
+    @Test
+    public void chunksAdaptToMeasuredTime() {
+        Counter task = new Counter(100_000, 1_000, 0);
+        new IncrementalObservable<>(task, runner).subscribe(new MockObserver<>());
+
+        scheduler.runAll();
+
+        // The first chunk is a single step, after which we know that 1000 steps take
+        // about a millisecond
+        assertThat(task.chunkSizes.get(0), equalTo(1));
+        assertThat(task.chunkSizes.get(1), equalTo(1000));
+
+        // The last chunk is sized to fit what remains of the budget exactly
+        assertThat(task.count, equalTo(8000));
+    }
+
+    @Test
+    public void higherPriorityRunsFirst() {
+        Counter background = new Counter(20, MILLISECOND, 0);
+        Counter interactive = new Counter(10, MILLISECOND, 10);
+        new IncrementalObservable<>(background, runner).subscribe(new MockObserver<>());
+        new IncrementalObservable<>(interactive, runner).subscribe(new MockObserver<>());
+
+        scheduler.runAll();
+        assertThat(interactive.count, equalTo(8));
+        assertThat(background.count, equalTo(0));
+
+        scheduler.runAll();
+        assertThat(interactive.count, equalTo(10));
+        assertThat(background.count, equalTo(6));
+    }
+
+    @Test
+    public void equalPrioritiesTakeTurns() {
+        Counter a = new Counter(100, MILLISECOND, 0);
+        Counter b = new Counter(100, MILLISECOND, 0);
+        new IncrementalObservable<>(a, runner).subscribe(new MockObserver<>());
+        new IncrementalObservable<>(b, runner).subscribe(new MockObserver<>());
+
+        scheduler.runAll();
+        assertThat(a.count, equalTo(4));
+        assertThat(b.count, equalTo(4));
+    }
+
+    @Test
+    public void downstreamRecomputedOncePerSlice() {
+        Counter a = new Counter(100, MILLISECOND, 0);
+        Counter b = new Counter(100, MILLISECOND, 0);
+        Observable<Integer> sum = Observable.transform(
+                new IncrementalObservable<>(a, runner),
+                new IncrementalObservable<>(b, runner), Integer::sum);
+
+        MockObserver<Integer> observer = new MockObserver<>();
+        sum.subscribe(observer);
+        observer.resetCount();
+
+        scheduler.runAll();
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals(8);
+    }
+
+    @Test
+    public void stopsWhenDisconnected() {
+        Counter task = new Counter(100, MILLISECOND, 0);
+        IncrementalObservable<Integer> observable = new IncrementalObservable<>(task, runner);
+        Subscription subscription = observable.subscribe(new MockObserver<>());
+
+        scheduler.runAll();
+        assertThat(task.count, equalTo(8));
+
+        subscription.unsubscribe();
+        scheduler.runAll();
+        scheduler.runAll();
+        assertThat(task.count, equalTo(8));
+        assertThat(scheduler.countPending(), equalTo(0));
+
+        // Resumes where it left off
+        MockObserver<Integer> observer = new MockObserver<>();
+        observable.subscribe(observer);
+        scheduler.runAll();
+        assertThat(task.count, equalTo(16));
+        observer.assertValueEquals(16);
+    }
+
+    @Test
+    public void completes() {
+        Counter task = new Counter(3, MILLISECOND, 0);
+        IncrementalObservable<Integer> observable = new IncrementalObservable<>(task, runner);
+        MockObserver<Integer> observer = new MockObserver<>();
+        observable.subscribe(observer);
+
+        scheduler.runAll();
+        observer.assertValueEquals(3);
+        assertThat(scheduler.countPending(), equalTo(0));
+        assertTrue(task.isDone());
+    }
+
+    @Test
+    public void eachThreadHasItsOwnDefault() throws Exception {
+        IncrementalRunner[] other = new IncrementalRunner[1];
+        PriorityScheduler[] otherScheduler = new PriorityScheduler[1];
+        Thread thread = new Thread(() -> {
+            other[0] = IncrementalRunner.getDefault();
+            otherScheduler[0] = PriorityScheduler.getDefault();
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(IncrementalRunner.getDefault(), sameInstance(IncrementalRunner.getDefault()));
+        assertThat(other[0], not(sameInstance(IncrementalRunner.getDefault())));
+        assertThat(otherScheduler[0], not(sameInstance(PriorityScheduler.getDefault())));
+    }
+}
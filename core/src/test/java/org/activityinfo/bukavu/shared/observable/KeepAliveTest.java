@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class KeepAliveTest {
+
+    private long now;
+
+    private static class ConnectionCounter<T> extends ObservableStub<T> {
+        private int connectCount;
+
+        ConnectionCounter(T initialValue) {
+            super(initialValue);
+        }
+
+        @Override
+        protected void onConnect() {
+            connectCount++;
+            super.onConnect();
+        }
+    }
+
+    @BeforeEach
+    public void setUp() {
+        now = 0;
+        WarmPool.clock = () -> now;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        WarmPool.clear();
+        WarmPool.setCapacity(WarmPool.DEFAULT_CAPACITY);
+        WarmPool.clock = System::currentTimeMillis;
+    }
+
+    @Test
+    public void remountWithinGracePeriod() {
+        ConnectionCounter<Integer> source = new ConnectionCounter<>(1);
+        Observable<Integer> kept = source.transform(x -> x * 2).keepAlive(1000);
+
+        Subscription subscription = kept.subscribe(new MockObserver<>());
+        subscription.unsubscribe();
+        assertThat(WarmPool.size(), equalTo(1));
+        assertThat(source.isConnected(), equalTo(true));
+
+        // Changes are still followed while in the pool
+        source.updateValue(2);
+
+        now += 500;
+        MockObserver<Integer> observer = new MockObserver<>();
+        kept.subscribe(observer);
+        observer.assertValueEquals(4);
+        assertThat(source.connectCount, equalTo(1));
+        assertThat(WarmPool.size(), equalTo(0));
+    }
+
+    @Test
+    public void releasedAfterGracePeriod() {
+        ConnectionCounter<Integer> source = new ConnectionCounter<>(1);
+        Observable<Integer> kept = source.keepAlive(1000);
+
+        kept.subscribe(new MockObserver<>()).unsubscribe();
+
+        now += 1500;
+        WarmPool.releaseExpired();
+        assertThat(source.isConnected(), equalTo(false));
+        assertThat(WarmPool.size(), equalTo(0));
+
+        MockObserver<Integer> observer = new MockObserver<>();
+        kept.subscribe(observer);
+        observer.assertValueEquals(1);
+        assertThat(source.connectCount, equalTo(2));
+    }
+
+    @Test
+    public void leastRecentlyDisconnectedIsEvicted() {
+        WarmPool.setCapacity(2);
+
+        ConnectionCounter<Integer> a = new ConnectionCounter<>(1);
+        ConnectionCounter<Integer> b = new ConnectionCounter<>(2);
+        ConnectionCounter<Integer> c = new ConnectionCounter<>(3);
+
+        a.keepAlive(1000).subscribe(new MockObserver<>()).unsubscribe();
+        b.keepAlive(1000).subscribe(new MockObserver<>()).unsubscribe();
+        c.keepAlive(1000).subscribe(new MockObserver<>()).unsubscribe();
+
+        assertThat(WarmPool.size(), equalTo(2));
+        assertThat(a.isConnected(), equalTo(false));
+        assertThat(b.isConnected(), equalTo(true));
+        assertThat(c.isConnected(), equalTo(true));
+    }
+
+    @Test
+    public void eachThreadHasItsOwnPool() throws Exception {
+        ConnectionCounter<Integer> source = new ConnectionCounter<>(1);
+        source.keepAlive(1000).subscribe(new MockObserver<>()).unsubscribe();
+
+        int[] otherSize = new int[1];
+        Thread thread = new Thread(() -> {
+            WarmPool.clear();
+            otherSize[0] = WarmPool.size();
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(otherSize[0], equalTo(0));
+        assertThat(WarmPool.size(), equalTo(1));
+        assertThat(source.isConnected(), equalTo(true));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LazyEvaluationTest {
+
+    private static final Scheduler LAZY = LazyScheduler.INSTANCE;
+
+    private static class Reader<T> implements LazyObserver<T> {
+        private int invalidations = 0;
+        private int changes = 0;
+        private @Nullable T value;
+
+        @Override
+        public void onChange(@Nullable T newValue) {
+            value = newValue;
+            changes++;
+        }
+
+        @Override
+        public void onInvalidate() {
+            invalidations++;
+        }
+    }
+
+    @Test
+    public void recomputesOnlyWhenPulled() {
+        AtomicInteger computeCount = new AtomicInteger();
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Integer> y = x.transform(LAZY, v -> {
+            computeCount.incrementAndGet();
+            return v * 10;
+        });
+
+        Reader<Integer> reader = new Reader<>();
+        y.subscribe(reader);
+        assertThat(reader.value, equalTo(10));
+        assertThat(computeCount.get(), equalTo(1));
+
+        // A burst of changes only invalidates once
+        x.updateValue(2);
+        x.updateValue(3);
+        x.updateValue(4);
+        assertThat(reader.invalidations, equalTo(1));
+        assertThat(computeCount.get(), equalTo(1));
+
+        assertThat(y.pull(), equalTo(40));
+        assertThat(reader.value, equalTo(40));
+        assertThat(computeCount.get(), equalTo(2));
+
+        // Nothing changed, so nothing to compute
+        assertThat(y.pull(), equalTo(40));
+        assertThat(computeCount.get(), equalTo(2));
+
+        x.updateValue(5);
+        assertThat(reader.invalidations, equalTo(2));
+    }
+
+    @Test
+    public void invalidationPropagatesThroughLazyChain() {
+        AtomicInteger computeCount = new AtomicInteger();
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Integer> a = x.transform(LAZY, v -> {
+            computeCount.incrementAndGet();
+            return v + 1;
+        });
+        Observable<Integer> b = x.transform(LAZY, v -> {
+            computeCount.incrementAndGet();
+            return v * 2;
+        });
+        Observable<Integer> c = Observable.transform(LAZY, a, b, (a_, b_) -> {
+            computeCount.incrementAndGet();
+            return a_ + b_;
+        });
+
+        Reader<Integer> reader = new Reader<>();
+        c.subscribe(reader);
+        assertThat(reader.value, equalTo(4));
+        computeCount.set(0);
+
+        x.updateValue(2);
+        x.updateValue(3);
+        assertThat(reader.invalidations, equalTo(1));
+        assertThat(computeCount.get(), equalTo(0));
+
+        assertThat(c.pull(), equalTo(10));
+        assertThat(computeCount.get(), equalTo(3));
+    }
+
+    @Test
+    public void unchangedArgumentsAreNotRecomputed() {
+        AtomicInteger computeCount = new AtomicInteger();
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Boolean> odd = x.transform(LAZY, v -> v % 2 == 1);
+        Observable<String> label = odd.transform(LAZY, v -> {
+            computeCount.incrementAndGet();
+            return v ? "odd" : "even";
+        });
+
+        Reader<String> reader = new Reader<>();
+        label.subscribe(reader);
+
+        x.updateValue(3);
+        assertThat(reader.invalidations, equalTo(1));
+        assertThat(label.pull(), equalTo("odd"));
+        assertThat(computeCount.get(), equalTo(1));
+
+        x.updateValue(4);
+        assertThat(label.pull(), equalTo("even"));
+        assertThat(computeCount.get(), equalTo(2));
+    }
+
+    @Test
+    public void eagerObserverForcesPush() {
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Integer> y = x.transform(LAZY, v -> v * 10);
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        y.subscribe(observer);
+        observer.countChanges();
+
+        x.updateValue(2);
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.getCurrentValue(), equalTo(20));
+    }
+
+    @Test
+    public void eagerNodePullsLazyArgument() {
+        AtomicInteger lazyCount = new AtomicInteger();
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Integer> lazy = x.transform(LAZY, v -> {
+            lazyCount.incrementAndGet();
+            return v * 10;
+        });
+        Observable<Integer> eager = lazy.transform(v -> v + 1);
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        eager.subscribe(observer);
+        assertThat(observer.getCurrentValue(), equalTo(11));
+
+        Observable.batch(() -> {
+            x.updateValue(2);
+            x.updateValue(3);
+        });
+        assertThat(observer.getCurrentValue(), equalTo(31));
+        assertThat(lazyCount.get(), equalTo(2));
+    }
+
+    @Test
+    public void newSubscriberReceivesCurrentValue() {
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Integer> y = x.transform(LAZY, v -> v * 10);
+
+        Reader<Integer> reader = new Reader<>();
+        y.subscribe(reader);
+        x.updateValue(2);
+        assertThat(reader.value, equalTo(10));
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        y.subscribe(observer);
+        assertThat(observer.getCurrentValue(), equalTo(20));
+        assertThat(reader.value, equalTo(20));
+    }
+
+    @Test
+    public void lazyArgumentGoesToLoading() {
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Integer> source = x.join(v -> v > 0 ? Observable.just(v) : Observable.loading());
+        Observable<Integer> y = source.transform(LAZY, v -> v * 10);
+
+        Reader<Integer> reader = new Reader<>();
+        y.subscribe(reader);
+
+        x.updateValue(-1);
+        assertThat(reader.invalidations, equalTo(1));
+        assertThat(y.pull(), equalTo(null));
+
+        x.updateValue(3);
+        assertThat(y.pull(), equalTo(30));
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ObservableListTest {
+
+    /**
+     * Follows changes to a list, and checks that they are consistent.
+     */
+    private static class ListRecorder<T> implements ListObserver<T> {
+        private final List<T> mirror = new ArrayList<>();
+        private final List<ListChange<T>> changes = new ArrayList<>();
+        private boolean loading = false;
+
+        @Override
+        public void onChanges(List<ListChange<T>> batch) {
+            if(loading) {
+                mirror.clear();
+                loading = false;
+            }
+            for (ListChange<T> change : batch) {
+                change.applyTo(mirror);
+            }
+            changes.addAll(batch);
+        }
+
+        @Override
+        public void onLoading() {
+            loading = true;
+        }
+
+        List<ListChange<T>> takeChanges() {
+            List<ListChange<T>> taken = new ArrayList<>(changes);
+            changes.clear();
+            return taken;
+        }
+    }
+
+    @Test
+    public void flattenDeliversUpdates() {
+        StatefulValue<String> a = new StatefulValue<>("a");
+        StatefulValue<String> b = new StatefulValue<>("b");
+        StatefulValue<String> c = new StatefulValue<>("c");
+
+        ObservableList<String> list = ObservableList.flatten(Arrays.asList(a, b, c));
+        ListRecorder<String> recorder = new ListRecorder<>();
+        list.subscribe(recorder);
+        assertThat(recorder.mirror, equalTo(Arrays.asList("a", "b", "c")));
+        recorder.takeChanges();
+
+        b.updateValue("B");
+        assertThat(recorder.takeChanges(), equalTo(Arrays.asList(ListChange.update(1, "b", "B"))));
+        assertThat(recorder.mirror, equalTo(Arrays.asList("a", "B", "c")));
+    }
+
+    @Test
+    public void unsubscribingTwiceIsHarmless() {
+        StatefulValue<String> a = new StatefulValue<>("a");
+        ObservableList<String> list = ObservableList.flatten(Arrays.asList(a));
+
+        ListRecorder<String> first = new ListRecorder<>();
+        ListRecorder<String> second = new ListRecorder<>();
+        Subscription firstSubscription = list.subscribe(first);
+        Subscription secondSubscription = list.subscribe(second);
+
+        firstSubscription.unsubscribe();
+        firstSubscription.unsubscribe();
+        assertTrue(list.isConnected());
+        assertTrue(a.isConnected());
+
+        a.updateValue("A");
+        assertThat(second.mirror, equalTo(Arrays.asList("A")));
+        assertThat(first.mirror, equalTo(Arrays.asList("a")));
+
+        secondSubscription.unsubscribe();
+        secondSubscription.unsubscribe();
+        assertFalse(list.isConnected());
+        assertFalse(a.isConnected());
+    }
+
+    @Test
+    public void flattenLoading() {
+        PendingValue<String> a = new PendingValue<>("a");
+        StatefulValue<String> b = new StatefulValue<>("b");
+
+        ObservableList<String> list = ObservableList.flatten(Arrays.asList(a, b));
+        ListRecorder<String> recorder = new ListRecorder<>();
+        list.subscribe(recorder);
+
+        a.clear();
+        assertTrue(recorder.loading);
+        assertThat(list.isLoaded(), equalTo(false));
+
+        a.updateValue("A");
+        assertThat(recorder.mirror, equalTo(Arrays.asList("A", "b")));
+    }
+
+    @Test
+    public void flatMapReusesObservablesByKey() {
+        StatefulValue<List<Integer>> ids = new StatefulValue<>(Arrays.asList(1, 2, 3));
+        List<Integer> applied = new ArrayList<>();
+        ObservableList<String> list = ObservableList.flatMap(ids, id -> {
+            applied.add(id);
+            return Observable.just("item" + id);
+        });
+
+        ListRecorder<String> recorder = new ListRecorder<>();
+        list.subscribe(recorder);
+        assertThat(recorder.mirror, equalTo(Arrays.asList("item1", "item2", "item3")));
+        recorder.takeChanges();
+        applied.clear();
+
+        ids.updateValue(Arrays.asList(3, 1, 4));
+
+        assertThat(applied, equalTo(Arrays.asList(4)));
+        assertThat(recorder.mirror, equalTo(Arrays.asList("item3", "item1", "item4")));
+        assertThat(recorder.takeChanges(), equalTo(Arrays.asList(
+            ListChange.remove(1, "item2"),
+            ListChange.move(1, 0, "item3"),
+            ListChange.insert(2, "item4"))));
+    }
+
+    @Test
+    public void flatMapMovesOnlyDisplacedElements() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ids.add(i);
+        }
+        StatefulValue<List<Integer>> source = new StatefulValue<>(ids);
+        ObservableList<Integer> list = ObservableList.flatMap(source, Observable::just);
+        ListRecorder<Integer> recorder = new ListRecorder<>();
+        list.subscribe(recorder);
+        recorder.takeChanges();
+
+        // Moving the first element to the end is a single move
+        List<Integer> rotated = new ArrayList<>(ids.subList(1, 1000));
+        rotated.add(0);
+        source.updateValue(rotated);
+        assertThat(recorder.takeChanges(), equalTo(Arrays.asList(ListChange.move(0, 999, 0))));
+        assertThat(recorder.mirror, equalTo(rotated));
+    }
+
+    @Test
+    public void flatMapReorders() {
+        Random random = new Random(42);
+        StatefulValue<List<Integer>> source = new StatefulValue<>(Arrays.asList(0, 1, 2, 3));
+        ObservableList<String> list = ObservableList.flatMap(source, id -> Observable.just("item" + id));
+        ListRecorder<String> recorder = new ListRecorder<>();
+        list.subscribe(recorder);
+
+        for (int round = 0; round < 200; round++) {
+            List<Integer> ids = new ArrayList<>();
+            for (int id = 0; id < 12; id++) {
+                if(random.nextInt(3) > 0) {
+                    ids.add(id);
+                }
+            }
+            Collections.shuffle(ids, random);
+            source.updateValue(ids);
+
+            List<String> expected = new ArrayList<>();
+            for (Integer id : ids) {
+                expected.add("item" + id);
+            }
+            assertThat(recorder.mirror, equalTo(expected));
+            for (ListChange<String> change : recorder.takeChanges()) {
+                assertTrue(change.getKind() != ListChange.Kind.MOVE || change.getIndex() != change.getFromIndex());
+            }
+        }
+    }
+
+    @Test
+    public void flatMapInnerChange() {
+        StatefulValue<String> name = new StatefulValue<>("b");
+        StatefulValue<List<String>> keys = new StatefulValue<>(Arrays.asList("a", "b", "c"));
+        ObservableList<String> list = ObservableList.flatMap(keys, key -> key.equals("b") ? name : Observable.just(key));
+
+        ListRecorder<String> recorder = new ListRecorder<>();
+        list.subscribe(recorder);
+        recorder.takeChanges();
+
+        name.updateValue("B");
+        assertThat(recorder.takeChanges(), equalTo(Arrays.asList(ListChange.update(1, "b", "B"))));
+    }
+
+    @Test
+    public void statefulList() {
+        StatefulList<String> list = new StatefulList<>(Arrays.asList("a", "b"));
+        ListRecorder<String> recorder = new ListRecorder<>();
+        list.subscribe(recorder);
+
+        list.add("c");
+        list.move(2, 0);
+        list.set(1, "A");
+        list.remove(2);
+        assertThat(recorder.mirror, equalTo(Arrays.asList("c", "A")));
+
+        MockObserver<List<String>> snapshots = new MockObserver<>();
+        list.asObservable().subscribe(snapshots);
+        snapshots.assertValueEquals(Arrays.asList("c", "A"));
+        snapshots.resetCount();
+
+        Observable.batch(() -> {
+            list.add("x");
+            list.add("y");
+        });
+        snapshots.assertChangeFiredOnce();
+        snapshots.assertValueEquals(Arrays.asList("c", "A", "x", "y"));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ObservableMetricsTest {
+
+    @AfterEach
+    public void uninstall() {
+        ObservableMetrics.install(null);
+    }
+
+    @Test
+    public void recordsRecomputesAndFanOut() {
+        ObservableProfiler profiler = new ObservableProfiler();
+        ObservableMetrics.install(profiler);
+
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        x.debugId("x");
+        Observable<Integer> a = x.transform(v -> v + 1).debugId("a");
+        Observable<Integer> b = x.transform(v -> v * 2).debugId("b");
+        Observable<Integer> c = Observable.transform(a, b, (a_, b_) -> a_ + b_).debugId("c");
+
+        Subscription subscription = c.subscribe(new MockObserver<>());
+        x.updateValue(2);
+        subscription.unsubscribe();
+
+        ObservableMetrics.install(null);
+
+        Map<String, ObservableProfiler.NodeStats> stats = new HashMap<>();
+        for (ObservableProfiler.NodeStats nodeStats : profiler.snapshot()) {
+            stats.put(nodeStats.getName(), nodeStats);
+        }
+
+        assertThat(stats.get("c").getRecomputeCount(), equalTo(2));
+        assertThat(stats.get("a").getRecomputeCount(), equalTo(2));
+        assertThat(stats.get("x").getMaxFanOut(), equalTo(2));
+        assertThat(stats.get("c").getConnectCount(), equalTo(1));
+        assertThat(stats.get("c").getDisconnectCount(), equalTo(1));
+        assertThat(stats.get("a").getMaxHeight(), equalTo(1));
+        assertThat(stats.get("c").getMaxHeight(), equalTo(2));
+        assertThat(Arrays.toString(profiler.getHeightHistogram()), equalTo("[0, 4, 2]"));
+        assertThat(profiler.getMaxPropagationHeight(), equalTo(2));
+        assertThat(profiler.getMaxPropagationSize(), equalTo(3));
+
+        String dot = profiler.toDot();
+        assertTrue(dot.contains("\"x\" -> \"a\";"), dot);
+        assertTrue(dot.contains("\"b\" -> \"c\";"), dot);
+
+        String json = profiler.toJson();
+        assertTrue(json.contains("\"name\":\"c\",\"recomputes\":2"), json);
+        assertTrue(json.contains("\"heights\":[0,4,2]"), json);
+    }
+
+    @Test
+    public void controlCharactersAreEscaped() {
+        ObservableProfiler profiler = new ObservableProfiler();
+        profiler.onConnect(Observable.just(1).debugId("tab\there\u0001"));
+
+        String json = profiler.toJson();
+        assertTrue(json.contains("\"name\":\"tab\\u0009here\\u0001\""), json);
+        assertTrue(profiler.toDot().contains("\"tab\\u0009here\\u0001\" [label="), profiler.toDot());
+    }
+
+    @Test
+    public void recordsEventsFromSeveralThreads() throws Exception {
+        ObservableProfiler profiler = new ObservableProfiler();
+        Observable<Integer> node = Observable.just(1).debugId("node");
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    profiler.onRecompute(node, 1, j % 20);
+                    profiler.onPropagation(1, j % 20);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(profiler.snapshot().get(0).getRecomputeCount(), equalTo(40_000));
+        assertThat(profiler.getPropagationCount(), equalTo(40_000));
+        assertThat(profiler.getHeightHistogram()[19], equalTo(2_000));
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertNull(ObservableMetrics.getInstalled());
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        List<Integer> values = new ArrayList<>();
+        x.transform(v -> v + 1).subscribe(values::add);
+        x.updateValue(2);
+        assertThat(values, equalTo(Arrays.asList(2, 3)));
+    }
+}
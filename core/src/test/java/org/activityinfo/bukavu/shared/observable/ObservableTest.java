@@ -56,6 +56,113 @@ public class ObservableTest {
         observer.assertChangeNotFired();
     }
 
+    @Test
+    public void manySubscriptions() {
+        StatefulValue<Integer> value = new StatefulValue<>(0);
+        List<MockObserver<Integer>> observers = new ArrayList<>();
+        List<Subscription> subscriptions = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            MockObserver<Integer> observer = new MockObserver<>();
+            observers.add(observer);
+            subscriptions.add(value.subscribe(observer));
+            observer.assertChangeFiredOnce();
+        }
+
+        // Unsubscribe every other observer
+        for (int i = 0; i < 100; i += 2) {
+            subscriptions.get(i).unsubscribe();
+        }
+        assertTrue(value.isConnected());
+
+        value.updateValue(1);
+
+        for (int i = 0; i < 100; i++) {
+            if(i % 2 == 0) {
+                observers.get(i).assertChangeNotFired();
+            } else {
+                observers.get(i).assertChangeFiredOnce();
+            }
+        }
+
+        for (int i = 1; i < 100; i += 2) {
+            subscriptions.get(i).unsubscribe();
+        }
+        assertFalse(value.isConnected());
+    }
+
+    @Test
+    public void unsubscribingTwiceIsHarmless() {
+        int[] disconnects = new int[1];
+        ObservableStub<Integer> observable = new ObservableStub<Integer>(0) {
+            @Override
+            protected void onDisconnect() {
+                disconnects[0]++;
+            }
+        };
+
+        MockObserver<Integer> first = new MockObserver<>();
+        MockObserver<Integer> second = new MockObserver<>();
+        MockObserver<Integer> third = new MockObserver<>();
+        Subscription firstSubscription = observable.subscribe(first);
+        Subscription secondSubscription = observable.subscribe(second);
+        Subscription thirdSubscription = observable.subscribe(third);
+        first.assertChangeFiredOnce();
+        second.assertChangeFiredOnce();
+        third.assertChangeFiredOnce();
+
+        firstSubscription.unsubscribe();
+        firstSubscription.unsubscribe();
+        assertTrue(observable.isConnected());
+        assertThat(disconnects[0], equalTo(0));
+
+        // The remaining observers are still notified
+        observable.updateValue(1);
+        first.assertChangeNotFired();
+        second.assertChangeFiredOnce();
+        third.assertChangeFiredOnce();
+
+        secondSubscription.unsubscribe();
+        secondSubscription.unsubscribe();
+        observable.updateValue(2);
+        third.assertChangeFiredOnce();
+
+        // Disconnects only once
+        thirdSubscription.unsubscribe();
+        thirdSubscription.unsubscribe();
+        assertFalse(observable.isConnected());
+        assertThat(disconnects[0], equalTo(1));
+    }
+
+    @Test
+    public void subscriptionChangesDuringNotification() {
+        StatefulValue<Integer> value = new StatefulValue<>(0);
+
+        MockObserver<Integer> late = new MockObserver<>();
+        MockObserver<Integer> removed = new MockObserver<>();
+        Subscription[] removedSubscription = new Subscription[1];
+
+        value.subscribe(newValue -> {
+            if(newValue == 1) {
+                removedSubscription[0].unsubscribe();
+                value.subscribe(late);
+            }
+        });
+        removedSubscription[0] = value.subscribe(removed);
+        removed.assertChangeFiredOnce();
+
+        value.updateValue(1);
+
+        // The observer removed during notification should not be notified,
+        // and the observer added during notification should only receive the value once.
+        removed.assertChangeNotFired();
+        late.assertChangeFiredOnce();
+        late.assertValueEquals(1);
+
+        value.updateValue(2);
+        late.assertChangeFiredOnce();
+        late.assertValueEquals(2);
+    }
+
     @Test
     public void transform() {
         ObservableStub<Integer> number = new ObservableStub<>();
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import com.google.gwt.core.client.Scheduler;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ObservableTreeTest {
+
+    private static final class Node {
+        private final String label;
+        private final List<Integer> children;
+
+        private Node(String label, Integer... children) {
+            this.label = label;
+            this.children = Arrays.asList(children);
+        }
+    }
+
+    /**
+     * Builds a tree as the sorted list of its node labels.
+     */
+    private class Loader implements ObservableTree.TreeLoader<Integer, Node, List<String>> {
+
+        private int builds = 0;
+        private final List<Set<Integer>> updates = new ArrayList<>();
+        private final List<List<Integer>> batches = new ArrayList<>();
+        private final Set<Integer> preferred = new HashSet<>();
+
+        @Override
+        public Integer getRootKey() {
+            return 0;
+        }
+
+        @Override
+        public Observable<Node> get(Integer nodeKey) {
+            return nodes.get(nodeKey);
+        }
+
+        @Override
+        public Map<Integer, Observable<Node>> getAll(Collection<Integer> nodeKeys) {
+            batches.add(new ArrayList<>(nodeKeys));
+            return ObservableTree.TreeLoader.super.getAll(nodeKeys);
+        }
+
+        @Override
+        public int getPriority(Integer nodeKey) {
+            return preferred.contains(nodeKey) ? 1 : 0;
+        }
+
+        @Override
+        public Iterable<Integer> getChildren(Node node) {
+            return node.children;
+        }
+
+        @Override
+        public List<String> build(Map<Integer, @Nullable Node> loaded) {
+            builds++;
+            List<String> labels = new ArrayList<>();
+            for (Node node : loaded.values()) {
+                labels.add(node.label);
+            }
+            Collections.sort(labels);
+            return labels;
+        }
+
+        @Override
+        public List<String> update(List<String> tree, Map<Integer, @Nullable Node> loaded, Set<Integer> changedKeys) {
+            updates.add(changedKeys);
+            return build(loaded);
+        }
+    }
+
+    private final Map<Integer, StatefulValue<Node>> nodes = new HashMap<>();
+    private Loader loader;
+    private MockObserver<List<String>> observer;
+
+    @BeforeEach
+    public void setUp() {
+        nodes.clear();
+        loader = new Loader();
+        observer = new MockObserver<>();
+    }
+
+    private void node(int key, @Nullable Node value) {
+        nodes.put(key, new StatefulValue<>(value));
+    }
+
+    private Subscription subscribe() {
+        return new ObservableTree<>(loader, new ImmediateScheduler()).subscribe(observer);
+    }
+
+    @Test
+    public void leafChangeUpdatesIncrementally() {
+        node(0, new Node("root", 1, 2));
+        node(1, new Node("a"));
+        node(2, new Node("b", 3));
+        node(3, new Node("c"));
+
+        subscribe();
+        observer.assertValueEquals(Arrays.asList("a", "b", "c", "root"));
+        assertThat(loader.builds, equalTo(1));
+
+        nodes.get(3).updateValue(new Node("d"));
+        observer.assertValueEquals(Arrays.asList("a", "b", "d", "root"));
+        assertThat(loader.updates, equalTo(Collections.singletonList(Collections.singleton(3))));
+    }
+
+    @Test
+    public void reloadingNodeDoesNotFlashLoading() {
+        node(0, new Node("root", 1));
+        node(1, new Node("a"));
+
+        subscribe();
+        observer.resetCount();
+
+        nodes.get(1).updateValue(null);
+        observer.assertChangeNotFired();
+
+        nodes.get(1).updateValue(new Node("b"));
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals(Arrays.asList("b", "root"));
+    }
+
+    @Test
+    public void waitsForNewChildrenToLoad() {
+        node(0, new Node("root"));
+        node(1, null);
+
+        subscribe();
+        observer.resetCount();
+
+        nodes.get(0).updateValue(new Node("root", 1));
+        observer.assertChangeNotFired();
+        assertThat(nodes.get(1).isConnected(), equalTo(true));
+
+        nodes.get(1).updateValue(new Node("a"));
+        observer.assertValueEquals(Arrays.asList("a", "root"));
+        assertThat(loader.updates.get(0), equalTo(new HashSet<>(Arrays.asList(0, 1))));
+    }
+
+    @Test
+    public void removedSubtreeIsDisconnected() {
+        node(0, new Node("root", 1, 2));
+        node(1, new Node("a", 3));
+        node(2, new Node("b", 3));
+        node(3, new Node("c", 4));
+        node(4, new Node("d"));
+
+        subscribe();
+
+        // Node 3 is still reachable through node 2
+        nodes.get(0).updateValue(new Node("root", 2));
+        assertThat(nodes.get(1).isConnected(), equalTo(false));
+        assertThat(nodes.get(3).isConnected(), equalTo(true));
+        observer.assertValueEquals(Arrays.asList("b", "c", "d", "root"));
+
+        nodes.get(2).updateValue(new Node("b"));
+        assertThat(nodes.get(3).isConnected(), equalTo(false));
+        assertThat(nodes.get(4).isConnected(), equalTo(false));
+        observer.assertValueEquals(Arrays.asList("b", "root"));
+    }
+
+    @Test
+    public void cycles() {
+        node(0, new Node("root", 1));
+        node(1, new Node("a", 0));
+
+        subscribe();
+        observer.assertValueEquals(Arrays.asList("a", "root"));
+    }
+
+    @Test
+    public void deepTreeIsStackSafe() {
+        int depth = 100_000;
+        for (int i = 0; i < depth - 1; i++) {
+            node(i, new Node("n", i + 1));
+        }
+        node(depth - 1, new Node("leaf"));
+
+        subscribe();
+        assertThat(observer.getLastValue().size(), equalTo(depth));
+
+        nodes.get(0).updateValue(new Node("root"));
+        assertThat(observer.getLastValue(), equalTo(Collections.singletonList("root")));
+        assertThat(nodes.get(depth - 1).isConnected(), equalTo(false));
+    }
+
+    @Test
+    public void requestsEachLevelInOneBatch() {
+        node(0, new Node("root", 1, 2));
+        node(1, new Node("a", 3, 4));
+        node(2, new Node("b", 5));
+        node(3, new Node("c"));
+        node(4, new Node("d"));
+        node(5, new Node("e"));
+
+        subscribe();
+        observer.assertValueEquals(Arrays.asList("a", "b", "c", "d", "e", "root"));
+        assertThat(loader.batches, equalTo(Arrays.asList(
+                Arrays.asList(1, 2),
+                Arrays.asList(3, 4, 5))));
+    }
+
+    @Test
+    public void capsNodesLoadingAtOnce() {
+        node(0, new Node("root", 1, 2, 3));
+        node(1, null);
+        node(2, null);
+        node(3, null);
+
+        ObservableTree<Integer, Node, List<String>> tree = new ObservableTree<>(loader, new ImmediateScheduler(), 2);
+        loader.preferred.add(3);
+        tree.subscribe(observer);
+        assertThat(loader.batches, equalTo(Collections.singletonList(Arrays.asList(3, 1))));
+        assertThat(nodes.get(2).isConnected(), equalTo(false));
+
+        nodes.get(3).updateValue(new Node("c"));
+        assertThat(loader.batches.get(1), equalTo(Collections.singletonList(2)));
+
+        nodes.get(1).updateValue(new Node("a"));
+        observer.assertLoading();
+        nodes.get(2).updateValue(new Node("b"));
+        observer.assertValueEquals(Arrays.asList("a", "b", "c", "root"));
+    }
+
+    private static class ImmediateScheduler extends Scheduler {
+        @Override
+        public void scheduleDeferred(ScheduledCommand cmd) {
+            cmd.execute();
+        }
+
+        @Override
+        public void scheduleEntry(RepeatingCommand cmd) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void scheduleEntry(ScheduledCommand cmd) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void scheduleFinally(RepeatingCommand cmd) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void scheduleFinally(ScheduledCommand cmd) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void scheduleFixedDelay(RepeatingCommand cmd, int delayMs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void scheduleFixedPeriod(RepeatingCommand cmd, int delayMs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void scheduleIncremental(RepeatingCommand cmd) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelEvaluationTest {
+
+    /**
+     * Simulates a blocking call to a remote service
+     */
+    private static class SlowLoader extends Observable<Integer> {
+        private final int value;
+        private final AtomicInteger loadCount = new AtomicInteger();
+
+        SlowLoader(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Integer waitFor() {
+            loadCount.incrementAndGet();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return value;
+        }
+
+        @Override
+        protected boolean isWaitForThreadSafe() {
+            return true;
+        }
+    }
+
+    /**
+     * A leaf which does not declare that its {@code waitFor()} is thread-safe.
+     */
+    private static class UnsafeLoader extends Observable<Integer> {
+        private static final AtomicInteger RUNNING = new AtomicInteger();
+        private static final AtomicInteger MAX_RUNNING = new AtomicInteger();
+
+        private final int value;
+
+        UnsafeLoader(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Integer waitFor() {
+            int running = RUNNING.incrementAndGet();
+            MAX_RUNNING.accumulateAndGet(running, Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                RUNNING.decrementAndGet();
+            }
+            return value;
+        }
+    }
+
+    @Test
+    public void independentArgumentsAreLoadedConcurrently() {
+        List<Observable<Integer>> loaders = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            loaders.add(new SlowLoader(i).transform(x -> x * 2));
+        }
+        Observable<Integer> sum = Observable.flatten(loaders).transform(list -> {
+            int total = 0;
+            for (Integer value : list) {
+                total += value;
+            }
+            return total;
+        });
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            long start = System.nanoTime();
+            assertThat(sum.waitForParallel(pool), equalTo(2 * 780));
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Serially, this would take 40 * 50ms
+            assertTrue(elapsed < 40 * 50 / 2, "took " + elapsed + "ms");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void flatJoinedLoadersAreLoadedConcurrently() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ids.add(i);
+        }
+        Observable<List<Integer>> values = Observable.flatJoin(ids, SlowLoader::new);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            long start = System.nanoTime();
+            assertThat(values.waitForParallel(pool), equalTo(ids));
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Serially, this would take 40 * 50ms
+            assertTrue(elapsed < 40 * 50 / 2, "took " + elapsed + "ms");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void leavesWhichAreNotThreadSafeAreEvaluatedOneAtATime() {
+        List<Observable<Integer>> loaders = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            loaders.add(new UnsafeLoader(i).transform(x -> x * 2));
+        }
+        Observable<Integer> count = Observable.flatten(loaders).transform(List::size);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertThat(count.waitForParallel(pool), equalTo(20));
+            assertThat(UnsafeLoader.MAX_RUNNING.get(), equalTo(1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sharedNodesAreEvaluatedOnce() {
+        SlowLoader shared = new SlowLoader(10);
+        Observable<Integer> a = shared.transform(x -> x + 1);
+        Observable<Integer> b = shared.transform(x -> x + 2);
+        Observable<Integer> c = Observable.transform(a, b, shared, (a_, b_, s_) -> a_ + b_ + s_);
+        Observable<Integer> d = Observable.join(c, shared, (c_, s_) -> Observable.just(c_ * s_));
+
+        assertThat(d.waitForParallel(), equalTo((11 + 12 + 10) * 10));
+        assertThat(shared.loadCount.get(), equalTo(1));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PrimitiveObservableTest {
+
+    private static class CountingIntObserver implements IntObserver {
+        private int changeCount;
+        private int loadingCount;
+        private int lastValue;
+
+        @Override
+        public void onChange(int newValue) {
+            changeCount++;
+            lastValue = newValue;
+        }
+
+        @Override
+        public void onLoading() {
+            loadingCount++;
+        }
+    }
+
+    @Test
+    public void changesAreDetectedByValue() {
+        IntValue width = new IntValue(100);
+        IntObservable half = width.transform(w -> w / 2);
+
+        CountingIntObserver observer = new CountingIntObserver();
+        Subscription subscription = half.subscribe(observer);
+        assertThat(observer.changeCount, equalTo(1));
+        assertThat(observer.lastValue, equalTo(50));
+
+        // 101 / 2 == 50, so no change should be fired
+        width.updateValue(101);
+        assertThat(observer.changeCount, equalTo(1));
+
+        width.updateValue(300);
+        assertThat(observer.changeCount, equalTo(2));
+        assertThat(observer.lastValue, equalTo(150));
+
+        subscription.unsubscribe();
+        assertFalse(width.isConnected());
+    }
+
+    @Test
+    public void combine() {
+        IntValue a = new IntValue(1);
+        IntValue b = new IntValue(2);
+        IntObservable sum = IntObservable.combine(a, b, Integer::sum);
+
+        assertThat(sum.waitFor(), equalTo(3));
+
+        CountingIntObserver observer = new CountingIntObserver();
+        sum.subscribe(observer);
+        a.increment();
+        assertThat(observer.lastValue, equalTo(4));
+    }
+
+    @Test
+    public void boxing() {
+        PendingValue<Integer> generic = new PendingValue<>();
+        IntObservable unboxed = IntObservable.unbox(generic);
+        Observable<String> label = unboxed.transform(x -> x * 10).transformToObj(x -> "#" + x);
+
+        CountingIntObserver intObserver = new CountingIntObserver();
+        unboxed.subscribe(intObserver);
+        assertTrue(unboxed.isLoading());
+        assertThat(intObserver.loadingCount, equalTo(1));
+
+        MockObserver<String> observer = new MockObserver<>();
+        label.subscribe(observer);
+        observer.assertChangeFiredOnce();
+        observer.assertLoading();
+
+        generic.updateValue(4);
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals("#40");
+
+        // A new, but equal, boxed value should not propagate
+        generic.updateValue(new Integer(4));
+        observer.assertChangeNotFired();
+
+        generic.clear();
+        observer.assertChangeFiredOnce();
+        observer.assertLoading();
+        assertThat(intObserver.loadingCount, equalTo(2));
+    }
+
+    @Test
+    public void doubles() {
+        DoubleValue x = new DoubleValue(Double.NaN);
+        MockObserver<Double> observer = new MockObserver<>();
+        x.boxed().subscribe(observer);
+        observer.assertChangeFiredOnce();
+
+        x.updateValue(Double.NaN);
+        observer.assertChangeNotFired();
+
+        x.updateValue(1.5);
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals(1.5);
+    }
+
+    @Test
+    public void booleans() {
+        IntValue count = new IntValue(0);
+        BooleanValue enabled = new BooleanValue(true);
+        BooleanObservable canSubmit = count.test(c -> c > 0).and(enabled);
+
+        MockObserver<String> observer = new MockObserver<>();
+        canSubmit.select("enabled", "disabled").subscribe(observer);
+        observer.assertValueEquals("disabled");
+
+        count.increment();
+        observer.assertValueEquals("enabled");
+
+        enabled.toggle();
+        observer.assertValueEquals("disabled");
+    }
+
+    @Test
+    public void batch() {
+        IntValue a = new IntValue(0);
+        CountingIntObserver observer = new CountingIntObserver();
+        a.subscribe(observer);
+
+        Observable.batch(() -> {
+            a.increment();
+            a.increment();
+        });
+
+        assertThat(observer.changeCount, equalTo(2));
+        assertThat(observer.lastValue, equalTo(2));
+    }
+}
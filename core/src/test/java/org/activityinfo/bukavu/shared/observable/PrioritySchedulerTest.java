@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PrioritySchedulerTest {
+
+    private PriorityScheduler.ManualHost host;
+    private PriorityScheduler scheduler;
+    private List<String> log;
+
+    @BeforeEach
+    public void setUp() {
+        host = new PriorityScheduler.ManualHost();
+        scheduler = new PriorityScheduler(host, 5);
+        log = new ArrayList<>();
+    }
+
+    private Runnable task(String name, long millis) {
+        return () -> {
+            log.add(name);
+            host.advance(millis);
+        };
+    }
+
+    @Test
+    public void urgentLanesRunFirst() {
+        scheduler.schedule(Lane.IDLE, task("idle", 0));
+        scheduler.schedule(Lane.NORMAL, task("normal1", 0));
+        scheduler.schedule(Lane.USER_BLOCKING, task("input", 0));
+        scheduler.schedule(Lane.NORMAL, task("normal2", 0));
+
+        assertThat(host.countPending(), equalTo(1));
+        host.runCallbacks();
+
+        assertThat(log, equalTo(Arrays.asList("input", "normal1", "normal2", "idle")));
+    }
+
+    @Test
+    public void yieldsWhenBudgetIsSpent() {
+        scheduler.schedule(Lane.NORMAL, task("a", 3));
+        scheduler.schedule(Lane.NORMAL, task("b", 3));
+        scheduler.schedule(Lane.NORMAL, task("c", 3));
+
+        host.runCallbacks();
+        assertThat(log, equalTo(Arrays.asList("a", "b")));
+        assertThat(host.countPending(), equalTo(1));
+
+        // Input arriving in the meantime goes ahead of the remaining work
+        scheduler.schedule(Lane.USER_BLOCKING, task("input", 1));
+        host.runCallbacks();
+        assertThat(log, equalTo(Arrays.asList("a", "b", "input", "c")));
+        assertThat(host.countPending(), equalTo(0));
+    }
+
+    @Test
+    public void workScheduledWhileRunningIsPickedUp() {
+        scheduler.schedule(Lane.NORMAL, () -> {
+            log.add("outer");
+            scheduler.schedule(Lane.USER_BLOCKING, task("inner", 0));
+        });
+        scheduler.schedule(Lane.NORMAL, task("next", 0));
+
+        host.runCallbacks();
+        assertThat(log, equalTo(Arrays.asList("outer", "inner", "next")));
+    }
+
+    @Test
+    public void starvedWorkRunsAfterTimeout() {
+        scheduler.schedule(Lane.IDLE, task("idle", 0));
+
+        // A steady stream of more urgent work
+        for (int i = 0; i < 100; i++) {
+            scheduler.schedule(Lane.NORMAL, task("normal", 1000));
+            host.runCallbacks();
+            if(log.contains("idle")) {
+                break;
+            }
+        }
+        int position = log.indexOf("idle");
+        assertThat(position, equalTo((int) (Lane.IDLE.getTimeoutMillis() / 1000)));
+    }
+
+    @Test
+    public void computedObservablesInLanes() {
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Integer> background = x.transform(scheduler.lane(Lane.IDLE), v -> {
+            log.add("background");
+            return v * 100;
+        });
+        Observable<Integer> interactive = x.transform(scheduler.lane(Lane.USER_BLOCKING), v -> {
+            log.add("interactive");
+            return v + 1;
+        });
+        MockObserver<Integer> backgroundObserver = new MockObserver<>();
+        MockObserver<Integer> interactiveObserver = new MockObserver<>();
+        background.subscribe(backgroundObserver);
+        interactive.subscribe(interactiveObserver);
+        host.runCallbacks();
+        log.clear();
+
+        x.updateValue(2);
+        host.runCallbacks();
+
+        assertThat(log, equalTo(Arrays.asList("interactive", "background")));
+        interactiveObserver.assertValueEquals(3);
+        backgroundObserver.assertValueEquals(200);
+    }
+}
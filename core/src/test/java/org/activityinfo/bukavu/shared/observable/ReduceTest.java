@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReduceTest {
+
+    @Test
+    public void sumIsUpdatedIncrementally() {
+        List<StatefulValue<Integer>> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(new StatefulValue<>(i));
+        }
+        int[] calls = new int[1];
+        Observable<Integer> sum = Observable.reduce(rows, 0,
+            (total, x) -> { calls[0]++; return total + x; },
+            (total, x) -> { calls[0]++; return total - x; });
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        sum.subscribe(observer);
+        assertThat(observer.getCurrentValue(), equalTo(499500));
+        observer.countChanges();
+        calls[0] = 0;
+
+        rows.get(10).updateValue(1010);
+
+        assertThat(calls[0], equalTo(2));
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.getCurrentValue(), equalTo(499500 + 1000));
+    }
+
+    @Test
+    public void loading() {
+        PendingValue<Integer> a = new PendingValue<>(1);
+        StatefulValue<Integer> b = new StatefulValue<>(2);
+        MockObserver<Integer> observer = new MockObserver<>();
+        Observable.reduce(Arrays.asList(a, b), Reducers.sumInt()).subscribe(observer);
+        observer.assertValueEquals(3);
+
+        a.clear();
+        assertTrue(observer.isLoading());
+
+        a.updateValue(5);
+        observer.assertValueEquals(7);
+    }
+
+    @Test
+    public void minAndMax() {
+        StatefulList<Integer> list = new StatefulList<>(Arrays.asList(5, 3, 8, 3));
+        MockObserver<Optional<Integer>> min = new MockObserver<>();
+        MockObserver<Optional<Integer>> max = new MockObserver<>();
+        MockObserver<Integer> count = new MockObserver<>();
+        list.reduce(Reducers.<Integer>min()).subscribe(min);
+        list.reduce(Reducers.<Integer>max()).subscribe(max);
+        list.reduce(Reducers.<Integer>count()).subscribe(count);
+
+        min.assertValueEquals(Optional.of(3));
+        max.assertValueEquals(Optional.of(8));
+        count.assertValueEquals(4);
+
+        // One of the two 3s
+        list.remove(1);
+        min.assertValueEquals(Optional.of(3));
+
+        list.remove(2);
+        min.assertValueEquals(Optional.of(5));
+        max.assertValueEquals(Optional.of(8));
+
+        list.clear();
+        min.assertValueEquals(Optional.empty());
+        count.assertValueEquals(0);
+    }
+}
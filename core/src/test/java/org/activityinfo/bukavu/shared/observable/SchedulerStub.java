@@ -28,6 +28,10 @@ public class SchedulerStub implements Scheduler {
         queue.add(runnable);
     }
 
+    public int countPending() {
+        return queue.size();
+    }
+
     public void runAll() {
         List<Runnable> toRun = new ArrayList<>(queue);
         queue.clear();
@@ -19,6 +19,8 @@ import org.junit.jupiter.api.Test;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class StatefulValueTest {
 
@@ -31,4 +33,134 @@ class StatefulValueTest {
         assertThat(observer.isLoading(), equalTo(false));
         assertThat(observer.getLastValue(), equalTo(false));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void batch() {
+        StatefulValue<String> filter = new StatefulValue<>("");
+        StatefulValue<Integer> page = new StatefulValue<>(0);
+
+        int[] computeCount = new int[1];
+        Observable<String> query = Observable.transform(filter, page, (f, p) -> {
+            computeCount[0]++;
+            return f + "@" + p;
+        });
+
+        MockObserver<String> queryObserver = new MockObserver<>();
+        MockObserver<Integer> pageObserver = new MockObserver<>();
+        query.subscribe(queryObserver);
+        page.subscribe(pageObserver);
+        queryObserver.resetCount();
+        pageObserver.resetCount();
+        computeCount[0] = 0;
+
+        Observable.batch(() -> {
+            filter.updateValue("a");
+            page.updateValue(1);
+            page.updateValue(2);
+
+            // Nothing is visible until the batch completes...
+            queryObserver.assertChangeNotFired();
+            pageObserver.assertChangeNotFired();
+
+            // ...but the state itself is up to date
+            assertThat(page.get(), equalTo(2));
+        });
+
+        pageObserver.assertChangeFiredOnce();
+        pageObserver.assertValueEquals(2);
+        queryObserver.assertChangeFiredOnce();
+        queryObserver.assertValueEquals("a@2");
+        assertThat(computeCount[0], equalTo(1));
+    }
+
+    @Test
+    public void nestedBatch() {
+        StatefulValue<Integer> a = new StatefulValue<>(0);
+        PendingValue<Integer> b = new PendingValue<>(0);
+        Observable<Integer> sum = Observable.transform(a, b, (a_, b_) -> a_ + b_);
+
+        MockObserver<Integer> observer = new MockObserver<>();
+        sum.subscribe(observer);
+        observer.resetCount();
+
+        Observable.batch(() -> {
+            a.updateValue(1);
+            Observable.batch(() -> {
+                b.clear();
+                b.updateValue(10);
+            });
+            observer.assertChangeNotFired();
+            a.updateValue(2);
+        });
+
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals(12);
+
+        // Loading states are also deferred
+        Observable.batch(() -> b.clear());
+        observer.assertChangeFiredOnce();
+        assertTrue(observer.isLoading());
+    }
+
+    @Test
+    public void failedBatchStillCommits() {
+        StatefulValue<Integer> a = new StatefulValue<>(0);
+        MockObserver<Integer> observer = new MockObserver<>();
+        a.subscribe(observer);
+        observer.resetCount();
+
+        assertThrows(IllegalStateException.class, () -> Observable.batch(() -> {
+            a.updateValue(1);
+            throw new IllegalStateException();
+        }));
+
+        // The change made before the failure is published...
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals(1);
+
+        // ...and the source continues to notify afterwards
+        a.updateValue(2);
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals(2);
+    }
+
+    @Test
+    public void throwingObserverDoesNotStrandOtherSources() {
+        StatefulValue<Integer> a = new StatefulValue<>(0);
+        StatefulValue<Integer> b = new StatefulValue<>(0);
+        IntValue c = new IntValue(0);
+
+        boolean[] throwing = { true };
+        a.subscribe(value -> {
+            if (throwing[0] && value != null && value == 1) {
+                throw new IllegalStateException();
+            }
+        });
+        MockObserver<Integer> bObserver = new MockObserver<>();
+        b.subscribe(bObserver);
+        int[] cValue = new int[1];
+        c.subscribe(value -> cValue[0] = value);
+        bObserver.resetCount();
+
+        assertThrows(IllegalStateException.class, () -> Observable.batch(() -> {
+            a.updateValue(1);
+            b.updateValue(1);
+            c.updateValue(1);
+        }));
+
+        // Sources changed after the failing one were still committed
+        bObserver.assertChangeFiredOnce();
+        assertThat(cValue[0], equalTo(1));
+
+        // No stale commits are replayed by the next batch, and every source notifies again
+        throwing[0] = false;
+        Observable.batch(() -> {
+            a.updateValue(2);
+            b.updateValue(2);
+            c.updateValue(2);
+        });
+        bObserver.assertChangeFiredOnce();
+        bObserver.assertValueEquals(2);
+        assertThat(cValue[0], equalTo(2));
+    }
+}
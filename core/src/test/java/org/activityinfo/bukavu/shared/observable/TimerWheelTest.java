@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TimerWheelTest {
+
+    private TimerWheel.ManualClock clock;
+    private TimerWheel wheel;
+    private List<String> log;
+
+    @BeforeEach
+    public void setUp() {
+        clock = new TimerWheel.ManualClock();
+        wheel = new TimerWheel(clock);
+        log = new ArrayList<>();
+    }
+
+    @Test
+    public void timeoutsRunInOrder() {
+        wheel.schedule(500, () -> log.add("500"));
+        wheel.schedule(20, () -> log.add("20"));
+        wheel.schedule(100_000, () -> log.add("100000"));
+        wheel.schedule(3_000_000, () -> log.add("3000000"));
+
+        clock.advance(19);
+        assertThat(log, equalTo(Collections.emptyList()));
+
+        clock.advance(1);
+        assertThat(log, equalTo(Arrays.asList("20")));
+
+        clock.advance(99_980);
+        assertThat(log, equalTo(Arrays.asList("20", "500", "100000")));
+
+        clock.advance(3_000_000);
+        assertThat(log, equalTo(Arrays.asList("20", "500", "100000", "3000000")));
+        assertThat(wheel.size(), equalTo(0));
+    }
+
+    @Test
+    public void cancelAndReschedule() {
+        TimerWheel.Timeout a = wheel.schedule(100, () -> log.add("a"));
+        TimerWheel.Timeout b = wheel.schedule(100, () -> log.add("b"));
+
+        b.cancel();
+        clock.advance(50);
+        a.reschedule(100);
+
+        clock.advance(60);
+        assertThat(log, equalTo(Collections.emptyList()));
+        clock.advance(40);
+        assertThat(log, equalTo(Arrays.asList("a")));
+        assertThat(a.isPending(), equalTo(false));
+    }
+
+    @Test
+    public void skipsIdleTime() {
+        clock.advance(1_000_000_000L);
+        wheel.schedule(10, () -> log.add("a"));
+        clock.advance(10);
+        assertThat(log, equalTo(Arrays.asList("a")));
+    }
+
+    @Test
+    public void debounce() {
+        StatefulValue<String> value = new StatefulValue<>("a");
+        Observable<String> debounced = new DebouncedObservable<>(value, 100, wheel);
+        MockObserver<String> observer = new MockObserver<>();
+        debounced.subscribe(observer);
+        observer.assertValueEquals("a");
+        observer.resetCount();
+
+        value.updateValue("b");
+        clock.advance(50);
+        value.updateValue("c");
+        clock.advance(50);
+        value.updateValue("d");
+        clock.advance(99);
+        observer.assertChangeNotFired();
+
+        clock.advance(1);
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals("d");
+    }
+
+    @Test
+    public void throttle() {
+        StatefulValue<String> value = new StatefulValue<>("a");
+        Observable<String> throttled = new ThrottledObservable<>(value, 100, wheel);
+        MockObserver<String> observer = new MockObserver<>();
+        throttled.subscribe(observer);
+        observer.resetCount();
+
+        value.updateValue("b");
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals("b");
+
+        value.updateValue("c");
+        value.updateValue("d");
+        clock.advance(99);
+        observer.assertChangeNotFired();
+
+        clock.advance(1);
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals("d");
+
+        // Quiet interval: nothing more to fire, and the next change passes straight through
+        clock.advance(100);
+        observer.assertChangeNotFired();
+        value.updateValue("e");
+        observer.assertChangeFiredOnce();
+    }
+
+    @Test
+    public void sample() {
+        StatefulValue<String> value = new StatefulValue<>("a");
+        Observable<String> sampled = new SampledObservable<>(value, 100, wheel);
+        MockObserver<String> observer = new MockObserver<>();
+        sampled.subscribe(observer);
+        observer.resetCount();
+
+        value.updateValue("b");
+        clock.advance(60);
+        value.updateValue("c");
+        observer.assertChangeNotFired();
+
+        clock.advance(40);
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals("c");
+
+        clock.advance(500);
+        observer.assertChangeNotFired();
+        assertThat(wheel.size(), equalTo(0));
+    }
+
+    @Test
+    public void optimisticTimeout() {
+        StatefulValue<String> value = new StatefulValue<>("a");
+        Observable<String> optimistic = new OptimisticObservableWithTimeout<>(value, 100, null, wheel);
+        MockObserver<String> observer = new MockObserver<>();
+        optimistic.subscribe(observer);
+        observer.resetCount();
+
+        value.updateValue(null);
+        clock.advance(50);
+        value.updateValue("b");
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals("b");
+
+        value.updateValue(null);
+        clock.advance(100);
+        observer.assertLoading();
+    }
+
+    @Test
+    public void debounceIsImmediateOffTheClient() {
+        StatefulValue<String> value = new StatefulValue<>("a");
+        MockObserver<String> observer = new MockObserver<>();
+        value.debounce(300).subscribe(observer);
+        observer.resetCount();
+
+        value.updateValue("b");
+        observer.assertChangeFiredOnce();
+        observer.assertValueEquals("b");
+    }
+
+    @Test
+    public void eachThreadHasItsOwnDefault() throws Exception {
+        TimerWheel[] other = new TimerWheel[1];
+        Thread thread = new Thread(() -> other[0] = TimerWheel.getDefault());
+        thread.start();
+        thread.join();
+
+        assertThat(TimerWheel.getDefault(), sameInstance(TimerWheel.getDefault()));
+        assertThat(other[0], not(sameInstance(TimerWheel.getDefault())));
+    }
+}
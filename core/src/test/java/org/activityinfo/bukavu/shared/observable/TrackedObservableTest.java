@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.observable;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TrackedObservableTest {
+
+    @Test
+    public void subscribesOnlyToBranchesRead() {
+        AtomicInteger computeCount = new AtomicInteger();
+        StatefulValue<Integer> a = new StatefulValue<>(1);
+        StatefulValue<Integer> b = new StatefulValue<>(10);
+        StatefulValue<Boolean> flag = new StatefulValue<>(false);
+
+        Observable<Integer> total = Observable.compute(() -> {
+            computeCount.incrementAndGet();
+            return a.get() + (flag.get() ? b.get() : 0);
+        });
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        total.subscribe(observer);
+        assertThat(observer.getCurrentValue(), equalTo(1));
+        assertFalse(b.isConnected());
+        assertThat(computeCount.get(), equalTo(1));
+
+        // b is not read, so changing it does nothing
+        b.updateValue(20);
+        assertThat(computeCount.get(), equalTo(1));
+
+        flag.updateValue(true);
+        assertThat(observer.getCurrentValue(), equalTo(21));
+        assertTrue(b.isConnected());
+
+        b.updateValue(30);
+        assertThat(observer.getCurrentValue(), equalTo(31));
+
+        // Switching back drops the subscription to b
+        flag.updateValue(false);
+        assertThat(observer.getCurrentValue(), equalTo(1));
+        assertFalse(b.isConnected());
+
+        computeCount.set(0);
+        b.updateValue(40);
+        assertThat(computeCount.get(), equalTo(0));
+    }
+
+    @Test
+    public void loadingWhileAnyReadIsLoading() {
+        PendingValue<Integer> pending = new PendingValue<>();
+        StatefulValue<Integer> a = new StatefulValue<>(1);
+
+        Observable<Integer> sum = Observable.compute(() -> a.get() + pending.get());
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        sum.subscribe(observer);
+        assertFalse(observer.isLoaded());
+
+        pending.updateValue(41);
+        assertThat(observer.getCurrentValue(), equalTo(42));
+
+        pending.updateValue(null);
+        assertFalse(observer.isLoaded());
+    }
+
+    @Test
+    public void loadingIsNotCaughtAsRuntimeException() {
+        PendingValue<Integer> pending = new PendingValue<>();
+        AtomicInteger fallbacks = new AtomicInteger();
+
+        Observable<Integer> value = Observable.compute(() -> {
+            try {
+                return pending.get() * 2;
+            } catch (RuntimeException e) {
+                fallbacks.incrementAndGet();
+                return -1;
+            }
+        });
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        value.subscribe(observer);
+        assertFalse(observer.isLoaded());
+        assertThat(fallbacks.get(), equalTo(0));
+
+        pending.updateValue(21);
+        assertThat(observer.getCurrentValue(), equalTo(42));
+    }
+
+    @Test
+    public void recomputesOncePerChangeInDiamond() {
+        AtomicInteger computeCount = new AtomicInteger();
+        StatefulValue<Integer> x = new StatefulValue<>(1);
+        Observable<Integer> a = x.transform(v -> v + 1);
+        Observable<Integer> b = x.transform(v -> v * 2);
+        Observable<Integer> c = Observable.compute(() -> {
+            computeCount.incrementAndGet();
+            return a.get() + b.get();
+        });
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        c.subscribe(observer);
+        observer.countChanges();
+        computeCount.set(0);
+
+        x.updateValue(2);
+        assertThat(computeCount.get(), equalTo(1));
+        assertThat(observer.countChanges(), equalTo(1));
+        assertThat(observer.getCurrentValue(), equalTo(7));
+    }
+
+    @Test
+    public void nestedComputations() {
+        StatefulValue<Integer> x = new StatefulValue<>(2);
+        StatefulValue<Integer> y = new StatefulValue<>(3);
+        Observable<Integer> square = Observable.compute(() -> x.get() * x.get());
+        Observable<Integer> sum = Observable.compute(() -> square.get() + y.get());
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        sum.subscribe(observer);
+        assertThat(observer.getCurrentValue(), equalTo(7));
+        assertThat(((TrackedObservable<?>) square).getDependencyCount(), equalTo(1));
+        assertThat(((TrackedObservable<?>) sum).getDependencyCount(), equalTo(2));
+
+        x.updateValue(3);
+        assertThat(observer.getCurrentValue(), equalTo(12));
+    }
+
+    @Test
+    public void untrackedReadsAreNotDependencies() {
+        StatefulValue<Integer> a = new StatefulValue<>(1);
+        StatefulValue<Integer> b = new StatefulValue<>(10);
+        Observable<Integer> sum = Observable.compute(() -> a.get() + Observable.untracked(() -> b.get()));
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        sum.subscribe(observer);
+        assertThat(observer.getCurrentValue(), equalTo(11));
+
+        b.updateValue(20);
+        assertThat(observer.getCurrentValue(), equalTo(11));
+
+        a.updateValue(2);
+        assertThat(observer.getCurrentValue(), equalTo(22));
+    }
+
+    @Test
+    public void transformsConnectedDuringRunAreNotTracked() {
+        StatefulValue<Integer> a = new StatefulValue<>(1);
+        StatefulValue<Integer> other = new StatefulValue<>(100);
+        Observable<Integer> derived = a.transform(v -> v + other.get());
+        Observable<Integer> result = Observable.compute(() -> derived.get());
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        result.subscribe(observer);
+        assertThat(observer.getCurrentValue(), equalTo(101));
+        assertThat(((TrackedObservable<?>) result).getDependencyCount(), equalTo(1));
+    }
+
+    @Test
+    public void disconnectReleasesDependencies() {
+        StatefulValue<Integer> a = new StatefulValue<>(1);
+        Observable<Integer> doubled = Observable.compute(() -> a.get() * 2);
+
+        CountingObserver<Integer> observer = new CountingObserver<>();
+        Subscription subscription = doubled.subscribe(observer);
+        assertTrue(a.isConnected());
+
+        subscription.unsubscribe();
+        assertFalse(a.isConnected());
+
+        a.updateValue(5);
+        doubled.subscribe(observer);
+        assertThat(observer.getCurrentValue(), equalTo(10));
+    }
+
+    @Test
+    public void lazyComputation() {
+        AtomicInteger computeCount = new AtomicInteger();
+        StatefulValue<Integer> a = new StatefulValue<>(1);
+        Observable<Integer> doubled = Observable.compute(LazyScheduler.INSTANCE, () -> {
+            computeCount.incrementAndGet();
+            return a.get() * 2;
+        });
+        doubled.subscribe(new LazyObserver<Integer>() {
+            @Override
+            public void onInvalidate() {
+            }
+
+            @Override
+            public void onChange(Integer newValue) {
+            }
+        });
+        a.updateValue(2);
+        a.updateValue(3);
+        assertThat(computeCount.get(), equalTo(1));
+        assertThat(doubled.pull(), equalTo(6));
+        assertThat(computeCount.get(), equalTo(2));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.tree;
+
+import org.activityinfo.bukavu.shared.html.H;
+import org.activityinfo.bukavu.shared.html.HtmlRenderer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MemoComponentTest {
+
+    private static final class Greeting implements VComponentProps {
+        private final String name;
+
+        private Greeting(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Greeting && ((Greeting) o).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name);
+        }
+    }
+
+    private static final class GreetingComponent extends MemoComponent<Greeting> {
+
+        static final VComponentConstructor CONSTRUCTOR = props -> new GreetingComponent((Greeting) props);
+
+        private int renderCount = 0;
+
+        private GreetingComponent(Greeting props) {
+            super(props);
+        }
+
+        @Override
+        public boolean canAcceptProps(VComponent vnode) {
+            return vnode.getConstructor() == CONSTRUCTOR;
+        }
+
+        @Override
+        public VNode render() {
+            renderCount++;
+            return H.span("Hello " + getProps().name);
+        }
+    }
+
+    private static VComponentInstance mount(VComponent component) {
+        return component.getConstructor().newInstance(component.getProps());
+    }
+
+    @Test
+    public void memoComponentIsOnlyUpdatedWhenPropsChange() {
+        GreetingComponent instance = new GreetingComponent(new Greeting("Alice"));
+        assertThat(HtmlRenderer.render(instance.render()), equalTo("<span>Hello Alice</span>"));
+
+        // Equal props are taken on, but do not need a render
+        Greeting equal = new Greeting("Alice");
+        assertFalse(instance.updateProps(equal));
+        assertTrue(instance.getProps() == equal);
+
+        assertTrue(instance.updateProps(new Greeting("Bob")));
+        assertThat(HtmlRenderer.render(instance.render()), equalTo("<span>Hello Bob</span>"));
+        assertThat(instance.renderCount, equalTo(2));
+    }
+
+    @Test
+    public void memoIsRenderedByHtmlRenderer() {
+        VNode tree = H.div(
+            VComponent.memo("Alice", name -> H.span("Hello " + name)),
+            new VComponent(GreetingComponent.CONSTRUCTOR, new Greeting("Bob")));
+
+        assertThat(HtmlRenderer.render(tree), equalTo("<div><span>Hello Alice</span><span>Hello Bob</span></div>"));
+    }
+
+    @Test
+    public void memoComparesValues() {
+        VComponent first = VComponent.memo(Arrays.asList(1, 2), list -> H.span("Total " + sum(list)));
+        VComponentInstance instance = mount(first);
+        assertThat(HtmlRenderer.render(instance.render()), equalTo("<span>Total 3</span>"));
+
+        // A new renderer for an equal value is not used
+        VComponent same = VComponent.memo(Arrays.asList(1, 2), list -> H.span("Other"));
+        assertTrue(instance.canAcceptProps(same));
+        assertFalse(instance.updateProps(same.getProps()));
+
+        VComponent changed = VComponent.memo(Arrays.asList(1, 2, 3), list -> H.span("Total " + sum(list)));
+        assertTrue(instance.updateProps(changed.getProps()));
+        assertThat(HtmlRenderer.render(instance.render()), equalTo("<span>Total 6</span>"));
+    }
+
+    @Test
+    public void memoWithPredicate() {
+        VComponent first = VComponent.memo(Arrays.asList(1, 2), list -> H.span("Count " + list.size()),
+            (a, b) -> a.size() == b.size());
+        VComponentInstance instance = mount(first);
+
+        VComponent sameSize = VComponent.memo(Arrays.asList(3, 4), list -> H.span("Count " + list.size()),
+            (a, b) -> a.size() == b.size());
+        assertFalse(instance.updateProps(sameSize.getProps()));
+
+        VComponent larger = VComponent.memo(Arrays.asList(1, 2, 3), list -> H.span("Count " + list.size()),
+            (a, b) -> a.size() == b.size());
+        assertTrue(instance.updateProps(larger.getProps()));
+        assertThat(HtmlRenderer.render(instance.render()), equalTo("<span>Count 3</span>"));
+    }
+
+    @Test
+    public void memoIsNotAcceptedByOtherComponents() {
+        VComponentInstance instance = mount(VComponent.memo("Alice", name -> H.span(name)));
+        assertFalse(instance.canAcceptProps(new VComponent(GreetingComponent.CONSTRUCTOR, new Greeting("Alice"))));
+    }
+
+    private static int sum(List<Integer> list) {
+        int sum = 0;
+        for (Integer value : list) {
+            sum += value;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2023 BeDataDriven Groep B.V.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activityinfo.bukavu.shared.tree;
+
+import org.activityinfo.bukavu.shared.html.H;
+import org.activityinfo.bukavu.shared.html.HtmlRenderer;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VLazyTest {
+
+    private static final Function<String, VNode> RENDER_NAME = name -> H.span("Hello " + name);
+
+    private static final BiFunction<String, Integer, VNode> RENDER_COUNT = (label, count) -> H.span(label + ": " + count);
+
+    @Test
+    public void htmlRendererRendersLazyNodes() {
+        VNode tree = H.div(
+            VLazy.lazy(RENDER_NAME, "Alice"),
+            VLazy.lazy(RENDER_COUNT, "Rows", 3));
+
+        assertThat(HtmlRenderer.render(tree), equalTo("<div><span>Hello Alice</span><span>Rows: 3</span></div>"));
+    }
+
+    @Test
+    public void sameFunctionAndArguments() {
+        String alice = "Alice";
+        VLazy first = VLazy.lazy(RENDER_NAME, alice);
+
+        assertTrue(VLazy.lazy(RENDER_NAME, alice).isSameAs(first));
+        assertFalse(VLazy.lazy(RENDER_NAME, new String("Alice")).isSameAs(first));
+        assertFalse(VLazy.lazy(RENDER_NAME, alice).isSameAs(null));
+    }
+
+    @Test
+    public void functionsAreComparedByReference() {
+        String alice = "Alice";
+        VLazy first = VLazy.lazy(lazyGreeting("Hello"), alice);
+
+        // Lambdas created from the same code, but capturing different values, must not match
+        assertFalse(VLazy.lazy(lazyGreeting("Goodbye"), alice).isSameAs(first));
+        assertFalse(VLazy.lazy(RENDER_NAME, alice).isSameAs(first));
+    }
+
+    @Test
+    public void argumentCountMustMatch() {
+        Integer three = 3;
+        VLazy first = VLazy.lazy(RENDER_COUNT, "Rows", three);
+        assertTrue(VLazy.lazy(RENDER_COUNT, "Rows", three).isSameAs(first));
+        assertFalse(VLazy.lazy(RENDER_NAME, "Rows").isSameAs(first));
+    }
+
+    private static Function<String, VNode> lazyGreeting(String greeting) {
+        return name -> H.span(greeting + " " + name);
+    }
+}